@@ -5,6 +5,7 @@ import java.util.HashMap;
 import com.google.gwt.user.client.ui.AcceptsOneWidget;
 import com.google.gwt.user.client.ui.HTML;
 import com.google.gwt.user.client.ui.SimplePanel;
+import com.googlecode.slotted.client.ParameterChanges;
 import com.googlecode.slotted.client.Slot;
 import com.googlecode.slotted.client.SlottedActivity;
 import com.googlecode.slotted.client.SlottedPlace;
@@ -18,6 +19,8 @@ public class TestActivity extends SlottedActivity {
     public TestDisplay testDisplay;
     public AcceptsOneWidget panel;
     public HashMap<Slot, SimplePanel> childDisplay;
+    public String[] refreshParameters;
+    public ParameterChanges lastChanges;
 
     public int setChildSlotDisplayCount;
     public int startCount;
@@ -28,6 +31,7 @@ public class TestActivity extends SlottedActivity {
     public int mayBackgroundCount;
     public int onBackgroundCount;
     public int mayStopCount;
+    public String mayStopMessage;
 
     public void resetCounts() {
         setChildSlotDisplayCount = 0;
@@ -36,6 +40,7 @@ public class TestActivity extends SlottedActivity {
         onCancelCount = 0;
         onRefreshCount = 0;
         mayStopCount = 0;
+        mayStopMessage = null;
         onLoadCompleteCount = 0;
         mayBackgroundCount = 0;
         onBackgroundCount = 0;
@@ -94,13 +99,22 @@ public class TestActivity extends SlottedActivity {
         onRefreshCount++;
     }
 
+    @Override public void onRefresh(ParameterChanges changes) {
+        lastChanges = changes;
+        super.onRefresh(changes);
+    }
+
+    @Override public String[] getRefreshParameters() {
+        return refreshParameters;
+    }
+
     @Override public void onStop() {
         onStopCount++;
     }
 
     @Override public String mayStop() {
         mayStopCount++;
-        return super.mayStop();
+        return mayStopMessage != null ? mayStopMessage : super.mayStop();
     }
 
     @Override public void onLoadComplete() {
@@ -9,11 +9,13 @@ import com.googlecode.slotted.client.HistoryMapper;
 import com.googlecode.slotted.client.SlottedController;
 import com.googlecode.slotted.client.SlottedEventBus;
 import com.googlecode.slotted.testharness.client.flow.HomePlace;
+import com.googlecode.slotted.testharness.client.split.TestCodeSplitMapper;
 
 public class TestHarness implements EntryPoint {
 
     public static TestHarness testHarness;
     public static SlottedController slottedController;
+    public static TestCodeSplitMapper codeSplitMapper = new TestCodeSplitMapper();
 
     public static SlottedController startTestHarness() {
         if (testHarness == null) {
@@ -30,6 +32,7 @@ public class TestHarness implements EntryPoint {
         HistoryMapper historyMapper = GWT.create(AutoHistoryMapper.class);
         slottedController = new SlottedController(historyMapper, new SlottedEventBus());
         slottedController.setDefaultPlace(new HomePlace());
+        slottedController.registerCodeSplitMapper(TestCodeSplitMapper.class, codeSplitMapper);
 
         SimplePanel rootDisplay = new SimplePanel();
         RootPanel.get().add(rootDisplay);
@@ -0,0 +1,14 @@
+package com.googlecode.slotted.testharness.client.flow;
+
+import com.googlecode.slotted.client.Recyclable;
+import com.googlecode.slotted.testharness.client.TestActivity;
+
+public class RecycleActivity extends TestActivity implements Recyclable {
+    public int recycleCount;
+
+    @Override public void recycle() {
+        recycleCount++;
+        testDisplay = null;
+        panel = null;
+    }
+}
@@ -0,0 +1,32 @@
+package com.googlecode.slotted.testharness.client.flow;
+
+import com.google.gwt.activity.shared.Activity;
+import com.googlecode.slotted.client.Slot;
+import com.googlecode.slotted.client.SlottedController;
+import com.googlecode.slotted.client.SlottedPlace;
+
+public class RecyclePlace extends SlottedPlace {
+    public static int createCount;
+    public static boolean declareActivityClass = true;
+
+    public RecyclePlace() {
+        super();
+    }
+
+    @Override public Slot getParentSlot() {
+        return SlottedController.RootSlot;
+    }
+
+    @Override public Slot[] getChildSlots() {
+        return null;
+    }
+
+    @Override public Class<? extends Activity> getActivityClass() {
+        return declareActivityClass ? RecycleActivity.class : null;
+    }
+
+    @Override public Activity getActivity() {
+        createCount++;
+        return new RecycleActivity();
+    }
+}
@@ -0,0 +1,6 @@
+package com.googlecode.slotted.testharness.client.split;
+
+import com.googlecode.slotted.testharness.client.TestActivity;
+
+public class GeneratedSplitActivity extends TestActivity {
+}
@@ -0,0 +1,6 @@
+package com.googlecode.slotted.testharness.client.split;
+
+import com.googlecode.slotted.client.CodeSplitMapper;
+
+public interface GeneratedSplitMapper extends CodeSplitMapper {
+}
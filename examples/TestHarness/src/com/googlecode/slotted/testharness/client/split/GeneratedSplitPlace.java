@@ -0,0 +1,19 @@
+package com.googlecode.slotted.testharness.client.split;
+
+import com.googlecode.slotted.client.CodeSplit;
+import com.googlecode.slotted.client.PlaceActivity;
+import com.googlecode.slotted.client.Slot;
+import com.googlecode.slotted.client.SlottedController;
+import com.googlecode.slotted.client.SlottedPlace;
+
+@CodeSplit(GeneratedSplitMapper.class)
+@PlaceActivity(GeneratedSplitActivity.class)
+public class GeneratedSplitPlace extends SlottedPlace {
+    @Override public Slot getParentSlot() {
+        return SlottedController.RootSlot;
+    }
+
+    @Override public Slot[] getChildSlots() {
+        return null;
+    }
+}
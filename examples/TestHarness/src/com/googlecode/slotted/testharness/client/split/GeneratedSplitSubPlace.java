@@ -0,0 +1,4 @@
+package com.googlecode.slotted.testharness.client.split;
+
+public class GeneratedSplitSubPlace extends GeneratedSplitPlace {
+}
@@ -0,0 +1,17 @@
+package com.googlecode.slotted.testharness.client.split;
+
+import com.googlecode.slotted.client.CodeSplit;
+import com.googlecode.slotted.client.Slot;
+import com.googlecode.slotted.client.SlottedController;
+import com.googlecode.slotted.testharness.client.TestPlace;
+
+@CodeSplit(TestCodeSplitMapper.class)
+public class SplitPlace extends TestPlace {
+    @Override public Slot getParentSlot() {
+        return SlottedController.RootSlot;
+    }
+
+    @Override public Slot[] getChildSlots() {
+        return null;
+    }
+}
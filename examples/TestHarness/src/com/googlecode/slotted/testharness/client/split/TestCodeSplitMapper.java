@@ -0,0 +1,73 @@
+package com.googlecode.slotted.testharness.client.split;
+
+import java.util.ArrayList;
+
+import com.google.gwt.activity.shared.Activity;
+import com.google.gwt.core.client.Callback;
+import com.googlecode.slotted.client.ActivityRequest;
+import com.googlecode.slotted.client.CodeSplitMapper;
+import com.googlecode.slotted.client.SlottedPlace;
+import com.googlecode.slotted.testharness.client.TestPlace;
+
+/**
+ * Pretends to be a code split.  The fragment isn't loaded until {@link #finishLoading()} is called, unless
+ * {@link #loadImmediately} is true.
+ */
+public class TestCodeSplitMapper implements CodeSplitMapper {
+    public boolean loadImmediately = true;
+    public int loadCount;
+    public int getCount;
+    public int cancelledCount;
+    private boolean loaded;
+    private ArrayList<Runnable> waiting = new ArrayList<Runnable>();
+
+    @Override public boolean isLoaded() {
+        return loaded;
+    }
+
+    @Override public void load(Callback<? super Activity, ? super Throwable> callback) {
+        get(null, callback);
+    }
+
+    @Override public void get(final SlottedPlace place, final Callback<? super Activity, ? super Throwable> callback) {
+        if (place == null) {
+            loadCount++;
+        } else {
+            getCount++;
+        }
+        Runnable done = new Runnable() {
+            @Override public void run() {
+                if (ActivityRequest.isCancelled(callback)) {
+                    // The navigation was replaced, so the Activity isn't created.
+                    cancelledCount++;
+                    return;
+                }
+                callback.onSuccess(place == null ? null : TestPlace.getActivity(place));
+            }
+        };
+        if (loaded || loadImmediately) {
+            loaded = true;
+            done.run();
+        } else {
+            waiting.add(done);
+        }
+    }
+
+    public void finishLoading() {
+        loaded = true;
+        ArrayList<Runnable> callbacks = new ArrayList<Runnable>(waiting);
+        waiting.clear();
+        for (Runnable callback: callbacks) {
+            callback.run();
+        }
+    }
+
+    public void reset() {
+        loaded = false;
+        loadImmediately = true;
+        loadCount = 0;
+        getCount = 0;
+        cancelledCount = 0;
+        waiting.clear();
+    }
+}
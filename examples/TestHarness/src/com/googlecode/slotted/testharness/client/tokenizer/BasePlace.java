@@ -47,6 +47,12 @@ public class BasePlace extends SuperPlace {
     @TokenizerParameter
     public Timestamp baseTimestamp;
 
+    @TokenizerParameter
+    public long baseLong;
+
+    @TokenizerParameter
+    private String basePrivate;
+
     public BasePlace() {
     }
 
@@ -58,6 +64,14 @@ public class BasePlace extends SuperPlace {
         baseTimestamp = timestamp;
     }
 
+    public String getBasePrivate() {
+        return basePrivate;
+    }
+
+    public void setBasePrivate(String basePrivate) {
+        this.basePrivate = basePrivate;
+    }
+
     @Override public Slot getParentSlot() {
         return SlottedController.RootSlot;
     }
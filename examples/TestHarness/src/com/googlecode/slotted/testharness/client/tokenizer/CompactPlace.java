@@ -0,0 +1,42 @@
+package com.googlecode.slotted.testharness.client.tokenizer;
+
+import com.googlecode.slotted.client.CompactTokenCodec;
+import com.googlecode.slotted.client.Slot;
+import com.googlecode.slotted.client.SlottedController;
+import com.googlecode.slotted.client.TokenFormat;
+import com.googlecode.slotted.client.TokenizerParameter;
+import com.googlecode.slotted.testharness.client.TestPlace;
+
+import java.util.Date;
+
+@TokenFormat(CompactTokenCodec.class)
+public class CompactPlace extends TestPlace {
+    @TokenizerParameter
+    public String compactString;
+    @TokenizerParameter
+    public String compactNullString;
+    @TokenizerParameter
+    public int compactInt;
+    @TokenizerParameter
+    public long compactLong;
+    @TokenizerParameter
+    public double compactDouble;
+    @TokenizerParameter
+    public char compactChar;
+    @TokenizerParameter
+    public boolean compactBoolean;
+    @TokenizerParameter
+    public Integer compactIntegerObj;
+    @TokenizerParameter
+    public Boolean compactBooleanObj;
+    @TokenizerParameter
+    public Date compactDate;
+
+    @Override public Slot getParentSlot() {
+        return SlottedController.RootSlot;
+    }
+
+    @Override public Slot[] getChildSlots() {
+        return new Slot[0];
+    }
+}
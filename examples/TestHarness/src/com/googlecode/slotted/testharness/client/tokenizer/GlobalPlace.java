@@ -0,0 +1,29 @@
+package com.googlecode.slotted.testharness.client.tokenizer;
+
+import com.googlecode.slotted.client.GlobalParameter;
+import com.googlecode.slotted.client.Slot;
+import com.googlecode.slotted.client.SlottedController;
+import com.googlecode.slotted.testharness.client.TestPlace;
+
+public class GlobalPlace extends TestPlace {
+    @GlobalParameter
+    public String globalString;
+    @GlobalParameter
+    public int globalInt;
+    @GlobalParameter
+    public boolean globalBoolean;
+    @GlobalParameter
+    public Long globalLongObj;
+    @GlobalParameter
+    public Float globalFloatObj;
+    @GlobalParameter
+    public Double globalDoubleObj;
+
+    @Override public Slot getParentSlot() {
+        return SlottedController.RootSlot;
+    }
+
+    @Override public Slot[] getChildSlots() {
+        return new Slot[0];
+    }
+}
@@ -1,9 +1,17 @@
 package com.googlecode.slotted.testharness.client;
 
+import com.google.gwt.http.client.URL;
 import com.google.gwt.junit.client.GWTTestCase;
+import com.googlecode.slotted.client.AutoTokenizer;
+import com.googlecode.slotted.client.CompactTokenCodec;
+import com.googlecode.slotted.client.HistoryMapper;
+import com.googlecode.slotted.client.PlaceParameters;
 import com.googlecode.slotted.client.SlottedPlace;
+import com.googlecode.slotted.client.TokenizerUtil;
 import com.googlecode.slotted.testharness.client.flow.HomePlace;
 import com.googlecode.slotted.testharness.client.tokenizer.BasePlace;
+import com.googlecode.slotted.testharness.client.tokenizer.CompactPlace;
+import com.googlecode.slotted.testharness.client.tokenizer.GlobalPlace;
 
 import java.sql.Timestamp;
 import java.util.Date;
@@ -28,6 +36,7 @@ public class AutoTokenizerTests extends GWTTestCase {
         BasePlace clone = TestHarness.slottedController.clonePlace(place);
 
         assertEquals(place, clone);
+        assertEquals(place.hashCode(), clone.hashCode());
         assertEquals(place.superString, clone.superString);
         assertNull(clone.superString);
         assertEquals(place.baseString, clone.baseString);
@@ -95,6 +104,8 @@ public class AutoTokenizerTests extends GWTTestCase {
         BasePlace clone = TestHarness.slottedController.clonePlace(place);
 
         assertEquals(place, clone);
+        assertEquals(place.hashCode(), clone.hashCode());
+        assertFalse(place.hashCode() == new BasePlace().hashCode());
         assertEquals(place.superString, clone.superString);
         assertNotNull(clone.superString);
         assertEquals(place.baseString, clone.baseString);
@@ -154,4 +165,391 @@ public class AutoTokenizerTests extends GWTTestCase {
         assertNull(clone.baseTimestamp);
     }
 
-}
\ No newline at end of file
+    @SuppressWarnings("UnusedDeclaration")
+    public void testParseTokenParameters() {
+        SlottedPlace[] places = TestHarness.slottedController.getHistoryMapper()
+                .parseToken("base?key1=a%20b&key2=c%26d&key3=");
+
+        assertEquals(1, places.length);
+        PlaceParameters parameters = places[0].getPlaceParameters();
+        assertEquals("a b", parameters.get("key1"));
+        assertEquals("c&d", parameters.get("key2"));
+        assertEquals("", parameters.get("key3"));
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    public void testCreateTokenEscapesParameters() {
+        BasePlace place = new BasePlace();
+        place.setParameter("key", "a b&c=d/e?f");
+        String token = TestHarness.slottedController.getHistoryMapper().createToken(place);
+
+        assertTrue(token.endsWith("?key=a+b%26c%3Dd%2Fe%3Ff"));
+        SlottedPlace[] places = TestHarness.slottedController.getHistoryMapper().parseToken(token);
+        assertEquals("a b&c=d/e?f", places[0].getPlaceParameters().get("key"));
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    public void testTokenCache() {
+        HistoryMapper historyMapper = TestHarness.slottedController.getHistoryMapper();
+        historyMapper.setTokenCacheSize(1);
+        try {
+            int hits = historyMapper.getTokenCacheHits();
+            int misses = historyMapper.getTokenCacheMisses();
+            SlottedPlace[] first = historyMapper.parseToken("base?key=1");
+            SlottedPlace[] second = historyMapper.parseToken("base?key=1");
+            assertEquals(hits + 1, historyMapper.getTokenCacheHits());
+            assertEquals(misses + 1, historyMapper.getTokenCacheMisses());
+            assertNotSame(first[0], second[0]);
+            assertEquals(first[0], second[0]);
+            assertEquals("1", second[0].getPlaceParameters().get("key"));
+            assertNotSame(first[0].getPlaceParameters(), second[0].getPlaceParameters());
+
+            // Hits copy a cached prototype, so changing a returned Place doesn't change later parses.
+            ((BasePlace) second[0]).baseInt = 99;
+            SlottedPlace[] third = historyMapper.parseToken("base?key=1");
+            assertEquals(first[0], third[0]);
+            assertFalse(99 == ((BasePlace) third[0]).baseInt);
+
+            historyMapper.parseToken("base?key=2");
+            historyMapper.parseToken("base?key=1");
+            assertEquals(misses + 3, historyMapper.getTokenCacheMisses());
+            assertEquals(hits + 2, historyMapper.getTokenCacheHits());
+        } finally {
+            historyMapper.setTokenCacheSize(0);
+        }
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    public void testParseTokenMalformed() {
+        try {
+            TestHarness.slottedController.getHistoryMapper().parseToken("Base?key1=a&key2");
+            fail("Expected IllegalStateException because '=' is missing");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().startsWith("Missing '=' in global parameter at index 12"));
+        }
+
+        try {
+            TestHarness.slottedController.getHistoryMapper().parseToken("Base//Base");
+            fail("Expected IllegalStateException because of the empty Place");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().startsWith("Empty Place at index 5"));
+        }
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    public void testClonePlaceCopiesFields() {
+        BasePlace place = new BasePlace();
+        place.baseString = "Value";
+        place.baseDate = new Date(1234567890);
+        place.baseTimestamp = new Timestamp(1234567890);
+        place.baseTimestamp.setNanos(123456789);
+        place.setParameter("key1", "a b");
+
+        BasePlace clone = TestHarness.slottedController.clonePlace(place);
+
+        assertNotSame(place, clone);
+        assertEquals(place, clone);
+        assertEquals("Value", clone.baseString);
+        assertNotSame(place.baseDate, clone.baseDate);
+        assertEquals(place.baseDate, clone.baseDate);
+        assertNotSame(place.baseTimestamp, clone.baseTimestamp);
+        assertEquals(123456789, clone.baseTimestamp.getNanos());
+        assertEquals("a b", clone.getParameter("key1"));
+
+        clone.baseDate.setTime(0);
+        assertEquals(1234567890, place.baseDate.getTime());
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    public void testLongAndPrivateFields() {
+        BasePlace place = new BasePlace();
+        place.baseLong = 9007199254740993L;
+        place.setBasePrivate("Private");
+
+        String token = TestHarness.slottedController.createToken(place);
+        BasePlace parsed = (BasePlace) TestHarness.slottedController.getHistoryMapper().parseToken(token)[0];
+        assertEquals(place, parsed);
+        assertEquals(9007199254740993L, parsed.baseLong);
+        assertEquals("Private", parsed.getBasePrivate());
+
+        parsed.baseLong = 1;
+        assertFalse(place.equals(parsed));
+    }
+
+    @SuppressWarnings({"UnusedDeclaration", "unchecked"})
+    public void testTokenEquals() {
+        HistoryMapper historyMapper = TestHarness.slottedController.getHistoryMapper();
+        AutoTokenizer<GlobalPlace> globalTokenizer = AutoTokenizer.tokenizers.get(GlobalPlace.class);
+        GlobalPlace global1 = new GlobalPlace();
+        GlobalPlace global2 = new GlobalPlace();
+        global1.globalString = "value";
+        global2.globalString = "value";
+        assertTrue(globalTokenizer.tokenEquals(global1, global2));
+        assertEquals(historyMapper.createToken(global1), historyMapper.createToken(global2));
+
+        // The global parameter fields aren't written in the Place's token, and are compared as global parameters.
+        global2.globalLongObj = 5L;
+        assertTrue(globalTokenizer.tokenEquals(global1, global2));
+        assertEquals(historyMapper.createToken(global1), historyMapper.createToken(global2));
+
+        AutoTokenizer<BasePlace> baseTokenizer = AutoTokenizer.tokenizers.get(BasePlace.class);
+        BasePlace base1 = new BasePlace(1, null, null);
+        BasePlace base2 = new BasePlace(1, null, null);
+        assertTrue(baseTokenizer.tokenEquals(base1, base2));
+        base2.superString = "changed";
+        assertFalse(baseTokenizer.tokenEquals(base1, base2));
+        assertFalse(historyMapper.createToken(base1).equals(historyMapper.createToken(base2)));
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    public void testFloatingPointEqualsMatchesHashCode() {
+        BasePlace place1 = new BasePlace();
+        BasePlace place2 = new BasePlace();
+        place1.baseDouble = Double.NaN;
+        place2.baseDouble = Double.NaN;
+        place1.baseFloat = Float.NaN;
+        place2.baseFloat = Float.NaN;
+        assertEquals(place1, place2);
+        assertEquals(place1.hashCode(), place2.hashCode());
+
+        place1.baseDouble = 0.0;
+        place2.baseDouble = -0.0;
+        assertFalse(place1.equals(place2));
+
+        place2.baseDouble = 0.0;
+        place1.baseFloat = 0.0f;
+        place2.baseFloat = -0.0f;
+        assertFalse(place1.equals(place2));
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    public void testTokenizerUtil() {
+        String token = TokenizerUtil.build()
+                .add("a b&c")
+                .add((String) null)
+                .add("")
+                .add(-12)
+                .add(9007199254740993L)
+                .add((Integer) null)
+                .add(Integer.valueOf(7))
+                .add('&')
+                .add(true)
+                .tokenize();
+        assertEquals("a%20b%26c&#&&-12&9007199254740993&&7&%26&true", token);
+
+        TokenizerUtil extractor = TokenizerUtil.extract(token);
+        assertEquals("a b&c", extractor.get());
+        assertNull(extractor.get());
+        assertEquals("", extractor.get());
+        assertEquals(-12, extractor.getint());
+        assertEquals(9007199254740993L, extractor.getlong());
+        assertNull(extractor.getInteger());
+        assertEquals(Integer.valueOf(7), extractor.getInteger());
+        assertEquals('&', extractor.getchar());
+        assertTrue(extractor.getboolean());
+        assertFalse(extractor.hasMore());
+        assertEquals(0, extractor.getint());
+        assertNull(extractor.getLong());
+
+        extractor = TokenizerUtil.extract("1&&");
+        assertEquals(1, extractor.getint());
+        assertFalse(extractor.hasMore());
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    public void testTokenizerUtilTypedWrappers() {
+        String token = TokenizerUtil.build()
+                .add((byte) -3)
+                .add((short) 300)
+                .add(Byte.valueOf((byte) 4))
+                .add(Short.valueOf((short) -5))
+                .add(Float.valueOf(1.5f))
+                .add(Double.valueOf(-2.25d))
+                .add(Boolean.TRUE)
+                .add(Character.valueOf('/'))
+                .add((Double) null)
+                .add(1)
+                .tokenize();
+        assertEquals("-3&300&4&-5&1.5&-2.25&true&%2F&&1", token);
+
+        TokenizerUtil extractor = TokenizerUtil.extract(token);
+        assertEquals(-3, extractor.getbyte());
+        assertEquals(300, extractor.getshort());
+        assertEquals(Byte.valueOf((byte) 4), extractor.getByte());
+        assertEquals(Short.valueOf((short) -5), extractor.getShort());
+        assertEquals(Float.valueOf(1.5f), extractor.getFloat());
+        assertEquals(Double.valueOf(-2.25d), extractor.getDouble());
+        assertEquals(Boolean.TRUE, extractor.getBoolean());
+        assertEquals(Character.valueOf('/'), extractor.getCharacter());
+        assertNull(extractor.getDouble());
+        assertEquals(1, extractor.getint());
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    public void testTokenizerUtilEdgeCases() {
+        // An empty token has one empty parameter.
+        TokenizerUtil extractor = TokenizerUtil.extract("");
+        assertTrue(extractor.hasMore());
+        assertEquals("", extractor.get());
+        assertFalse(extractor.hasMore());
+
+        // Only separators means there are no parameters.
+        extractor = TokenizerUtil.extract("&&");
+        assertFalse(extractor.hasMore());
+        assertEquals("", extractor.get());
+        assertNull(extractor.getInteger());
+
+        extractor = TokenizerUtil.extract("a&&b");
+        assertEquals("a", extractor.get());
+        assertEquals("", extractor.get());
+        assertEquals("b", extractor.get());
+        assertFalse(extractor.hasMore());
+
+        extractor = TokenizerUtil.extract("#&%23&a%26b%20c&%25");
+        assertNull(extractor.get());
+        assertEquals("#", extractor.get());
+        assertEquals("a&b c", extractor.get());
+        assertEquals("%", extractor.get());
+        assertFalse(extractor.hasMore());
+
+        assertEquals("#&%23&%25", TokenizerUtil.build().add((String) null).add("#").add("%").tokenize());
+        assertEquals("", TokenizerUtil.build().tokenize());
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    public void testCompactTokenCodec() {
+        CompactPlace place = new CompactPlace();
+        place.compactString = "a/b:c";
+        place.compactInt = -1;
+        place.compactLong = 9007199254740993L;
+        place.compactDouble = 1.5d;
+        place.compactChar = '&';
+        place.compactBoolean = true;
+        place.compactIntegerObj = 64;
+        place.compactDate = new Date(1234567890);
+
+        HistoryMapper historyMapper = TestHarness.slottedController.getHistoryMapper();
+        String token = historyMapper.createToken(place);
+        assertTrue(token.startsWith("compact:"));
+        assertEquals(-1, token.indexOf('/'));
+        assertEquals(-1, token.indexOf('&'));
+
+        CompactPlace parsed = (CompactPlace) historyMapper.parseToken(token)[0];
+        assertEquals(place, parsed);
+        assertEquals("a/b:c", parsed.compactString);
+        assertNull(parsed.compactNullString);
+        assertEquals(-1, parsed.compactInt);
+        assertEquals(9007199254740993L, parsed.compactLong);
+        assertEquals(1.5d, parsed.compactDouble);
+        assertEquals('&', parsed.compactChar);
+        assertTrue(parsed.compactBoolean);
+        assertEquals(Integer.valueOf(64), parsed.compactIntegerObj);
+        assertNull(parsed.compactBooleanObj);
+        assertEquals(place.compactDate, parsed.compactDate);
+
+        CompactPlace empty = (CompactPlace) historyMapper.parseToken("compact")[0];
+        assertEquals(0, empty.compactInt);
+        assertNull(empty.compactIntegerObj);
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    public void testCompactTokenCodecDecodedToken() {
+        String value = "a b\u00e9\ud83d\ude00%";
+        String token = new CompactTokenCodec().add(value).add("next").add(7).tokenize();
+        assertTrue(token.indexOf('%') >= 0);
+
+        // The lengths count decoded characters, so a token that had its escapes decoded is read the same way.
+        for (String readToken: new String[] {token, URL.decodePathSegment(token)}) {
+            CompactTokenCodec codec = new CompactTokenCodec(readToken);
+            assertEquals(value, codec.get());
+            assertEquals("next", codec.get());
+            assertEquals(7, codec.getint());
+            assertFalse(codec.hasMore());
+        }
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    public void testPlaceNameDictionary() {
+        HistoryMapper historyMapper = TestHarness.slottedController.getHistoryMapper();
+        try {
+            historyMapper.setPlaceNameDictionary("home", "base");
+            BasePlace place = new BasePlace();
+            place.baseInt = 5;
+            String token = historyMapper.createToken(place);
+            assertTrue(token.startsWith("~1:"));
+
+            assertEquals(place, historyMapper.parseToken(token)[0]);
+            assertEquals(place, historyMapper.parseToken(token.replace("~1:", "base:"))[0]);
+        } finally {
+            historyMapper.setPlaceNameDictionary();
+        }
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    public void testTypedPlaceParameters() {
+        PlaceParameters parameters = new PlaceParameters();
+        parameters.set("int", 5);
+        parameters.set("double", 1.5d);
+        parameters.set("string", "7");
+        parameters.set(PlaceParameters.Key.get("boolean"), true);
+
+        // Only the names declared by Places are interned, and other Keys are equal to them.
+        assertSame(PlaceParameters.Key.intern("globalInt"), PlaceParameters.Key.get("globalInt"));
+        assertNotSame(PlaceParameters.Key.get("int"), PlaceParameters.Key.get("int"));
+        assertEquals(PlaceParameters.Key.get("int"), PlaceParameters.Key.get("int"));
+        assertEquals(5, parameters.getInt("int"));
+        assertEquals("5", parameters.get("int"));
+        assertEquals(5L, parameters.getLong("int"));
+        assertEquals(1.5d, parameters.getDouble("double"));
+        assertEquals(7, parameters.getInt("string"));
+        assertTrue(parameters.getBoolean("boolean"));
+        assertEquals("true", parameters.getParameter("boolean"));
+        assertNull(parameters.get("missing"));
+        assertEquals(0, parameters.getInt("missing"));
+        assertEquals("?int=5&double=1.5&string=7&boolean=true", parameters.toString());
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    public void testGlobalParameterFields() {
+        HistoryMapper historyMapper = TestHarness.slottedController.getHistoryMapper();
+        GlobalPlace place = new GlobalPlace();
+        place.globalString = "a b";
+        place.globalInt = 3;
+        place.globalBoolean = true;
+
+        PlaceParameters parameters = new PlaceParameters();
+        historyMapper.extractParameters(place, parameters);
+        assertEquals("a b", parameters.get("globalString"));
+        assertEquals(3, parameters.getInt("globalInt"));
+        assertEquals("true", parameters.get("globalBoolean"));
+
+        GlobalPlace parsed = (GlobalPlace) historyMapper.parseToken(
+                "global?globalString=c+d&globalInt=4&globalBoolean=true")[0];
+        assertEquals("c d", parsed.globalString);
+        assertEquals(4, parsed.globalInt);
+        assertTrue(parsed.globalBoolean);
+        assertNull(parsed.globalLongObj);
+        assertNull(parsed.globalDoubleObj);
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    public void testBoxedGlobalParameterFields() {
+        HistoryMapper historyMapper = TestHarness.slottedController.getHistoryMapper();
+        GlobalPlace place = new GlobalPlace();
+        place.globalLongObj = 9007199254740993L;
+        place.globalFloatObj = 1.5f;
+
+        PlaceParameters parameters = new PlaceParameters();
+        historyMapper.extractParameters(place, parameters);
+        assertEquals(9007199254740993L, parameters.getLong("globalLongObj"));
+        assertEquals(1.5f, parameters.getFloat("globalFloatObj"));
+        assertNull(parameters.get("globalDoubleObj"));
+
+        GlobalPlace parsed = (GlobalPlace) historyMapper.parseToken(
+                "global?globalLongObj=12&globalFloatObj=2.5&globalDoubleObj=")[0];
+        assertEquals(Long.valueOf(12), parsed.globalLongObj);
+        assertEquals(Float.valueOf(2.5f), parsed.globalFloatObj);
+        assertNull(parsed.globalDoubleObj);
+    }
+
+}
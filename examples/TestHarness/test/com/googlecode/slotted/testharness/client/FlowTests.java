@@ -1,7 +1,14 @@
 package com.googlecode.slotted.testharness.client;
 
 import com.google.gwt.junit.client.GWTTestCase;
+import com.google.web.bindery.event.shared.HandlerRegistration;
+import com.googlecode.slotted.client.ActivityPool;
+import com.googlecode.slotted.client.ActivityProfile;
+import com.googlecode.slotted.client.ActivityProfiler;
+import com.googlecode.slotted.client.CacheLimit;
 import com.googlecode.slotted.client.LoadingEvent;
+import com.googlecode.slotted.client.NavigationTiming;
+import com.googlecode.slotted.client.NavigationTimingEvent;
 import com.googlecode.slotted.client.PlaceParameters;
 import com.googlecode.slotted.client.SlottedPlace;
 import com.googlecode.slotted.testharness.client.flow.A1a1aPlace;
@@ -19,6 +26,8 @@ import com.googlecode.slotted.testharness.client.flow.CacheAPlace;
 import com.googlecode.slotted.testharness.client.flow.CacheBPlace;
 import com.googlecode.slotted.testharness.client.flow.GParam1aPlace;
 import com.googlecode.slotted.testharness.client.flow.GParam1bPlace;
+import com.googlecode.slotted.testharness.client.flow.GParam2aPlace;
+import com.googlecode.slotted.testharness.client.flow.GParamPlace;
 import com.googlecode.slotted.testharness.client.flow.GoTo1aPlace;
 import com.googlecode.slotted.testharness.client.flow.GoTo1bPlace;
 import com.googlecode.slotted.testharness.client.flow.GoTo2aPlace;
@@ -29,6 +38,8 @@ import com.googlecode.slotted.testharness.client.flow.HomePlace;
 import com.googlecode.slotted.testharness.client.flow.Loading1aPlace;
 import com.googlecode.slotted.testharness.client.flow.LoadingPlace;
 import com.googlecode.slotted.testharness.client.flow.OnCancelPlace;
+import com.googlecode.slotted.testharness.client.flow.RecycleActivity;
+import com.googlecode.slotted.testharness.client.flow.RecyclePlace;
 
 public class FlowTests extends GWTTestCase {
     @Override public String getModuleName() {
@@ -439,6 +450,74 @@ public class FlowTests extends GWTTestCase {
         assertEquals("set", params.getParameter("GParam2a"));
     }
 
+    public void testRefreshParameters() {
+        TestHarness.slottedController.goTo(new GParam1aPlace());
+        TestActivity gParamActivity = TestPlace.getActivity(GParamPlace.class);
+        TestActivity gParam2aActivity = TestPlace.getActivity(GParam2aPlace.class);
+        gParamActivity.refreshParameters = new String[] {"GParam"};
+
+        TestPlace.resetCounts();
+        TestHarness.slottedController.goTo(new GParam1bPlace());
+        assertEquals(0, gParamActivity.onRefreshCount);
+        assertEquals(1, gParam2aActivity.onRefreshCount);
+        assertTrue(gParam2aActivity.lastChanges.isChanged("GParam1a"));
+        assertTrue(gParam2aActivity.lastChanges.isChanged("GParam1b"));
+        assertFalse(gParam2aActivity.lastChanges.isChanged("GParam"));
+        assertFalse(gParam2aActivity.lastChanges.isPlaceChanged());
+
+        gParamActivity.refreshParameters = new String[] {"GParam1a"};
+        TestPlace.resetCounts();
+        TestHarness.slottedController.goTo(new GParam1aPlace());
+        assertEquals(1, gParamActivity.onRefreshCount);
+        assertTrue(gParamActivity.lastChanges.isChanged("GParam1a"));
+
+        TestPlace.resetCounts();
+        TestHarness.slottedController.goTo(new GParam1aPlace());
+        assertEquals(0, gParamActivity.onRefreshCount);
+        assertEquals(1, gParam2aActivity.onRefreshCount);
+        assertTrue(gParam2aActivity.lastChanges.getChangedParameters().isEmpty());
+    }
+
+    class TimingHandler implements NavigationTimingEvent.Handler {
+        public int count = 0;
+        public NavigationTiming timing;
+
+        @Override public void onNavigationTiming(NavigationTimingEvent event) {
+            count++;
+            timing = event.getTiming();
+        }
+    }
+
+    public void testNavigationTiming() {
+        TimingHandler timingHandler = new TimingHandler();
+        HandlerRegistration registration = TestHarness.slottedController.getEventBus()
+                .addHandler(NavigationTimingEvent.Type, timingHandler);
+        TestHarness.slottedController.setPerformanceMarks(true);
+        try {
+            TestHarness.slottedController.goTo(new APlace());
+            assertEquals(1, timingHandler.count);
+            NavigationTiming timing = timingHandler.timing;
+            assertEquals(TestHarness.slottedController.createToken(new APlace()), timing.getToken());
+            assertTrue(timing.isViewsShown());
+            assertNotNull(timing.getSlowestSlot());
+            assertNotNull(timing.getSlowestPlace());
+
+            double sum = 0;
+            for (NavigationTiming.Phase phase: NavigationTiming.Phase.values()) {
+                assertTrue(timing.getMillis(phase) >= 0);
+                sum += timing.getMillis(phase);
+            }
+            assertEquals(timing.getTotalMillis(), sum, 0.001);
+            assertEquals(0d, timing.getMillis(NavigationTiming.Phase.Override));
+
+            TestHarness.slottedController.goTo(new APlace());
+            assertEquals(2, timingHandler.count);
+        } finally {
+            TestHarness.slottedController.setPerformanceMarks(false);
+            registration.removeHandler();
+        }
+    }
+
     class LoadingHandler implements LoadingEvent.Handler {
         public int startCount = 0;
         public int stopCount = 0;
@@ -564,6 +643,56 @@ public class FlowTests extends GWTTestCase {
         assertEquals(0, loading1aActivity.onRefreshCount);
     }
 
+    public void testActivityProfiler() {
+        ActivityProfiler profiler = new ActivityProfiler(2);
+        TestHarness.slottedController.setActivityProfiler(profiler);
+        try {
+            TestActivity loading1aActivity = TestPlace.getActivity(new Loading1aPlace());
+            loading1aActivity.isStartLoading = true;
+            loading1aActivity.loadingLabels = new String[] {"data", "images"};
+
+            TestHarness.slottedController.goTo(new LoadingPlace());
+            ActivityProfiler.NavigationProfile navigation = profiler.getLastNavigation();
+            ActivityProfile root = navigation.getRoot();
+            assertTrue(root.getPlace() instanceof LoadingPlace);
+            assertTrue(root.isStarted());
+            assertTrue(root.getWidgetMillis() >= 0);
+            assertEquals(1, root.getChildren().size());
+
+            ActivityProfile child = root.getChildren().get(0);
+            assertTrue(child.getPlace() instanceof Loading1aPlace);
+            assertSame(child, navigation.getBlocking());
+            assertTrue(child.isBlocking());
+            assertTrue(child.isLoading());
+            assertTrue(child.getLoadingMillis().isEmpty());
+
+            loading1aActivity.setLoadingComplete("data");
+            assertEquals(1, child.getLoadingMillis().size());
+            assertTrue(child.isLoading());
+            loading1aActivity.setLoadingComplete("images");
+            assertTrue(child.getLoadingMillis().containsKey("images"));
+            assertFalse(child.isLoading());
+            assertTrue(child.getReadyMillis() >= child.getLoadingMillis().get("images"));
+
+            ActivityProfiler.PlaceStats stats = profiler.getPlaceStats(Loading1aPlace.class);
+            assertEquals(1, stats.getStartCount());
+            assertEquals(1, stats.getBlockingCount());
+            assertEquals(child.getReadyMillis(), stats.getReadyMillis(), 0.001);
+            assertEquals(2, profiler.getWorstPlaces(5).size());
+            assertEquals(1, profiler.getWorstPlaces(1).size());
+
+            TestHarness.slottedController.goTo(new LoadingPlace());
+            TestHarness.slottedController.goTo(new LoadingPlace());
+            assertEquals(2, profiler.getNavigations().size());
+            root = profiler.getLastNavigation().getRoot();
+            assertFalse(root.isStarted());
+            assertNull(profiler.getLastNavigation().getBlocking());
+            assertEquals(1, profiler.getPlaceStats(LoadingPlace.class).getStartCount());
+        } finally {
+            TestHarness.slottedController.setActivityProfiler(null);
+        }
+    }
+
     public void testActivityCache() {
         TestHarness.slottedController.goTo(new CacheAPlace(1));
 
@@ -640,6 +769,32 @@ public class FlowTests extends GWTTestCase {
 
     }
 
+    public void testActivityCacheLimit() {
+        TestHarness.slottedController.setCacheLimit(CacheAPlace.class, new CacheLimit(1));
+        try {
+            TestHarness.slottedController.goTo(new CacheAPlace(1));
+            TestActivity cacheA1Activity = TestPlace.getActivity(new CacheAPlace(1));
+            TestHarness.slottedController.goTo(new CacheAPlace(2));
+            TestActivity cacheA2Activity = TestPlace.getActivity(new CacheAPlace(2));
+            assertEquals(1, cacheA1Activity.onBackgroundCount);
+            assertEquals(0, cacheA1Activity.onStopCount);
+
+            //backgrounding the second Activity evicts the least recently backgrounded
+            TestHarness.slottedController.goTo(new CacheAPlace(3));
+            assertEquals(1, cacheA1Activity.onStopCount);
+            assertEquals(1, cacheA2Activity.onBackgroundCount);
+            assertEquals(0, cacheA2Activity.onStopCount);
+
+            //evicted Activity is started again
+            cacheA1Activity.resetCounts();
+            TestHarness.slottedController.goTo(new CacheAPlace(1));
+            assertEquals(1, TestPlace.getActivity(new CacheAPlace(1)).startCount);
+        } finally {
+            TestHarness.slottedController.setCacheLimit(CacheAPlace.class, null);
+            TestHarness.slottedController.goTo(new HomePlace());
+        }
+    }
+
     public void testActivityBackgroundSamePlaceTypeCache() {
         TestHarness.slottedController.goTo(new CacheAPlace(1));
 
@@ -761,6 +916,173 @@ public class FlowTests extends GWTTestCase {
         assertFalse(token.contains("B1a"));
     }
 
+    public void testDoubleBuffered() {
+        TestHarness.slottedController.setDoubleBuffered(true);
+        try {
+            TestActivity aActivity = TestPlace.getActivity(new APlace());
+            TestActivity a1aActivity = TestPlace.getActivity(new A1aPlace());
+            TestActivity loadingActivity = TestPlace.getActivity(new LoadingPlace());
+            TestActivity loading1aActivity = TestPlace.getActivity(new Loading1aPlace());
+            loading1aActivity.isStartLoading = true;
+
+            TestHarness.slottedController.goTo(new APlace());
+            assertTrue(aActivity.testDisplay.isAttached());
+            TestPlace.resetCounts();
+
+            TestHarness.slottedController.goTo(new LoadingPlace());
+            assertEquals(1, loadingActivity.startCount);
+            assertEquals(1, loading1aActivity.startCount);
+            assertEquals(0, aActivity.onStopCount);
+            assertEquals(0, a1aActivity.onStopCount);
+            assertTrue(aActivity.testDisplay.isAttached());
+            assertFalse(loadingActivity.testDisplay.isAttached());
+
+            loading1aActivity.setLoadingComplete();
+            assertEquals(1, aActivity.onStopCount);
+            assertEquals(1, a1aActivity.onStopCount);
+            assertFalse(aActivity.testDisplay.isAttached());
+            assertTrue(loadingActivity.testDisplay.isAttached());
+            assertTrue(loading1aActivity.testDisplay.isAttached());
+
+            TestActivity a1bActivity = TestPlace.getActivity(new A1bPlace());
+            TestHarness.slottedController.goTo(new APlace());
+            TestPlace.resetCounts();
+            try {
+                a1bActivity.isThrowException = true;
+                TestHarness.slottedController.goTo(new A1bPlace());
+            } catch (Exception e) {/*ignore*/}
+
+            assertEquals(1, a1bActivity.startCount);
+            assertEquals(1, a1bActivity.onStopCount);
+            assertEquals(1, a1aActivity.mayStopCount);
+            assertEquals(0, a1aActivity.onStopCount);
+            assertTrue(a1aActivity.testDisplay.isAttached());
+            assertSame(a1aActivity, TestHarness.slottedController.getCurrentActivityByPlace(A1aPlace.class));
+            assertNotNull(TestHarness.slottedController.getCurrentPlace(A1aPlace.class));
+
+            a1bActivity.isThrowException = false;
+            TestHarness.slottedController.goTo(new A1bPlace());
+            assertEquals(1, a1aActivity.onStopCount);
+            assertTrue(a1bActivity.testDisplay.isAttached());
+        } finally {
+            TestHarness.slottedController.setDoubleBuffered(false);
+        }
+    }
+
+    public void testDoubleBufferedRestoresRefreshedPlace() {
+        TestActivity aActivity = TestPlace.getActivity(new APlace());
+        TestActivity a1bActivity = TestPlace.getActivity(new A1bPlace());
+        TestHarness.slottedController.setDoubleBuffered(true);
+        try {
+            APlace aPlace = new APlace();
+            TestHarness.slottedController.goTo(aPlace);
+            TestPlace.resetCounts();
+
+            try {
+                a1bActivity.isThrowException = true;
+                TestHarness.slottedController.goTo(new APlace(), new A1bPlace());
+            } catch (Exception e) {/*ignore*/}
+
+            // The A slot was refreshed with a new APlace, so it is refreshed again with the displayed one.
+            assertEquals(2, aActivity.onRefreshCount);
+            assertEquals(0, aActivity.onStopCount);
+            assertSame(aPlace, TestHarness.slottedController.getCurrentPlace(APlace.class));
+            assertNotNull(TestHarness.slottedController.getCurrentPlace(A1aPlace.class));
+        } finally {
+            a1bActivity.isThrowException = false;
+            TestHarness.slottedController.setDoubleBuffered(false);
+        }
+    }
+
+    public void testDoubleBufferedTurnedOff() {
+        TestActivity aActivity = TestPlace.getActivity(new APlace());
+        TestActivity loading1aActivity = TestPlace.getActivity(new Loading1aPlace());
+        TestHarness.slottedController.setDoubleBuffered(true);
+        try {
+            TestHarness.slottedController.goTo(new APlace());
+            TestPlace.resetCounts();
+            loading1aActivity.isStartLoading = true;
+
+            TestHarness.slottedController.goTo(new LoadingPlace());
+            assertEquals(0, aActivity.onStopCount);
+        } finally {
+            TestHarness.slottedController.setDoubleBuffered(false);
+        }
+
+        // The Activities buffered before double buffering was turned off are still stopped when shown.
+        loading1aActivity.setLoadingComplete();
+        assertEquals(1, aActivity.onStopCount);
+        assertFalse(aActivity.testDisplay.isAttached());
+    }
+
+    public void testActivityPool() {
+        ActivityPool pool = TestHarness.slottedController.getActivityPool();
+        pool.clear();
+        RecyclePlace.createCount = 0;
+
+        TestHarness.slottedController.goTo(new RecyclePlace());
+        RecycleActivity first = (RecycleActivity) TestHarness.slottedController.getCurrentActivityByPlace(RecyclePlace.class);
+        assertEquals(1, RecyclePlace.createCount);
+        assertEquals(1, first.startCount);
+
+        TestHarness.slottedController.goTo(new HomePlace());
+        assertEquals(1, first.onStopCount);
+        assertEquals(1, first.recycleCount);
+        assertEquals(1, pool.getStats(RecyclePlace.class).getSize());
+
+        // A late loading callback of the pooled Activity is ignored.
+        first.setLoadingStarted();
+        first.setLoadingComplete();
+
+        TestHarness.slottedController.goTo(new RecyclePlace());
+        assertEquals(1, RecyclePlace.createCount);
+        assertSame(first, TestHarness.slottedController.getCurrentActivityByPlace(RecyclePlace.class));
+        assertEquals(2, first.startCount);
+        assertTrue(first.testDisplay.isAttached());
+
+        ActivityPool.PoolStats stats = pool.getStats(RecyclePlace.class);
+        assertEquals(0, stats.getSize());
+        assertEquals(1, stats.getHits());
+        assertEquals(1, stats.getMisses());
+        assertEquals(0.5, stats.getHitRate());
+
+        pool.setMaxSize(RecyclePlace.class, 0);
+        try {
+            TestHarness.slottedController.goTo(new HomePlace());
+            assertEquals(2, first.onStopCount);
+            assertEquals(1, first.recycleCount);
+            assertEquals(0, stats.getSize());
+
+            TestHarness.slottedController.goTo(new RecyclePlace());
+            assertEquals(2, RecyclePlace.createCount);
+        } finally {
+            pool.setMaxSize(RecyclePlace.class, 1);
+        }
+    }
+
+    public void testActivityPoolNeedsActivityClass() {
+        ActivityPool pool = TestHarness.slottedController.getActivityPool();
+        pool.clear();
+        RecyclePlace.createCount = 0;
+        RecyclePlace.declareActivityClass = false;
+        try {
+            TestHarness.slottedController.goTo(new RecyclePlace());
+            RecycleActivity first = (RecycleActivity) TestHarness.slottedController.getCurrentActivityByPlace(RecyclePlace.class);
+            TestHarness.slottedController.goTo(new HomePlace());
+            assertEquals(1, first.onStopCount);
+            assertEquals(0, first.recycleCount);
+            assertNull(pool.getStats(RecyclePlace.class));
+
+            TestHarness.slottedController.goTo(new RecyclePlace());
+            assertEquals(2, RecyclePlace.createCount);
+            assertNotSame(first, TestHarness.slottedController.getCurrentActivityByPlace(RecyclePlace.class));
+        } finally {
+            RecyclePlace.declareActivityClass = true;
+            TestHarness.slottedController.goTo(new HomePlace());
+            pool.clear();
+        }
+    }
+
     public void testStartException() {
         TestActivity aActivity = TestPlace.getActivity(new APlace());
         TestActivity a1aActivity = TestPlace.getActivity(new A1aPlace());
@@ -1,14 +1,89 @@
 package com.googlecode.slotted.testharness.client;
 
+import com.google.gwt.activity.shared.Activity;
+import com.google.gwt.core.client.Callback;
+import com.google.gwt.core.client.GWT;
+import com.google.gwt.dom.client.Document;
+import com.google.gwt.event.dom.client.DomEvent;
+import com.google.gwt.event.shared.EventHandler;
+import com.google.gwt.event.shared.GwtEvent;
 import com.google.gwt.junit.client.GWTTestCase;
 import com.google.gwt.place.shared.Place;
+import com.google.gwt.user.client.Timer;
+import com.google.gwt.user.client.Window.ClosingHandler;
+import com.google.gwt.user.client.ui.Anchor;
+import com.google.gwt.user.client.ui.RootPanel;
+import com.google.gwt.user.client.ui.SimplePanel;
+import com.google.web.bindery.event.shared.HandlerRegistration;
+import com.google.web.bindery.event.shared.ResettableEventBus;
+import com.googlecode.slotted.client.ActivityCache;
+import com.googlecode.slotted.client.EventBusStats;
+import com.googlecode.slotted.client.NavigationPlan;
+import com.googlecode.slotted.client.NewPlacesEvent;
+import com.googlecode.slotted.client.PlaceFactory;
+import com.googlecode.slotted.client.PlaceParameters;
+import com.googlecode.slotted.client.PrefetchScheduler;
+import com.googlecode.slotted.client.Slot;
+import com.googlecode.slotted.client.SlotTopology;
 import com.googlecode.slotted.client.SlottedController;
+import com.googlecode.slotted.client.SlottedEventBus;
+import com.googlecode.slotted.client.SlottedPlace;
+import com.googlecode.slotted.client.widgets.IntentPrefetcher;
+import com.googlecode.slotted.client.widgets.SlottedHyperlink;
+import com.googlecode.slotted.client.widgets.SlottedNavWidgetHelper;
+import com.googlecode.slotted.client.widgets.SlottedTabBar;
+import com.googlecode.slotted.testharness.client.flow.A1a1aPlace;
 import com.googlecode.slotted.testharness.client.flow.A1aPlace;
+import com.googlecode.slotted.testharness.client.flow.A1b1aPlace;
+import com.googlecode.slotted.testharness.client.flow.A1b1bPlace;
+import com.googlecode.slotted.testharness.client.flow.A1bPlace;
 import com.googlecode.slotted.testharness.client.flow.APlace;
+import com.googlecode.slotted.testharness.client.flow.B1aPlace;
+import com.googlecode.slotted.testharness.client.flow.B1bPlace;
+import com.googlecode.slotted.testharness.client.flow.B2aPlace;
+import com.googlecode.slotted.testharness.client.flow.B2bPlace;
+import com.googlecode.slotted.testharness.client.flow.BPlace;
+import com.googlecode.slotted.testharness.client.flow.CacheA1aPlace;
+import com.googlecode.slotted.testharness.client.flow.CacheAPlace;
+import com.googlecode.slotted.testharness.client.flow.CacheBPlace;
+import com.googlecode.slotted.testharness.client.flow.CachePlace;
+import com.googlecode.slotted.testharness.client.flow.GParam1aPlace;
+import com.googlecode.slotted.testharness.client.flow.GParam1bPlace;
+import com.googlecode.slotted.testharness.client.flow.GParam2aPlace;
+import com.googlecode.slotted.testharness.client.flow.GParamPlace;
+import com.googlecode.slotted.testharness.client.flow.GoTo1aPlace;
+import com.googlecode.slotted.testharness.client.flow.GoTo1bPlace;
+import com.googlecode.slotted.testharness.client.flow.GoTo2aPlace;
+import com.googlecode.slotted.testharness.client.flow.GoTo2bPlace;
+import com.googlecode.slotted.testharness.client.flow.GoToPlace;
+import com.googlecode.slotted.testharness.client.flow.HomeActivity;
 import com.googlecode.slotted.testharness.client.flow.HomePlace;
+import com.googlecode.slotted.testharness.client.flow.Loading1aPlace;
+import com.googlecode.slotted.testharness.client.flow.LoadingPlace;
+import com.googlecode.slotted.testharness.client.flow.OnCancelPlace;
+import com.googlecode.slotted.testharness.client.flow.RecycleActivity;
+import com.googlecode.slotted.testharness.client.flow.RecyclePlace;
+import com.googlecode.slotted.testharness.client.multi_parent.Child1Place;
+import com.googlecode.slotted.testharness.client.multi_parent.Child2Place;
+import com.googlecode.slotted.testharness.client.multi_parent.MultiPlace;
+import com.googlecode.slotted.testharness.client.multi_parent.Parent1Child1Place;
+import com.googlecode.slotted.testharness.client.multi_parent.Parent1Place;
+import com.googlecode.slotted.testharness.client.multi_parent.Parent2Child1Place;
+import com.googlecode.slotted.testharness.client.multi_parent.Parent2Place;
+import com.googlecode.slotted.testharness.client.split.GeneratedSplitActivity;
+import com.googlecode.slotted.testharness.client.split.GeneratedSplitMapper;
+import com.googlecode.slotted.testharness.client.split.GeneratedSplitPlace;
+import com.googlecode.slotted.testharness.client.split.GeneratedSplitSubPlace;
+import com.googlecode.slotted.testharness.client.split.SplitPlace;
 import com.googlecode.slotted.testharness.client.tokenizer.BasePlace;
+import com.googlecode.slotted.testharness.client.tokenizer.CompactPlace;
+import com.googlecode.slotted.testharness.client.tokenizer.GlobalPlace;
 import com.googlecode.slotted.testharness.client.tokenizer.SuperPlace;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 public class SlottedControllerTests extends GWTTestCase {
     @Override public String getModuleName() {
         return "com.googlecode.slotted.testharness.TestHarness";
@@ -22,6 +97,235 @@ public class SlottedControllerTests extends GWTTestCase {
         TestPlace.resetCounts();
     }
 
+    public void testGeneratedCodeSplitMapper() {
+        final GeneratedSplitMapper mapper = GWT.create(GeneratedSplitMapper.class);
+        delayTestFinish(5000);
+        mapper.get(new GeneratedSplitPlace(), new Callback<Activity, Throwable>() {
+            @Override public void onSuccess(Activity result) {
+                assertTrue(result instanceof GeneratedSplitActivity);
+                assertTrue(mapper.isLoaded());
+
+                // Subclasses aren't in the generated id table, and are found with instanceof.
+                mapper.get(new GeneratedSplitSubPlace(), new Callback<Activity, Throwable>() {
+                    @Override public void onSuccess(Activity result) {
+                        assertTrue(result instanceof GeneratedSplitActivity);
+                        finishTest();
+                    }
+
+                    @Override public void onFailure(Throwable reason) {
+                        fail(reason.toString());
+                    }
+                });
+            }
+
+            @Override public void onFailure(Throwable reason) {
+                fail(reason.toString());
+            }
+        });
+    }
+
+    public void testPlaceFactory() {
+        PlaceFactory placeFactory = GWT.create(PlaceFactory.class);
+        Class[] placeClasses = {
+                A1a1aPlace.class, A1aPlace.class, A1b1aPlace.class, A1b1bPlace.class, A1bPlace.class,
+                APlace.class, B1aPlace.class, B1bPlace.class, B2aPlace.class, B2bPlace.class, BPlace.class,
+                CacheA1aPlace.class, CacheAPlace.class, CacheBPlace.class, CachePlace.class,
+                GParam1aPlace.class, GParam1bPlace.class, GParam2aPlace.class, GParamPlace.class,
+                GoTo1aPlace.class, GoTo1bPlace.class, GoTo2aPlace.class, GoTo2bPlace.class, GoToPlace.class,
+                HomePlace.class, Loading1aPlace.class, LoadingPlace.class, OnCancelPlace.class,
+                RecyclePlace.class, Child1Place.class, Child2Place.class, MultiPlace.class,
+                Parent1Child1Place.class, Parent1Place.class, Parent2Child1Place.class, Parent2Place.class,
+                GeneratedSplitPlace.class, GeneratedSplitSubPlace.class, SplitPlace.class, BasePlace.class,
+                CompactPlace.class, GlobalPlace.class
+        };
+        for (Class placeClass: placeClasses) {
+            Place place = placeFactory.newInstance(placeClass);
+            assertNotNull(placeClass.getName(), place);
+            assertEquals(placeClass, place.getClass());
+        }
+        assertNull(placeFactory.newInstance(SuperPlace.class));
+        assertNull(placeFactory.newInstance(Object.class));
+    }
+
+    public void testSupersededGoTo() {
+        TestHarness.codeSplitMapper.reset();
+        TestHarness.codeSplitMapper.loadImmediately = false;
+        final ArrayList<SlottedPlace> newPlaces = new ArrayList<SlottedPlace>();
+        HandlerRegistration registration = TestHarness.slottedController.getEventBus().addHandler(NewPlacesEvent.Type,
+                new NewPlacesEvent.Handler() {
+                    @Override public void newPlaces(NewPlacesEvent event) {
+                        newPlaces.addAll(event.getNewPlaces());
+                    }
+                });
+        try {
+            TestHarness.slottedController.goTo(new SplitPlace());
+            TestHarness.slottedController.goTo(new BPlace());
+
+            // The SplitPlace navigation never finished, so only BPlace is reported.
+            assertFalse(newPlaces.isEmpty());
+            for (SlottedPlace place: newPlaces) {
+                assertFalse(place instanceof SplitPlace);
+            }
+            assertNotNull(TestHarness.slottedController.getCurrentActivityByPlace(BPlace.class));
+            assertNull(TestHarness.slottedController.getCurrentActivityByPlace(SplitPlace.class));
+
+            // The superseded request doesn't create the SplitPlace Activity once the split is loaded.
+            TestHarness.codeSplitMapper.finishLoading();
+            assertEquals(1, TestHarness.codeSplitMapper.cancelledCount);
+            assertNull(TestHarness.slottedController.getCurrentActivityByPlace(SplitPlace.class));
+        } finally {
+            registration.removeHandler();
+            TestHarness.codeSplitMapper.reset();
+        }
+    }
+
+    public void testDeclinedGoToKeepsParameters() {
+        final boolean[] confirm = {false};
+        SlottedController controller = new SlottedController(TestHarness.slottedController.getHistoryMapper(),
+                new SlottedEventBus(), new SlottedController.Delegate() {
+                    @Override public com.google.gwt.event.shared.HandlerRegistration addWindowClosingHandler(
+                            ClosingHandler handler)
+                    {
+                        return null;
+                    }
+
+                    @Override public boolean confirm(String[] messages) {
+                        return confirm[0];
+                    }
+                }, false) {};
+        controller.setDisplay(new SimplePanel());
+        controller.goTo(new GParam1aPlace());
+        PlaceParameters shownParameters = controller.getCurrentParameters();
+        assertEquals("GParam1a", shownParameters.get("global"));
+
+        TestActivity gParam1aActivity = TestPlace.getActivity(new GParam1aPlace());
+        gParam1aActivity.mayStopMessage = "Unsaved changes";
+        try {
+            controller.goTo(new GParam1bPlace());
+            assertSame(shownParameters, controller.getCurrentParameters());
+            assertTrue(controller.getCurrentPlace(GParamPlace.Slot1) instanceof GParam1aPlace);
+
+            // The changes are compared to the shown parameters, not the ones of the declined navigation.
+            confirm[0] = true;
+            controller.goTo(new GParam1bPlace());
+            assertEquals("GParam1b", controller.getCurrentParameters().get("global"));
+            TestActivity gParamActivity = TestPlace.getActivity(new GParamPlace());
+            assertTrue(gParamActivity.lastChanges.isChanged("global"));
+            assertTrue(gParamActivity.lastChanges.isChanged("GParam1a"));
+        } finally {
+            gParam1aActivity.mayStopMessage = null;
+        }
+    }
+
+    public void testPrefetchScheduler() {
+        TestHarness.codeSplitMapper.reset();
+        TestHarness.codeSplitMapper.loadImmediately = false;
+        final SplitPlace target = new SplitPlace();
+        final PrefetchScheduler scheduler = TestHarness.slottedController.getPrefetchScheduler();
+        scheduler.setIdleTimeout(10);
+        scheduler.addTarget(target);
+        scheduler.setEnabled(true);
+
+        delayTestFinish(5000);
+        new Timer() {
+            @Override public void run() {
+                try {
+                    assertEquals(1, TestHarness.codeSplitMapper.loadCount);
+                    assertEquals(1, scheduler.getPrefetchCount());
+                    TestHarness.codeSplitMapper.finishLoading();
+
+                    TestHarness.slottedController.goTo(target);
+                    assertEquals(1, TestHarness.codeSplitMapper.getCount);
+                    assertNotNull(TestHarness.slottedController.getCurrentActivityByPlace(SplitPlace.class));
+                    assertEquals(1, TestHarness.codeSplitMapper.loadCount);
+                } finally {
+                    scheduler.setEnabled(false);
+                    scheduler.removeTarget(target);
+                    TestHarness.codeSplitMapper.reset();
+                }
+                finishTest();
+            }
+        }.schedule(200);
+    }
+
+    public void testPrefetchTargetsFollowAttachment() {
+        PrefetchScheduler scheduler = TestHarness.slottedController.getPrefetchScheduler();
+        SplitPlace place = new SplitPlace();
+
+        SlottedTabBar tabBar = new SlottedTabBar(TestHarness.slottedController);
+        tabBar.addTab(place, "Split");
+        assertFalse(scheduler.isTarget(place));
+        RootPanel.get().add(tabBar);
+        assertTrue(scheduler.isTarget(place));
+
+        SlottedNavWidgetHelper<Anchor> helper = new SlottedNavWidgetHelper<Anchor>(TestHarness.slottedController,
+                new ResettableEventBus(new SlottedEventBus())) {
+            @Override protected void handlePlaceActive(Anchor widget, Place place, boolean active) {
+            }
+        };
+        Anchor anchor = new Anchor("Split");
+        RootPanel.get().add(anchor);
+        helper.addNavWidget(anchor, place);
+
+        // The Place stays a target until both widgets are removed.
+        RootPanel.get().remove(tabBar);
+        assertTrue(scheduler.isTarget(place));
+        RootPanel.get().remove(anchor);
+        assertFalse(scheduler.isTarget(place));
+    }
+
+    public void testIntentPrefetch() {
+        TestHarness.codeSplitMapper.reset();
+        final SlottedHyperlink link = new SlottedHyperlink("Split", new SplitPlace());
+        link.setIntentPrefetch(IntentPrefetcher.Mode.Activity, 10);
+        DomEvent.fireNativeEvent(Document.get().createMouseOverEvent(0, 0, 0, 0, 0, false, false, false, false,
+                0, null), link);
+        assertEquals(0, TestHarness.codeSplitMapper.getCount);
+
+        delayTestFinish(5000);
+        new Timer() {
+            @Override public void run() {
+                try {
+                    assertEquals(1, TestHarness.codeSplitMapper.getCount);
+                    DomEvent.fireNativeEvent(Document.get().createClickEvent(0, 0, 0, 0, 0, false, false, false,
+                            false), link);
+                    assertEquals(1, TestHarness.codeSplitMapper.getCount);
+                    assertNotNull(TestHarness.slottedController.getCurrentActivityByPlace(SplitPlace.class));
+
+                    TestHarness.slottedController.goTo(new HomePlace());
+                    TestHarness.slottedController.prefetch(new SplitPlace(), true);
+                    assertEquals(2, TestHarness.codeSplitMapper.getCount);
+                    TestHarness.slottedController.goTo(new APlace());
+                    TestHarness.slottedController.goTo(new SplitPlace());
+                    assertEquals(3, TestHarness.codeSplitMapper.getCount);
+                } finally {
+                    TestHarness.codeSplitMapper.reset();
+                }
+                finishTest();
+            }
+        }.schedule(200);
+    }
+
+    public void testGoToJoinsSpeculativeRequest() {
+        TestHarness.codeSplitMapper.reset();
+        TestHarness.codeSplitMapper.loadImmediately = false;
+        try {
+            TestHarness.slottedController.prefetch(new SplitPlace(), true);
+            assertEquals(1, TestHarness.codeSplitMapper.getCount);
+
+            // The click arrives while the prefetch is still loading, so it waits for the same request.
+            TestHarness.slottedController.goTo(new SplitPlace());
+            assertEquals(1, TestHarness.codeSplitMapper.getCount);
+            assertNull(TestHarness.slottedController.getCurrentActivityByPlace(SplitPlace.class));
+
+            TestHarness.codeSplitMapper.finishLoading();
+            assertEquals(1, TestHarness.codeSplitMapper.getCount);
+            assertNotNull(TestHarness.slottedController.getCurrentActivityByPlace(SplitPlace.class));
+        } finally {
+            TestHarness.codeSplitMapper.reset();
+        }
+    }
+
     public void testGetCurrentActivity() {
         TestHarness.slottedController.goTo(new APlace());
 
@@ -48,6 +352,196 @@ public class SlottedControllerTests extends GWTTestCase {
         assertTrue(current instanceof  APlace);
         Place currentChild = TestHarness.slottedController.getCurrentPlace(APlace.SLOT);
         assertTrue(currentChild instanceof A1aPlace);
+
+        assertSame(TestPlace.getActivity(currentChild.getClass()),
+                TestHarness.slottedController.getCurrentActivity(APlace.SLOT));
+        assertNotNull(TestHarness.slottedController.getRoot().findSlot(A1aPlace.SLOT));
+        assertNull(TestHarness.slottedController.getRoot().findSlot(BPlace.Slot1));
+
+        // getCurrentPlace() matches the Slot instance, but findSlot() also finds an equal Slot.
+        Slot equalSlot = new Slot(APlace.SLOT.getOwnerPlace(), APlace.SLOT.getDefaultPlace());
+        assertNull(TestHarness.slottedController.getCurrentPlace(equalSlot));
+        assertSame(TestHarness.slottedController.getRoot().findSlot(APlace.SLOT),
+                TestHarness.slottedController.getRoot().findSlot(equalSlot));
+    }
+
+    public void testSlotTopology() {
+        SlotTopology topology = TestHarness.slottedController.getHistoryMapper().getSlotTopology();
+
+        Slot[] ancestors = topology.getAncestors(A1aPlace.SLOT);
+        assertEquals(2, ancestors.length);
+        assertEquals(APlace.SLOT, ancestors[0]);
+        assertEquals(SlottedController.RootSlot, ancestors[1]);
+        assertEquals(0, topology.getAncestors(SlottedController.RootSlot).length);
+
+        SlotTopology.Node node = topology.getNode(A1aPlace.SLOT);
+        assertEquals(A1aPlace.class, node.getOwnerClass());
+        assertTrue(node.getDefaultPlace() instanceof A1a1aPlace);
+        assertEquals(APlace.SLOT, node.getParentSlot());
+
+        // Nodes are found by owner class, so an equal Slot instance finds the same node.
+        assertSame(node, topology.getNode(new Slot(A1aPlace.SLOT.getOwnerPlace(), A1aPlace.SLOT.getDefaultPlace())));
+        assertNull(topology.getNode(new Slot(new A1aPlace(), new BPlace())));
+
+        SlotTopology.Node aNode = topology.getNode(APlace.SLOT);
+        assertEquals(APlace.class, aNode.getOwnerClass());
+        assertEquals(SlottedController.RootSlot, aNode.getParentSlot());
+        assertEquals(1, aNode.getChildSlots().length);
+        assertSame(A1aPlace.SLOT, aNode.getChildSlots()[0]);
+        assertEquals(1, aNode.getAncestors().length);
+        assertEquals(SlottedController.RootSlot, aNode.getAncestors()[0]);
+
+        // Both of BPlace's Slots have their own node.
+        SlotTopology.Node b1Node = topology.getNode(BPlace.Slot1);
+        SlotTopology.Node b2Node = topology.getNode(BPlace.Slot2);
+        assertNotSame(b1Node, b2Node);
+        assertSame(BPlace.Slot1, b1Node.getSlot());
+        assertSame(BPlace.Slot2, b2Node.getSlot());
+        assertTrue(b2Node.getDefaultPlace() instanceof B2aPlace);
+        assertEquals(1, topology.getAncestors(BPlace.Slot2).length);
+
+        assertEquals(0, topology.getAncestors(null).length);
+    }
+
+    public void testActivityCacheIndexes() {
+        ActivityCache cache = new ActivityCache();
+        for (int i = 0; i < 100; i++) {
+            cache.add(new BasePlace(i, null, null), new RecycleActivity());
+        }
+        HomePlace homePlace = new HomePlace();
+        HomeActivity homeActivity = new HomeActivity();
+        cache.add(homePlace, homeActivity);
+        List<Class<? extends SlottedPlace>> backgroundList = new ArrayList<Class<? extends SlottedPlace>>();
+        backgroundList.add(HomePlace.class);
+
+        assertSame(homeActivity, cache.get(homePlace));
+        assertSame(homeActivity, cache.getByActivity(HomeActivity.class));
+        assertEquals(1, cache.get(HomePlace.class).size());
+        assertEquals(100, cache.get(BasePlace.class).size());
+
+        // Adding an equal Place replaces its entry in every index.
+        RecycleActivity replacement = new RecycleActivity();
+        cache.add(new BasePlace(5, null, null), replacement);
+        assertSame(replacement, cache.get(new BasePlace(5, null, null)));
+        assertEquals(100, cache.get(BasePlace.class).size());
+
+        cache.markForBackground(backgroundList);
+        assertTrue(cache.isMarkedForBackground(homePlace));
+        assertFalse(cache.isMarkedForBackground(new BasePlace(5, null, null)));
+        cache.setBackgrounded(homePlace);
+        assertEquals(1, cache.getBackgroundedActivities(backgroundList).size());
+
+        // Stopping an Activity removes it from the Place, Activity and background indexes.
+        cache.removeStopped(homeActivity);
+        assertNull(cache.get(homePlace));
+        assertNull(cache.getByActivity(HomeActivity.class));
+        assertTrue(cache.get(HomePlace.class).isEmpty());
+        assertTrue(cache.getBackgroundedActivities(backgroundList).isEmpty());
+
+        // Only the entries used since the previous call survive clearUnused().
+        cache.clearUnused();
+        assertSame(replacement, cache.get(new BasePlace(5, null, null)));
+        cache.clearUnused();
+        assertEquals(1, cache.get(BasePlace.class).size());
+        assertSame(replacement, cache.getByActivity(RecycleActivity.class));
+        assertNull(cache.get(new BasePlace(6, null, null)));
     }
 
-}
\ No newline at end of file
+    public void testNavigationPlan() {
+        TestHarness.slottedController.goTo(new APlace());
+        TestHarness.slottedController.goTo(new BPlace());
+
+        NavigationPlan.Step rootStep = TestHarness.slottedController.getNavigationPlan().getSteps().get(0);
+        assertEquals(SlottedController.RootSlot, rootStep.getSlot());
+        assertTrue(rootStep.getCurrentPlace() instanceof APlace);
+        assertTrue(rootStep.getNewPlace() instanceof BPlace);
+        assertTrue(rootStep.isStop());
+        assertEquals(NavigationPlan.Action.Start, rootStep.getAction());
+    }
+
+    public void testEventBus() {
+        final SlottedEventBus eventBus = new SlottedEventBus();
+        final ArrayList<String> calls = new ArrayList<String>();
+        final Object source = new Object();
+        eventBus.addHandler(TestEvent.Type, new TestEvent.Handler() {
+            @Override public void onEvent(TestEvent event) {
+                calls.add("global" + event.value);
+            }
+        });
+        HandlerRegistration sourceRegistration = eventBus.addHandlerToSource(TestEvent.Type, source,
+                new TestEvent.Handler() {
+                    @Override public void onEvent(TestEvent event) {
+                        calls.add("source" + event.value);
+                    }
+                });
+
+        eventBus.fireEventFromSource(new TestEvent(1), source);
+        eventBus.fireEvent(new TestEvent(2));
+        assertEquals(Arrays.asList("source1", "global1", "global2"), calls);
+
+        calls.clear();
+        sourceRegistration.removeHandler();
+        eventBus.fireEventFromSource(new TestEvent(3), source);
+        assertEquals(Arrays.asList("global3"), calls);
+
+        // Events fired while processing are queued, and handlers added while processing see the queued events.
+        calls.clear();
+        eventBus.addHandler(TestEvent.Type, new TestEvent.Handler() {
+            @Override public void onEvent(TestEvent event) {
+                if (event.value == 4) {
+                    eventBus.addHandler(TestEvent.Type, new TestEvent.Handler() {
+                        @Override public void onEvent(TestEvent event) {
+                            calls.add("added" + event.value);
+                        }
+                    });
+                    for (int i = 10; i < 30; i++) {
+                        eventBus.fireEvent(new TestEvent(i));
+                    }
+                    calls.add("done");
+                }
+            }
+        });
+        eventBus.fireEvent(new TestEvent(4));
+        assertEquals("global4", calls.get(0));
+        assertEquals("done", calls.get(1));
+        assertEquals("global10", calls.get(2));
+        assertEquals("added10", calls.get(3));
+        assertEquals("added29", calls.get(calls.size() - 1));
+        assertEquals(42, calls.size());
+
+        // The TestHarness module turns on the instrumentation.
+        EventBusStats stats = eventBus.getStats();
+        assertEquals(24, stats.getTypeStats(TestEvent.Type).getFireCount());
+        assertEquals(Integer.valueOf(3), stats.getTypeStats(TestEvent.Type).getHandlerCounts().get(null));
+        assertNull(stats.getTypeStats(TestEvent.Type).getHandlerCounts().get(source));
+        assertEquals(20, stats.getFireQueueHighWater());
+        assertEquals(1, stats.getHandlerQueueHighWater());
+
+        eventBus.resetStats();
+        stats = eventBus.getStats();
+        assertEquals(0, stats.getTypeStats(TestEvent.Type).getFireCount());
+        assertEquals(0, stats.getFireQueueHighWater());
+    }
+
+    static class TestEvent extends GwtEvent<TestEvent.Handler> {
+        static final Type<Handler> Type = new Type<Handler>();
+
+        interface Handler extends EventHandler {
+            void onEvent(TestEvent event);
+        }
+
+        final int value;
+
+        TestEvent(int value) {
+            this.value = value;
+        }
+
+        @Override public Type<Handler> getAssociatedType() {
+            return Type;
+        }
+
+        @Override protected void dispatch(Handler handler) {
+            handler.onEvent(this);
+        }
+    }
+}
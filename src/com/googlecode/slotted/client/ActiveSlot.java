@@ -16,19 +16,17 @@
 package com.googlecode.slotted.client;
 
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 import java.util.logging.Level;
 
 import com.google.gwt.activity.shared.Activity;
 import com.google.gwt.activity.shared.ActivityMapper;
-import com.google.gwt.core.client.Callback;
+import com.google.gwt.core.client.Duration;
 import com.google.gwt.user.client.ui.AcceptsOneWidget;
 import com.google.gwt.user.client.ui.IsWidget;
 import com.google.web.bindery.event.shared.EventBus;
 import com.google.web.bindery.event.shared.ResettableEventBus;
 import com.googlecode.slotted.client.ActivityCache.Entry;
-import com.googlecode.slotted.client.SlottedController.RootSlotImpl;
 
 /**
  * An internal object that holds all the data needed to correctly display a Slot.  This shouldn't be used outside
@@ -45,6 +43,7 @@ public class ActiveSlot {
         private boolean loading = false;
         private IsWidget view;
         private boolean widgetShown = false;
+        private ActivityProfile profile;
 
         ProtectedDisplay(Activity activity, boolean backgroundable) {
             this.activity = activity;
@@ -53,6 +52,9 @@ public class ActiveSlot {
 
         public void setWidget(IsWidget view) {
             this.view = view;
+            if (profile != null) {
+                profile.widgetSet();
+            }
             if (!loading) {
                 activityStarting = false;
             }
@@ -75,12 +77,17 @@ public class ActiveSlot {
     private Slot slot;
     private SlottedPlace place;
     private SlottedPlace newPlace;
+    private NavigationPlan.Step planStep;
     private Activity activity;
     private boolean activityStarting;
     private ProtectedDisplay currentProtectedDisplay;
     private SlottedController slottedController;
     private HistoryMapper historyMapper;
+    private EventBus eventBus;
     private ResettableEventBus resettableEventBus;
+    private ActiveSlot buffered;
+    private SlottedPlace shownPlace;
+    private boolean backgroundOnStop;
 
     public ActiveSlot(ActiveSlot parent, Slot slot, EventBus eventBus,
             SlottedController slottedController)
@@ -89,6 +96,7 @@ public class ActiveSlot {
         this.slot = slot;
         this.slottedController = slottedController;
         this.historyMapper = slottedController.getHistoryMapper();
+        this.eventBus = eventBus;
         this.resettableEventBus = new ResettableEventBus(eventBus);
     }
 
@@ -103,24 +111,39 @@ public class ActiveSlot {
      * @param warnings The list of warnings that are generated by mayStop() calls.
      */
     public void maybeGoTo(Iterable<SlottedPlace> newPlaces, boolean reloadAll, ArrayList<String> warnings) {
+        maybeGoTo(new NavigationPlan(newPlaces, reloadAll, historyMapper), warnings);
+    }
+
+    /**
+     * Same as {@link #maybeGoTo(Iterable, boolean, ArrayList)}, but records the step for each Slot in the plan, so
+     * {@link #constructStopStart(PlaceParameters, NavigationPlan)} can use it.
+     *
+     * @param plan The plan for the navigation.
+     * @param warnings The list of warnings that are generated by mayStop() calls.
+     */
+    public void maybeGoTo(NavigationPlan plan, ArrayList<String> warnings) {
+        maybeGoTo(plan, plan.isReloadAll(), warnings);
+    }
+
+    private void maybeGoTo(NavigationPlan plan, boolean reloadAll, ArrayList<String> warnings) {
         ActivityCache activityCache = slottedController.getActivityCache();
         boolean checkMayStop = false;
-        newPlace = getPlace(newPlaces);
+        newPlace = getPlace(plan);
+        planStep = plan.addStep(slot, place, newPlace);
 
-        List<Class<? extends SlottedPlace>> placesOfActivitiesToCache = historyMapper.getPlacesOfActivitiesToCache(newPlace);
-        activityCache.markForBackground(placesOfActivitiesToCache);
+        activityCache.markForBackground(plan.getPlacesOfActivitiesToCache(newPlace));
         if (place != null && activityCache.isMarkedForBackground(place)) {
-            placesOfActivitiesToCache = historyMapper.getPlacesOfActivitiesToCache(place);
-            activityCache.markForBackground(placesOfActivitiesToCache);
+            activityCache.markForBackground(plan.getPlacesOfActivitiesToCache(place));
         }
 
         if (reloadAll || !newPlace.equals(place)) {
             checkMayStop = true;
             reloadAll = true;
         }
+        planStep.setStop(checkMayStop && place != null);
         if (children != null) {
             for (ActiveSlot child : children) {
-                child.maybeGoTo(newPlaces, reloadAll, warnings);
+                child.maybeGoTo(plan, reloadAll, warnings);
             }
         }
 
@@ -160,25 +183,39 @@ public class ActiveSlot {
     }
 
     /**
-     * Finds the ActiveSlot by determining if this ActiveSlot has the slotToFind or checking the children recursively.
+     * Finds the ActiveSlot by looking up the slotToFind in the SlottedController's index, and making sure it is
+     * this ActiveSlot or one of its descendants.  The index is by identity, so a Slot that only equals the
+     * displayed one is found by walking the hierarchy.
      *
      * @param slotToFind The Slot instance that an ActiveSlot represents.
      * @return The ActiveSlot, or null if the slotToFind isn't in the hierarchy
      */
     public ActiveSlot findSlot(Slot slotToFind) {
-        ActiveSlot found = null;
         if (slotToFind == null) {
-            found = null;
-        } else if (slotToFind.equals(slot)) {
-            found = this;
-        } else if (children != null) {
-            Iterator<ActiveSlot> childIt = children.iterator();
-            while (found == null && childIt.hasNext()) {
-                ActiveSlot child = childIt.next();
-                found = child.findSlot(slotToFind);
+            return null;
+        }
+        ActiveSlot found = slottedController.findActiveSlot(slotToFind);
+        if (found == null) {
+            return findEqualSlot(slotToFind);
+        }
+        ActiveSlot ancestor = found;
+        while (ancestor != null && ancestor != this) {
+            ancestor = ancestor.parent;
+        }
+        return ancestor == this ? found : null;
+    }
+
+    private ActiveSlot findEqualSlot(Slot slotToFind) {
+        if (slotToFind.equals(slot)) {
+            return this;
+        }
+        for (ActiveSlot child: children) {
+            ActiveSlot found = child.findEqualSlot(slotToFind);
+            if (found != null) {
+                return found;
             }
         }
-        return found;
+        return null;
     }
 
     /**
@@ -189,7 +226,7 @@ public class ActiveSlot {
         try {
             ActivityCache activityCache = slottedController.getActivityCache();
             if (activity != null) {
-                if (activityCache.isMarkedForBackground(place)) {
+                if (backgroundOnStop || activityCache.isMarkedForBackground(place)) {
                     backgrounded = true;
                     activityCache.setBackgrounded(place);
                     if (activity instanceof SlottedActivity) {
@@ -201,6 +238,7 @@ public class ActiveSlot {
                 } else {
                     activity.onStop();
                     activityCache.removeStopped(activity);
+                    slottedController.getActivityPool().release(place, activity);
                 }
                 activity = null;
                 activityStarting = false;
@@ -208,6 +246,7 @@ public class ActiveSlot {
             if (children != null) {
                 for (ActiveSlot child : children) {
                     child.stopActivities();
+                    slottedController.removeActiveSlot(child);
                 }
                 children.clear();
             }
@@ -217,6 +256,7 @@ public class ActiveSlot {
             }
 
             place = null;
+            shownPlace = null;
             currentProtectedDisplay = null;
         } finally {
             if (!backgrounded) {
@@ -225,6 +265,116 @@ public class ActiveSlot {
         }
     }
 
+    /**
+     * Used instead of {@link #stopActivities()} when the SlottedController is double buffered.  The current
+     * Activities are moved to a detached ActiveSlot, where they keep running and their views stay displayed
+     * until {@link #stopBuffered()} is called after the new views are shown, or {@link #rollbackBuffered()} puts
+     * them back.
+     */
+    private void bufferActivities() {
+        // Activities that were never shown are replaced, but the displayed ones are kept.
+        rollbackBuffered();
+
+        ActiveSlot old = new ActiveSlot(parent, slot, eventBus, slottedController);
+        old.place = place;
+        old.activity = activity;
+        old.activityStarting = activityStarting;
+        old.currentProtectedDisplay = currentProtectedDisplay;
+        old.resettableEventBus = resettableEventBus;
+        old.children = children;
+        // The background marks are cleared before the buffered Activities are stopped.
+        old.backgroundOnStop = slottedController.getActivityCache().isMarkedForBackground(place);
+        for (ActiveSlot child: children) {
+            child.removeFromIndex();
+        }
+
+        buffered = old;
+        place = null;
+        activity = null;
+        activityStarting = false;
+        currentProtectedDisplay = null;
+        children = new ArrayList<ActiveSlot>();
+        resettableEventBus = new ResettableEventBus(eventBus);
+    }
+
+    /**
+     * Stops the Activities that were replaced while double buffered.  This is called after the new views are
+     * shown.
+     */
+    void stopBuffered() {
+        shownPlace = null;
+        if (buffered != null) {
+            ActiveSlot old = buffered;
+            buffered = null;
+            old.stopActivities();
+        }
+        for (ActiveSlot child: children) {
+            child.stopBuffered();
+        }
+    }
+
+    /**
+     * Stops the Activities that haven't been shown, and puts back the Activities that were replaced while double
+     * buffered.  Activities that were refreshed with a new Place are refreshed again with the Place they were
+     * showing.  This is called when a navigation fails, after the SlottedController's parameters are restored.
+     */
+    void rollbackBuffered() {
+        if (buffered != null) {
+            ActiveSlot old = buffered;
+            buffered = null;
+            stopActivities();
+            place = old.place;
+            activity = old.activity;
+            activityStarting = old.activityStarting;
+            currentProtectedDisplay = old.currentProtectedDisplay;
+            resettableEventBus = old.resettableEventBus;
+            children = old.children;
+            for (ActiveSlot child: children) {
+                child.addToIndex();
+            }
+        } else {
+            if (shownPlace != null) {
+                SlottedPlace refreshedPlace = place;
+                place = shownPlace;
+                shownPlace = null;
+                refreshActivity(slottedController.getCurrentParameters(), refreshedPlace);
+            }
+            for (ActiveSlot child: children) {
+                child.rollbackBuffered();
+            }
+        }
+    }
+
+    /**
+     * Returns true if this ActiveSlot or one of its children has Activities or a Place that
+     * {@link #rollbackBuffered()} would put back.
+     */
+    boolean hasBuffered() {
+        if (buffered != null || shownPlace != null) {
+            return true;
+        }
+        for (ActiveSlot child: children) {
+            if (child.hasBuffered()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void removeFromIndex() {
+        slottedController.removeActiveSlot(this);
+        for (ActiveSlot child: children) {
+            child.removeFromIndex();
+        }
+    }
+
+    private void addToIndex() {
+        slottedController.addActiveSlot(this);
+        for (ActiveSlot child: children) {
+            child.addToIndex();
+        }
+    }
+
     private void stopBackgroundActivities(SlottedPlace place, ActivityCache activityCache) {
         List<Class<? extends SlottedPlace>> placesOfActivitiesToCache = historyMapper.getPlacesOfActivitiesToCache(place);
         List<Entry> backgroundedActivities = activityCache.getBackgroundedActivities(placesOfActivitiesToCache);
@@ -245,8 +395,29 @@ public class ActiveSlot {
     public void constructStopStart(PlaceParameters parameters,
             Iterable<SlottedPlace> newPlaces, boolean reloadAll)
     {
+        constructStopStart(parameters, new NavigationPlan(newPlaces, reloadAll, historyMapper), reloadAll);
+    }
+
+    /**
+     * Same as {@link #constructStopStart(PlaceParameters, Iterable, boolean)}, but uses the Places and stop
+     * decisions from the plan created by {@link #maybeGoTo(NavigationPlan, ArrayList)}.
+     *
+     * @param parameters The global parameters object that should be populated during construction.
+     * @param plan The plan for the navigation.
+     */
+    public void constructStopStart(PlaceParameters parameters, NavigationPlan plan) {
+        constructStopStart(parameters, plan, plan.isReloadAll());
+    }
+
+    private void constructStopStart(PlaceParameters parameters, NavigationPlan plan, boolean reloadAll) {
+        NavigationPlan.Step step = planStep;
+        planStep = null;
         if (newPlace == null) {
-            newPlace = getPlace(newPlaces);
+            newPlace = getPlace(plan);
+        }
+        if (!plan.isStepOf(step)) {
+            step = plan.addStep(slot, place, newPlace);
+            step.setStop(place != null && (reloadAll || !newPlace.equals(place)));
         }
         historyMapper.extractParameters(newPlace, parameters);
         newPlace.setPlaceParameters(parameters);
@@ -254,52 +425,71 @@ public class ActiveSlot {
         if (currentProtectedDisplay != null && !currentProtectedDisplay.widgetShown) {
             // DelayedLoading might have error, so force reload to prevent UI from appearing hung.
             reloadAll = true;
+            step.setStop(place != null);
         }
-        if (reloadAll || !newPlace.equals(place)) {
-            stopActivities();
+        if (reloadAll || step.isStop() || place == null) {
+            if (place != null && slottedController.isDoubleBuffered()) {
+                bufferActivities();
+            } else {
+                stopActivities();
+            }
         }
+        SlottedPlace oldPlace = place;
         place = newPlace;
         newPlace = null;
 
         createChildren();
 
         if (slottedController.shouldStartActivity()) {
+            double startTime = Duration.currentTimeMillis();
             ActivityCache activityCache = slottedController.getActivityCache();
             if (activity == null) {
                 activity = activityCache.get(place);
                 if (activity == null) {
+                    step.setAction(NavigationPlan.Action.Start);
                     getStartActivity(parameters);
                 } else {
+                    step.setAction(NavigationPlan.Action.Foreground);
                     foregroundActivity(parameters);
                 }
             } else {
+                step.setAction(NavigationPlan.Action.Refresh);
+                if (shownPlace == null && oldPlace != place && slottedController.isDoubleBuffered()) {
+                    shownPlace = oldPlace;
+                }
                 activityCache.get(place);
-                refreshActivity(parameters);
+                refreshActivity(parameters, oldPlace);
             }
+            recordTiming(startTime);
         }
 
         for (ActiveSlot child : children) {
-            child.constructStopStart(parameters, newPlaces, reloadAll);
+            child.constructStopStart(parameters, plan, reloadAll);
+        }
+    }
+
+    /**
+     * Records how long this Slot took to get and start its Activity in the navigation's {@link NavigationTiming}.
+     *
+     * @param startTime When getting the Activity started.
+     */
+    private void recordTiming(double startTime) {
+        NavigationTiming timing = slottedController.getNavigationTiming();
+        if (timing != null) {
+            timing.recordSlot(slot, place, Duration.currentTimeMillis() - startTime);
         }
     }
 
     /**
      * Gets the appropriate Place for this Slot.
      *
-     * @param newPlaces The list of new Places that will be displayed.
+     * @param plan The plan containing the new Places that will be displayed.
      * @return The Place that should be displayed for this Slot
      */
-    private SlottedPlace getPlace(Iterable<SlottedPlace> newPlaces) {
-        for (SlottedPlace place : newPlaces) {
-            boolean isRootPlace =
-                    place.getParentSlot() == null || place.getParentSlot() instanceof RootSlotImpl;
-            boolean isRoot = slot.getOwnerPlace() == null;
-            if (isRootPlace && isRoot) {
-                return place;
-            }
-            if (slot.equals(place.getParentSlot())) {
-                return place;
-            }
+    private SlottedPlace getPlace(NavigationPlan plan) {
+        SlottedPlace planPlace = plan.getPlace(slot);
+        if (planPlace != null) {
+            return planPlace;
         }
         if (place != null) {
             return place;
@@ -315,19 +505,23 @@ public class ActiveSlot {
      * @param parameters The global parameters for the hierarchy
      */
     private void getStartActivity(final PlaceParameters parameters) {
-        Callback<Activity, Throwable> activityCallback = new Callback<Activity, Throwable>() {
+        final double requestTime = Duration.currentTimeMillis();
+        ActivityRequest activityCallback = new ActivityRequest(slottedController.getNavigationGeneration()) {
             @Override public void onSuccess(Activity result) {
                 try {
-                    if (slottedController.asyncActivities.contains(this)) {
-                        if (result != null) {
-                            startActivity(result, parameters);
-                        } else {
-                            getStartFromMapper(parameters);
+                    if (slottedController.acceptActivityRequest(this)) {
+                        boolean processingSync = slottedController.setProcessingSync(true);
+                        try {
+                            if (result != null) {
+                                startActivity(result, parameters);
+                            } else {
+                                getStartFromMapper(parameters);
+                            }
+                        } finally {
+                            slottedController.setProcessingSync(processingSync);
                         }
-                        slottedController.asyncActivities.remove(this);
+                        recordTiming(requestTime);
                         slottedController.asyncGoToCleanup(true);
-                    } else {
-                        throw new IllegalStateException("Invalid load");
                     }
                 } catch (Exception e) {
                     slottedController.handleGoToException(e);
@@ -336,13 +530,22 @@ public class ActiveSlot {
             }
 
             @Override public void onFailure(Throwable reason) {
-                slottedController.handleGoToException(reason);
+                if (!isCancelled()) {
+                    slottedController.handleGoToException(reason);
+                }
             }
         };
 
         slottedController.asyncActivities.add(activityCallback);
+        Activity pooledActivity = slottedController.getActivityPool().acquire(place);
         Class codeSplitClass = historyMapper.getCodeSplitMapper(place);
-        if (codeSplitClass != null) {
+        if (pooledActivity != null) {
+            activityCallback.onSuccess(pooledActivity);
+
+        } else if (slottedController.joinSpeculativeRequest(place, activityCallback)) {
+            // The prefetched Activity is passed to the callback, now or when it is created.
+
+        } else if (codeSplitClass != null) {
             CodeSplitMapper codeSplitMapper = slottedController.getCodeSplitMapper(codeSplitClass);
             if (codeSplitMapper == null) {
                 throw new SlottedException("CodeSplitMapper not registered:" + codeSplitClass.getName());
@@ -374,6 +577,7 @@ public class ActiveSlot {
 
         ActivityCache activityCache = slottedController.getActivityCache();
         activityCache.add(place, activity);
+        slottedController.getActivityPool().started(place, activity);
         List<Class<? extends SlottedPlace>> placesOfActivitiesToCache = historyMapper.getPlacesOfActivitiesToCache(place);
         activityCache.markForBackground(placesOfActivitiesToCache);
 
@@ -385,8 +589,15 @@ public class ActiveSlot {
                 new com.google.gwt.event.shared.ResettableEventBus(resettableEventBus);
         activityStarting = true;
         currentProtectedDisplay = new ProtectedDisplay(activity, activityCache.isMarkedForBackground(place));
+        ActivityProfiler profiler = slottedController.getActivityProfiler();
+        if (profiler != null) {
+            currentProtectedDisplay.profile = profiler.activityStarting(this, place, activity);
+        }
         try {
             activity.start(currentProtectedDisplay, legacyBus);
+            if (currentProtectedDisplay.profile != null) {
+                currentProtectedDisplay.profile.startDone();
+            }
         } catch (Exception e) {
             String token = historyMapper.createToken(place);
             try {
@@ -441,11 +652,13 @@ public class ActiveSlot {
     }
 
     /**
-     * Calls onRefresh() if the current Activity is a SlottedActivity.
+     * Calls onRefresh() if the current Activity is a SlottedActivity, and it depends on something that changed.
      *
      * @param parameters The global parameters for the hierarchy.
+     * @param oldPlace The Place the Activity was displaying before the navigation.
+     * @see SlottedActivity#getRefreshParameters()
      */
-    private void refreshActivity(PlaceParameters parameters) {
+    private void refreshActivity(PlaceParameters parameters, SlottedPlace oldPlace) {
         if (activity instanceof SlottedActivity) {
             //todo is this needed
             ActivityCache activityCache = slottedController.getActivityCache();
@@ -453,7 +666,12 @@ public class ActiveSlot {
 
             SlottedActivity slottedActivity = (SlottedActivity) activity;
             slottedActivity.init(slottedController, place, parameters, resettableEventBus, this);
-            slottedActivity.onRefresh();
+
+            ParameterChanges changes = slottedController.getParameterChanges(oldPlace, place);
+            String[] refreshParameters = slottedActivity.getRefreshParameters();
+            if (refreshParameters == null || changes.isAnyChanged(refreshParameters) || changes.isPlaceChanged()) {
+                slottedActivity.onRefresh(changes);
+            }
         }
     }
 
@@ -466,6 +684,7 @@ public class ActiveSlot {
             for (Slot child: childSlots) {
                 ActiveSlot activeSlot =  new ActiveSlot(this, child, resettableEventBus, slottedController);
                 children.add(activeSlot);
+                slottedController.addActiveSlot(activeSlot);
             }
             assert childSlots.length == children.size() : "Error creating children ActiveSlots";
         }
@@ -489,6 +708,25 @@ public class ActiveSlot {
         }
     }
 
+    /**
+     * Records a loading label opening or closing in the {@link ActivityProfiler}.
+     *
+     * @param activity The Activity that changed the label, which is ignored if it isn't the current Activity.
+     * @param label The loading label.
+     * @param started True if the label was opened, or false if it was closed.
+     */
+    void profileLoading(SlottedActivity activity, Object label, boolean started) {
+        if (currentProtectedDisplay != null && currentProtectedDisplay.activity == activity &&
+                currentProtectedDisplay.profile != null)
+        {
+            if (started) {
+                currentProtectedDisplay.profile.loadingStarted(label);
+            } else {
+                currentProtectedDisplay.profile.loadingCompleted(label);
+            }
+        }
+    }
+
     /**
      * @return True if the slot's activity called setLoadingStarted() without completing.
      */
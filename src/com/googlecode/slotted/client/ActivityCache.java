@@ -2,54 +2,80 @@ package com.googlecode.slotted.client;
 
 import com.google.gwt.activity.shared.Activity;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 
 public class ActivityCache {
     private HashMap<SlottedPlace, Entry> activityCache = new HashMap<SlottedPlace, Entry>();
-    private HashMap<SlottedPlace, Entry> usedCache = new HashMap<SlottedPlace, Entry>();
+    private HashMap<Class<? extends SlottedPlace>, LinkedHashSet<Entry>> placeClassIndex =
+            new HashMap<Class<? extends SlottedPlace>, LinkedHashSet<Entry>>();
+    private HashMap<Class<? extends Activity>, LinkedHashSet<Entry>> activityClassIndex =
+            new HashMap<Class<? extends Activity>, LinkedHashSet<Entry>>();
     private HashSet<Class<? extends SlottedPlace>> backgroundMarks = new HashSet<Class<? extends SlottedPlace>>();
-    private LinkedList<SlottedPlace> backgroundedActivities = new LinkedList<SlottedPlace>();
+    private LinkedHashSet<Entry> backgroundedActivities = new LinkedHashSet<Entry>();
+    private HashMap<Class<? extends SlottedPlace>, CacheLimit> placeLimits =
+            new HashMap<Class<? extends SlottedPlace>, CacheLimit>();
+    private HashMap<Slot, CacheLimit> slotLimits = new HashMap<Slot, CacheLimit>();
+    private int generation;
 
     public void add(SlottedPlace place, Activity activity) {
+        Entry oldEntry = activityCache.get(place);
+        if (oldEntry != null) {
+            removeEntry(oldEntry);
+        }
         Entry entry = new Entry(place, activity);
+        entry.used = generation;
         activityCache.put(place, entry);
-        usedCache.put(place, entry);
-        backgroundedActivities.remove(place);
+        addToIndex(placeClassIndex, place.getClass(), entry);
+        addToIndex(activityClassIndex, activity.getClass(), entry);
     }
 
+    /**
+     * Removes all the Entries that weren't used since the last call, and clears the background marks.  This is
+     * called at the end of every navigation.
+     */
     public void clearUnused() {
-        activityCache = usedCache;
-        usedCache = new HashMap<SlottedPlace, Entry>();
-        backgroundMarks = new HashSet<Class<? extends SlottedPlace>>();
-    }
-
-    public void removeStopped(Activity activity) {
         Iterator<Entry> valuesIt = activityCache.values().iterator();
         while (valuesIt.hasNext()) {
             Entry entry = valuesIt.next();
-            if (activity == entry.activity) {
+            if (entry.used != generation) {
                 valuesIt.remove();
+                removeFromIndexes(entry);
             }
         }
+        generation++;
+        backgroundMarks.clear();
     }
 
-    public Activity getByActivity(Class<? extends Activity> activityClass) {
-        for (Entry entry: activityCache.values()) {
-            if (activityClass.equals(entry.activity.getClass())) {
-                return entry.activity;
+    public void removeStopped(Activity activity) {
+        LinkedHashSet<Entry> entries = activityClassIndex.get(activity.getClass());
+        if (entries != null) {
+            for (Entry entry: new ArrayList<Entry>(entries)) {
+                if (activity == entry.activity) {
+                    removeEntry(entry);
+                }
             }
         }
+    }
+
+    public Activity getByActivity(Class<? extends Activity> activityClass) {
+        LinkedHashSet<Entry> entries = activityClassIndex.get(activityClass);
+        if (entries != null && !entries.isEmpty()) {
+            return entries.iterator().next().activity;
+        }
         return null;
     }
 
     public List<Activity> get(Class<? extends SlottedPlace> placeClass) {
         LinkedList<Activity> activities = new LinkedList<Activity>();
-        for (Entry entry: activityCache.values()) {
-            if (entry.place.getClass().equals(placeClass)) {
+        LinkedHashSet<Entry> entries = placeClassIndex.get(placeClass);
+        if (entries != null) {
+            for (Entry entry: entries) {
                 activities.add(entry.activity);
             }
         }
@@ -60,7 +86,7 @@ public class ActivityCache {
     public Activity get(SlottedPlace place) {
         Entry entry = activityCache.get(place);
         if (entry != null && entry.place.equals(place)) {
-            usedCache.put(place, entry);
+            entry.used = generation;
             return entry.activity;
         }
 
@@ -76,10 +102,12 @@ public class ActivityCache {
     }
 
     public void markForBackground(Class<? extends SlottedPlace> placeClass) {
-        backgroundMarks.add(placeClass);
-        for (Entry entry: activityCache.values()) {
-            if (entry.place.getClass().equals(placeClass)) {
-                usedCache.put(entry.place, entry);
+        if (backgroundMarks.add(placeClass)) {
+            LinkedHashSet<Entry> entries = placeClassIndex.get(placeClass);
+            if (entries != null) {
+                for (Entry entry: entries) {
+                    entry.used = generation;
+                }
             }
         }
     }
@@ -90,15 +118,98 @@ public class ActivityCache {
     }
 
     public void setBackgrounded(SlottedPlace place) {
-        backgroundedActivities.add(place);
+        Entry entry = activityCache.get(place);
+        if (entry != null) {
+            entry.backgroundedTime = System.currentTimeMillis();
+            backgroundedActivities.remove(entry);
+            backgroundedActivities.add(entry);
+        }
+    }
+
+    public void setLimit(Class<? extends SlottedPlace> placeClass, CacheLimit limit) {
+        if (limit == null) {
+            placeLimits.remove(placeClass);
+        } else {
+            placeLimits.put(placeClass, limit);
+        }
+    }
+
+    public void setLimit(Slot slot, CacheLimit limit) {
+        if (limit == null) {
+            slotLimits.remove(slot);
+        } else {
+            slotLimits.put(slot, limit);
+        }
+    }
+
+    /**
+     * Removes the backgrounded Entries that exceed a {@link CacheLimit}, starting with the least recently
+     * backgrounded.
+     *
+     * @return The removed Entries, which still need to be stopped.
+     */
+    public List<Entry> evictOverLimit() {
+        LinkedList<Entry> evicted = new LinkedList<Entry>();
+        if (backgroundedActivities.isEmpty() || (placeLimits.isEmpty() && slotLimits.isEmpty())) {
+            return evicted;
+        }
+
+        long now = System.currentTimeMillis();
+        HashMap<Object, Usage> usages = new HashMap<Object, Usage>();
+        ArrayList<Entry> entries = new ArrayList<Entry>(backgroundedActivities);
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            Entry entry = entries.get(i);
+            Class<? extends SlottedPlace> placeClass = entry.place.getClass();
+            Slot slot = entry.place.getParentSlot();
+            CacheLimit placeLimit = placeLimits.get(placeClass);
+            CacheLimit slotLimit = slot == null ? null : slotLimits.get(slot);
+            if (!fits(entry, now, placeLimit, placeClass, usages) || !fits(entry, now, slotLimit, slot, usages)) {
+                evicted.addFirst(entry);
+            } else {
+                use(entry, placeLimit, placeClass, usages);
+                use(entry, slotLimit, slot, usages);
+            }
+        }
+
+        for (Entry entry: evicted) {
+            removeEntry(entry);
+        }
+        return evicted;
+    }
+
+    private boolean fits(Entry entry, long now, CacheLimit limit, Object key, HashMap<Object, Usage> usages) {
+        if (limit == null) {
+            return true;
+        }
+        if (limit.getIdleTimeout() > 0 && now - entry.backgroundedTime > limit.getIdleTimeout()) {
+            return false;
+        }
+        Usage usage = usages.get(key);
+        int count = usage == null ? 0 : usage.count;
+        int weight = usage == null ? 0 : usage.weight;
+        if (limit.getMaxEntries() > 0 && count + 1 > limit.getMaxEntries()) {
+            return false;
+        }
+        return limit.getMaxWeight() <= 0 || weight + entry.getWeight() <= limit.getMaxWeight();
+    }
+
+    private void use(Entry entry, CacheLimit limit, Object key, HashMap<Object, Usage> usages) {
+        if (limit != null) {
+            Usage usage = usages.get(key);
+            if (usage == null) {
+                usage = new Usage();
+                usages.put(key, usage);
+            }
+            usage.count++;
+            usage.weight += entry.getWeight();
+        }
     }
 
     public List<Entry> getBackgroundedActivities(List<Class<? extends SlottedPlace>> includeList) {
         LinkedList<Entry> activities = new LinkedList<Entry>();
-        for (SlottedPlace place: backgroundedActivities) {
-            if (includeList.contains(place.getClass())) {
-                Entry entry = activityCache.get(place);
-                if (entry != null) {
+        if (includeList != null && !includeList.isEmpty()) {
+            for (Entry entry: backgroundedActivities) {
+                if (includeList.contains(entry.place.getClass())) {
                     activities.add(entry);
                 }
             }
@@ -107,13 +218,59 @@ public class ActivityCache {
         return activities;
     }
 
+    private void removeEntry(Entry entry) {
+        if (activityCache.get(entry.place) == entry) {
+            activityCache.remove(entry.place);
+        }
+        removeFromIndexes(entry);
+    }
+
+    private void removeFromIndexes(Entry entry) {
+        removeFromIndex(placeClassIndex, entry.place.getClass(), entry);
+        removeFromIndex(activityClassIndex, entry.activity.getClass(), entry);
+        backgroundedActivities.remove(entry);
+    }
+
+    private <K> void addToIndex(HashMap<K, LinkedHashSet<Entry>> index, K key, Entry entry) {
+        LinkedHashSet<Entry> entries = index.get(key);
+        if (entries == null) {
+            entries = new LinkedHashSet<Entry>();
+            index.put(key, entries);
+        }
+        entries.add(entry);
+    }
+
+    private <K> void removeFromIndex(HashMap<K, LinkedHashSet<Entry>> index, K key, Entry entry) {
+        LinkedHashSet<Entry> entries = index.get(key);
+        if (entries != null) {
+            entries.remove(entry);
+            if (entries.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
     public class Entry {
         public SlottedPlace place;
         public Activity activity;
+        private int used;
+        private long backgroundedTime;
 
         private Entry(SlottedPlace place, Activity activity) {
             this.place = place;
             this.activity = activity;
         }
+
+        private int getWeight() {
+            if (activity instanceof HasCacheWeight) {
+                return ((HasCacheWeight) activity).getCacheWeight();
+            }
+            return 1;
+        }
+    }
+
+    private static class Usage {
+        private int count;
+        private int weight;
     }
 }
@@ -0,0 +1,67 @@
+package com.googlecode.slotted.client;
+
+import com.google.gwt.activity.shared.Activity;
+import com.google.gwt.event.shared.EventHandler;
+import com.google.gwt.event.shared.GwtEvent;
+import com.google.gwt.event.shared.HandlerManager;
+
+/**
+ * Fired when a backgrounded Activity is removed from the cache, because a {@link CacheLimit} was exceeded.
+ */
+public class ActivityEvictedEvent extends GwtEvent<ActivityEvictedEvent.Handler> {
+    public static final Type<Handler> Type = new Type<Handler>();
+    /**
+     * Handler for the ActivityEvicted Events.
+     */
+    public static interface Handler extends EventHandler {
+        /**
+         * Called after the Activity has been stopped and its widget removed.
+         */
+        void onActivityEvicted(ActivityEvictedEvent event);
+    }
+
+    private SlottedPlace place;
+    private Activity activity;
+
+    /**
+     * Creates an event for the evicted Activity.
+     *
+     * @param place The Place the Activity was displaying.
+     * @param activity The Activity that was stopped.
+     */
+    protected ActivityEvictedEvent(SlottedPlace place, Activity activity) {
+        this.place = place;
+        this.activity = activity;
+    }
+
+    /**
+     * Gets the Place the evicted Activity was displaying.
+     */
+    public SlottedPlace getPlace() {
+        return place;
+    }
+
+    /**
+     * Gets the Activity that was evicted.
+     */
+    public Activity getActivity() {
+        return activity;
+    }
+
+    /**
+     * @return The type used to register handlers.
+     */
+    public Type<Handler> getAssociatedType() {
+        return Type;
+    }
+
+    /**
+     * Should only be called by {@link HandlerManager}. In other words, do not use
+     * or call.
+     *
+     * @param handler handler
+     */
+    protected void dispatch(Handler handler) {
+        handler.onActivityEvicted(this);
+    }
+}
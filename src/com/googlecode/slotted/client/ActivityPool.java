@@ -0,0 +1,200 @@
+package com.googlecode.slotted.client;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.logging.Level;
+
+import com.google.gwt.activity.shared.Activity;
+
+/**
+ * Keeps the stopped {@link Recyclable} Activities, so they can be started again for the next Place of the
+ * same type.  Only Activities whose Place declares their class with {@link SlottedPlace#getActivityClass()}
+ * are pooled, because the pool can't tell which Activity a Place would create otherwise.  Each Place type has
+ * its own pool, which holds {@link #setDefaultMaxSize(int) 1 Activity} unless
+ * it is changed with {@link #setMaxSize(Class, int)}.
+ */
+public class ActivityPool {
+    /**
+     * The pool and its hit rate for one Place type.
+     */
+    public static class PoolStats {
+        private LinkedList<Activity> activities = new LinkedList<Activity>();
+        private int hits;
+        private int misses;
+        private int discards;
+
+        /**
+         * @return The number of Activities waiting in the pool.
+         */
+        public int getSize() {
+            return activities.size();
+        }
+
+        /**
+         * @return The number of starts that used an Activity from the pool.
+         */
+        public int getHits() {
+            return hits;
+        }
+
+        /**
+         * @return The number of starts that found the pool empty.
+         */
+        public int getMisses() {
+            return misses;
+        }
+
+        /**
+         * @return The number of stopped Activities that were dropped because the pool was full.
+         */
+        public int getDiscards() {
+            return discards;
+        }
+
+        /**
+         * @return The fraction of starts that used an Activity from the pool, or 0 if there weren't any.
+         */
+        public double getHitRate() {
+            int total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+
+        @Override public String toString() {
+            return "size=" + activities.size() + ", hits=" + hits + ", misses=" + misses + ", discards=" + discards;
+        }
+    }
+
+    private int defaultMaxSize = 1;
+    private HashMap<Class<? extends SlottedPlace>, Integer> maxSizes =
+            new HashMap<Class<? extends SlottedPlace>, Integer>();
+    private HashMap<Class<? extends SlottedPlace>, PoolStats> pools =
+            new HashMap<Class<? extends SlottedPlace>, PoolStats>();
+
+    /**
+     * Sets the number of Activities kept for each Place type that doesn't have its own size.
+     */
+    public void setDefaultMaxSize(int defaultMaxSize) {
+        this.defaultMaxSize = defaultMaxSize;
+        trimAll();
+    }
+
+    /**
+     * Sets the number of Activities kept for the Place type.  A size of 0 turns off recycling for it.
+     */
+    public void setMaxSize(Class<? extends SlottedPlace> placeClass, int maxSize) {
+        maxSizes.put(placeClass, maxSize);
+        trimAll();
+    }
+
+    /**
+     * @return The pool and hit rate for the Place type, or null if no Recyclable Activity was stopped or
+     * started for it.
+     */
+    public PoolStats getStats(Class<? extends SlottedPlace> placeClass) {
+        return pools.get(placeClass);
+    }
+
+    /**
+     * @return The pool and hit rate of every Place type.
+     */
+    public Map<Class<? extends SlottedPlace>, PoolStats> getAllStats() {
+        return Collections.unmodifiableMap(pools);
+    }
+
+    /**
+     * Drops all the pooled Activities and clears the statistics.
+     */
+    public void clear() {
+        pools.clear();
+    }
+
+    /**
+     * Takes an Activity of the class the Place declares from the pool.
+     *
+     * @return The Activity, or null if there isn't one or the Place doesn't declare its Activity class.
+     */
+    Activity acquire(SlottedPlace place) {
+        Class<? extends Activity> activityClass = place.getActivityClass();
+        PoolStats stats = pools.get(place.getClass());
+        if (activityClass == null || stats == null) {
+            return null;
+        }
+        for (Activity activity: stats.activities) {
+            if (activity.getClass() == activityClass) {
+                stats.activities.remove(activity);
+                stats.hits++;
+                return activity;
+            }
+        }
+        stats.misses++;
+        return null;
+    }
+
+    /**
+     * Called when an Activity is started, which counts the first miss of a Place type whose pool doesn't exist
+     * yet.
+     */
+    void started(SlottedPlace place, Activity activity) {
+        if (isPoolable(place, activity) && getMaxSize(place.getClass()) > 0 && !pools.containsKey(place.getClass())) {
+            getPool(place.getClass()).misses++;
+        }
+    }
+
+    /**
+     * Recycles a stopped Activity and adds it to the pool, if it is Recyclable, of the class its Place declares,
+     * and there is room.
+     */
+    void release(SlottedPlace place, Activity activity) {
+        if (!isPoolable(place, activity)) {
+            return;
+        }
+        int maxSize = getMaxSize(place.getClass());
+        if (maxSize <= 0) {
+            return;
+        }
+        PoolStats stats = getPool(place.getClass());
+        if (stats.activities.size() >= maxSize || stats.activities.contains(activity)) {
+            stats.discards++;
+            return;
+        }
+        try {
+            if (activity instanceof SlottedActivity) {
+                ((SlottedActivity) activity).clearForRecycle();
+            }
+            ((Recyclable) activity).recycle();
+            stats.activities.add(activity);
+        } catch (Exception e) {
+            SlottedController.log.log(Level.WARNING, "Problem recycling Activity:" + activity, e);
+        }
+    }
+
+    private boolean isPoolable(SlottedPlace place, Activity activity) {
+        return activity instanceof Recyclable && activity.getClass() == place.getActivityClass();
+    }
+
+    private int getMaxSize(Class<? extends SlottedPlace> placeClass) {
+        Integer maxSize = maxSizes.get(placeClass);
+        return maxSize == null ? defaultMaxSize : maxSize;
+    }
+
+    private PoolStats getPool(Class<? extends SlottedPlace> placeClass) {
+        PoolStats stats = pools.get(placeClass);
+        if (stats == null) {
+            stats = new PoolStats();
+            pools.put(placeClass, stats);
+        }
+        return stats;
+    }
+
+    private void trimAll() {
+        for (Map.Entry<Class<? extends SlottedPlace>, PoolStats> entry: pools.entrySet()) {
+            LinkedList<Activity> activities = entry.getValue().activities;
+            int maxSize = Math.max(0, getMaxSize(entry.getKey()));
+            while (activities.size() > maxSize) {
+                activities.removeLast();
+            }
+        }
+    }
+}
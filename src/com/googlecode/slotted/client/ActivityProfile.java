@@ -0,0 +1,198 @@
+package com.googlecode.slotted.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gwt.activity.shared.Activity;
+import com.google.gwt.core.client.Duration;
+
+/**
+ * The lifecycle timings of one Slot in a navigation, which are recorded by the {@link ActivityProfiler}.  The
+ * profiles form a tree that follows the Slot hierarchy.  Slots whose Activity wasn't started in the navigation,
+ * because it was kept or refreshed, are in the tree with {@link #isStarted()} false.
+ * <p>
+ * All times are relative to the call to start(), and the loading times keep updating after the navigation
+ * completes until the Activity calls {@link SlottedActivity#setLoadingComplete(Object...)}.
+ */
+public class ActivityProfile {
+    private final Slot slot;
+    private final SlottedPlace place;
+    private final Activity activity;
+    private final boolean started;
+    private final double startTime;
+    private double startMillis;
+    private double widgetMillis = -1;
+    private HashMap<Object, Double> openLabels = new HashMap<Object, Double>();
+    private LinkedHashMap<Object, Double> loadingMillis = new LinkedHashMap<Object, Double>();
+    private double readyMillis;
+    private boolean blocking;
+    private ArrayList<ActivityProfile> children = new ArrayList<ActivityProfile>();
+    private ActivityProfiler profiler;
+
+    ActivityProfile(Slot slot, SlottedPlace place, Activity activity, boolean started, ActivityProfiler profiler) {
+        this.slot = slot;
+        this.place = place;
+        this.activity = activity;
+        this.started = started;
+        this.profiler = profiler;
+        startTime = Duration.currentTimeMillis();
+    }
+
+    /**
+     * Called after start() returns.
+     */
+    void startDone() {
+        startMillis = elapsed();
+        updateReady(startMillis);
+    }
+
+    /**
+     * Called when the Activity sets its widget.  Only the first widget is timed.
+     */
+    void widgetSet() {
+        if (widgetMillis < 0) {
+            widgetMillis = elapsed();
+            updateReady(widgetMillis);
+        }
+    }
+
+    void loadingStarted(Object label) {
+        openLabels.put(label, elapsed());
+    }
+
+    void loadingCompleted(Object label) {
+        Double opened = openLabels.remove(label);
+        if (opened != null) {
+            double now = elapsed();
+            Double previous = loadingMillis.get(label);
+            loadingMillis.put(label, (previous == null ? 0 : previous) + now - opened);
+            updateReady(now);
+        }
+    }
+
+    void setBlocking() {
+        blocking = true;
+    }
+
+    void addChild(ActivityProfile child) {
+        children.add(child);
+    }
+
+    private double elapsed() {
+        return Duration.currentTimeMillis() - startTime;
+    }
+
+    private void updateReady(double millis) {
+        if (millis > readyMillis) {
+            profiler.readyIncreased(this, millis - readyMillis);
+            readyMillis = millis;
+        }
+    }
+
+    /**
+     * Gets the Slot the profile is for.
+     */
+    public Slot getSlot() {
+        return slot;
+    }
+
+    /**
+     * Gets the Place the Slot displayed.
+     */
+    public SlottedPlace getPlace() {
+        return place;
+    }
+
+    /**
+     * Gets the Activity the Slot displayed.
+     */
+    public Activity getActivity() {
+        return activity;
+    }
+
+    /**
+     * @return True if the Activity was started in the navigation, or false if it was kept or refreshed.
+     */
+    public boolean isStarted() {
+        return started;
+    }
+
+    /**
+     * @return The time spent in start().
+     */
+    public double getStartMillis() {
+        return startMillis;
+    }
+
+    /**
+     * @return The time from calling start() until the Activity set its widget, or -1 if it hasn't.
+     */
+    public double getWidgetMillis() {
+        return widgetMillis;
+    }
+
+    /**
+     * @return The time each loading label stayed open.  Labels that are still open aren't included.  The
+     * label is {@link SlottedActivity} when setLoadingStarted() was called without labels.
+     */
+    public Map<Object, Double> getLoadingMillis() {
+        return Collections.unmodifiableMap(loadingMillis);
+    }
+
+    /**
+     * @return True if a loading label is still open.
+     */
+    public boolean isLoading() {
+        return !openLabels.isEmpty();
+    }
+
+    /**
+     * @return The time from calling start() until start() returned, the widget was set, and the last loading
+     * label closed, whichever was latest.
+     */
+    public double getReadyMillis() {
+        return readyMillis;
+    }
+
+    /**
+     * @return True if this Slot was the first one holding up the views when the navigation completed.
+     */
+    public boolean isBlocking() {
+        return blocking;
+    }
+
+    /**
+     * Gets the profiles of the child Slots.
+     */
+    public List<ActivityProfile> getChildren() {
+        return Collections.unmodifiableList(children);
+    }
+
+    @Override public String toString() {
+        StringBuilder builder = new StringBuilder();
+        append(builder, "");
+        return builder.toString();
+    }
+
+    private void append(StringBuilder builder, String indent) {
+        builder.append(indent).append(place);
+        if (started) {
+            builder.append(" start=").append(startMillis).append(" widget=").append(widgetMillis)
+                    .append(" ready=").append(readyMillis);
+            if (!loadingMillis.isEmpty()) {
+                builder.append(" loading=").append(loadingMillis);
+            }
+        }
+        if (blocking) {
+            builder.append(" BLOCKING");
+        }
+        builder.append('\n');
+        for (ActivityProfile child: children) {
+            child.append(builder, indent + "  ");
+        }
+    }
+}
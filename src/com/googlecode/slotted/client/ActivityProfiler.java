@@ -0,0 +1,259 @@
+package com.googlecode.slotted.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+
+import com.google.gwt.activity.shared.Activity;
+
+/**
+ * Records how long each Activity takes to start, set its widget, and finish its delayed loading, which shows
+ * which Activity holds up a page.  It is turned on with {@link SlottedController#setActivityProfiler(ActivityProfiler)}:
+ * <pre>
+ * ActivityProfiler profiler = new ActivityProfiler();
+ * slottedController.setActivityProfiler(profiler);
+ * ...
+ * log.info(profiler.getLastNavigation().toString());
+ * log.info(profiler.getWorstPlaces(5).toString());
+ * </pre>
+ * Each navigation's profiles are kept as a tree of {@link ActivityProfile}s, and the times are also added up by
+ * Place type for the whole session.
+ */
+public class ActivityProfiler {
+    /**
+     * The profile tree of one navigation.
+     */
+    public static class NavigationProfile {
+        private final String token;
+        private final ActivityProfile root;
+        private final ActivityProfile blocking;
+
+        NavigationProfile(String token, ActivityProfile root, ActivityProfile blocking) {
+            this.token = token;
+            this.root = root;
+            this.blocking = blocking;
+        }
+
+        /**
+         * @return The history token of the navigation.
+         */
+        public String getToken() {
+            return token;
+        }
+
+        /**
+         * @return The profile of the root Slot.
+         */
+        public ActivityProfile getRoot() {
+            return root;
+        }
+
+        /**
+         * @return The profile of the Slot that was holding up the views when the navigation completed, or null
+         * if the views were shown.
+         */
+        public ActivityProfile getBlocking() {
+            return blocking;
+        }
+
+        @Override public String toString() {
+            return token + "\n" + root;
+        }
+    }
+
+    /**
+     * The times of one Place type added up across the session.
+     */
+    public static class PlaceStats {
+        private final Class<? extends SlottedPlace> placeClass;
+        private int startCount;
+        private int blockingCount;
+        private double readyMillis;
+        private double maxReadyMillis;
+
+        PlaceStats(Class<? extends SlottedPlace> placeClass) {
+            this.placeClass = placeClass;
+        }
+
+        /**
+         * @return The type of Place.
+         */
+        public Class<? extends SlottedPlace> getPlaceClass() {
+            return placeClass;
+        }
+
+        /**
+         * @return The number of times the Place's Activity was started.
+         */
+        public int getStartCount() {
+            return startCount;
+        }
+
+        /**
+         * @return The number of navigations the Place was the first one holding up the views.
+         */
+        public int getBlockingCount() {
+            return blockingCount;
+        }
+
+        /**
+         * @return The total of {@link ActivityProfile#getReadyMillis()} for all the starts.
+         */
+        public double getReadyMillis() {
+            return readyMillis;
+        }
+
+        /**
+         * @return The longest {@link ActivityProfile#getReadyMillis()} of a single start.
+         */
+        public double getMaxReadyMillis() {
+            return maxReadyMillis;
+        }
+
+        /**
+         * @return The average time it took for the Activity to be ready.
+         */
+        public double getAverageReadyMillis() {
+            return startCount == 0 ? 0 : readyMillis / startCount;
+        }
+
+        @Override public String toString() {
+            return placeClass.getName() + " starts=" + startCount + " blocking=" + blockingCount +
+                    " averageReady=" + getAverageReadyMillis() + " maxReady=" + maxReadyMillis;
+        }
+    }
+
+    private int historySize;
+    private HashMap<ActiveSlot, ActivityProfile> current = new HashMap<ActiveSlot, ActivityProfile>();
+    private LinkedList<NavigationProfile> navigations = new LinkedList<NavigationProfile>();
+    private HashMap<Class<? extends SlottedPlace>, PlaceStats> placeStats =
+            new HashMap<Class<? extends SlottedPlace>, PlaceStats>();
+
+    /**
+     * Creates a profiler that keeps the last 10 navigations.
+     */
+    public ActivityProfiler() {
+        this(10);
+    }
+
+    /**
+     * Creates a profiler.
+     *
+     * @param historySize The number of navigations to keep.
+     */
+    public ActivityProfiler(int historySize) {
+        this.historySize = historySize;
+    }
+
+    /**
+     * @return The most recent navigation, or null if there hasn't been one.
+     */
+    public NavigationProfile getLastNavigation() {
+        return navigations.isEmpty() ? null : navigations.getLast();
+    }
+
+    /**
+     * @return The kept navigations, oldest first.
+     */
+    public List<NavigationProfile> getNavigations() {
+        return Collections.unmodifiableList(navigations);
+    }
+
+    /**
+     * @return The statistics for the Place type, or null if its Activity was never started.
+     */
+    public PlaceStats getPlaceStats(Class<? extends SlottedPlace> placeClass) {
+        return placeStats.get(placeClass);
+    }
+
+    /**
+     * Gets the Place types whose Activities took the longest to be ready on average.
+     *
+     * @param count The maximum number of Place types to return.
+     * @return The statistics, slowest first.
+     */
+    public List<PlaceStats> getWorstPlaces(int count) {
+        ArrayList<PlaceStats> stats = new ArrayList<PlaceStats>(placeStats.values());
+        Collections.sort(stats, new Comparator<PlaceStats>() {
+            @Override public int compare(PlaceStats stats1, PlaceStats stats2) {
+                return Double.compare(stats2.getAverageReadyMillis(), stats1.getAverageReadyMillis());
+            }
+        });
+        return stats.size() > count ? stats.subList(0, count) : stats;
+    }
+
+    /**
+     * Clears the navigations and statistics.
+     */
+    public void reset() {
+        current.clear();
+        navigations.clear();
+        placeStats.clear();
+    }
+
+    void startNavigation() {
+        current.clear();
+    }
+
+    /**
+     * Creates the profile for an Activity that is about to be started.
+     */
+    ActivityProfile activityStarting(ActiveSlot activeSlot, SlottedPlace place, Activity activity) {
+        ActivityProfile profile = new ActivityProfile(activeSlot.getSlot(), place, activity, true, this);
+        current.put(activeSlot, profile);
+        getStats(place.getClass()).startCount++;
+        return profile;
+    }
+
+    /**
+     * Builds the navigation's tree from the ActiveSlot hierarchy.
+     */
+    void endNavigation(ActiveSlot root, String token) {
+        ActiveSlot blockingSlot = root.getFirstBlockingSlot();
+        ActivityProfile rootProfile = createTree(root);
+        ActivityProfile blocking = null;
+        if (blockingSlot != null) {
+            blocking = current.get(blockingSlot);
+            if (blocking != null) {
+                blocking.setBlocking();
+                getStats(blocking.getPlace().getClass()).blockingCount++;
+            }
+        }
+        current.clear();
+
+        navigations.add(new NavigationProfile(token, rootProfile, blocking));
+        while (navigations.size() > historySize) {
+            navigations.removeFirst();
+        }
+    }
+
+    private ActivityProfile createTree(ActiveSlot activeSlot) {
+        ActivityProfile profile = current.get(activeSlot);
+        if (profile == null) {
+            profile = new ActivityProfile(activeSlot.getSlot(), activeSlot.getPlace(), activeSlot.getActivity(),
+                    false, this);
+        }
+        for (ActiveSlot child: activeSlot.getChildren()) {
+            profile.addChild(createTree(child));
+        }
+        return profile;
+    }
+
+    void readyIncreased(ActivityProfile profile, double millis) {
+        PlaceStats stats = getStats(profile.getPlace().getClass());
+        stats.readyMillis += millis;
+        stats.maxReadyMillis = Math.max(stats.maxReadyMillis, profile.getReadyMillis() + millis);
+    }
+
+    private PlaceStats getStats(Class<? extends SlottedPlace> placeClass) {
+        PlaceStats stats = placeStats.get(placeClass);
+        if (stats == null) {
+            stats = new PlaceStats(placeClass);
+            placeStats.put(placeClass, stats);
+        }
+        return stats;
+    }
+}
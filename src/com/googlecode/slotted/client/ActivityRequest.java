@@ -0,0 +1,52 @@
+package com.googlecode.slotted.client;
+
+import com.google.gwt.activity.shared.Activity;
+import com.google.gwt.core.client.Callback;
+
+/**
+ * The Callback the SlottedController passes to {@link CodeSplitMapper#get(SlottedPlace, Callback)} and
+ * {@link SlottedPlace#getActivity(Callback)}.  Each request belongs to a single navigation, and is cancelled
+ * when a newer navigation replaces it, in which case the result is ignored.  Long running implementations can
+ * call {@link #isCancelled(Callback)} to skip creating an Activity that is no longer needed.
+ */
+public abstract class ActivityRequest implements Callback<Activity, Throwable> {
+    private final int generation;
+    private boolean cancelled;
+
+    /**
+     * Creates the request for a navigation.
+     *
+     * @param generation The id of the navigation that made the request.
+     */
+    protected ActivityRequest(int generation) {
+        this.generation = generation;
+    }
+
+    /**
+     * Gets the id of the navigation that made the request.
+     */
+    public int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Returns true if the navigation was replaced, and the result is no longer needed.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Checks if the passed Callback is an ActivityRequest that has been cancelled.
+     *
+     * @param callback The Callback passed to get the Activity.
+     * @return True if the result of the Callback is no longer needed.
+     */
+    public static boolean isCancelled(Callback<?, ?> callback) {
+        return callback instanceof ActivityRequest && ((ActivityRequest) callback).isCancelled();
+    }
+}
@@ -21,4 +21,7 @@ public interface AutoTokenizer<P extends Place> extends PlaceTokenizer<P> {
     void extractFields(PlaceParameters intoPlaceParameters, P place);
     void fillFields(PlaceParameters placeParameters, P place);
     boolean equals(P p1, P p2);
+    boolean tokenEquals(P p1, P p2);
+    int hashCode(P place);
+    P copy(P place);
 }
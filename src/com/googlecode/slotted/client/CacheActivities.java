@@ -14,6 +14,9 @@ import java.lang.annotation.Target;
  * When navigating away from the Activity with the annotation, mayStop() and onStop() are called as normal,
  * but it is also mayStop() and onStop() will be called on all backgrounded Activities.  This means that
  * backgrounded Activities may stop navigation even thought they aren't displayed.
+ *
+ * By default the cached Activities are kept until the Activity with the annotation is stopped.  Use
+ * {@link CacheLimit} to limit how many are kept.
  */
 @Target({ElementType.TYPE})
 @Retention(RetentionPolicy.RUNTIME)
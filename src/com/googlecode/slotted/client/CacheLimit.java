@@ -0,0 +1,60 @@
+package com.googlecode.slotted.client;
+
+/**
+ * Limits the number of backgrounded Activities that are kept by the {@link CacheActivities} caching.  A limit
+ * can be set for a Place class or for a Slot with {@link SlottedController#setCacheLimit(Class, CacheLimit)}
+ * and {@link SlottedController#setCacheLimit(Slot, CacheLimit)}.  When a limit is exceeded, the least recently
+ * backgrounded Activities are evicted: onStop() is called, and the widget is removed from the Slot.
+ *
+ * A value of 0 means there is no limit.
+ */
+public class CacheLimit {
+    private final int maxEntries;
+    private final int idleTimeout;
+    private final int maxWeight;
+
+    /**
+     * Creates a limit on the number of backgrounded Activities.
+     *
+     * @param maxEntries The maximum number of backgrounded Activities.
+     */
+    public CacheLimit(int maxEntries) {
+        this(maxEntries, 0, 0);
+    }
+
+    /**
+     * Creates a limit on backgrounded Activities.
+     *
+     * @param maxEntries The maximum number of backgrounded Activities.
+     * @param idleTimeout The number of milliseconds an Activity can stay backgrounded.  This is checked at the
+     *                    end of each navigation.
+     * @param maxWeight The maximum total weight, where each Activity weighs 1 unless it implements
+     *                  {@link HasCacheWeight}.
+     */
+    public CacheLimit(int maxEntries, int idleTimeout, int maxWeight) {
+        this.maxEntries = maxEntries;
+        this.idleTimeout = idleTimeout;
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Gets the maximum number of backgrounded Activities, or 0 if there is no limit.
+     */
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Gets the number of milliseconds an Activity can stay backgrounded, or 0 if there is no limit.
+     */
+    public int getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Gets the maximum total weight of the backgrounded Activities, or 0 if there is no limit.
+     */
+    public int getMaxWeight() {
+        return maxWeight;
+    }
+}
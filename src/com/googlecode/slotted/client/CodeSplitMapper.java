@@ -10,6 +10,10 @@ import com.google.gwt.core.client.Callback;
  *
  * More information on CodeSplitMapper can be found on the wiki here:
  * https://code.google.com/p/slotted/wiki/CodeSplitting
+ *
+ * The callback passed to get() is usually an {@link ActivityRequest}.  Check
+ * {@link ActivityRequest#isCancelled(Callback)} after the code is loaded, and don't create the Activity once the
+ * request has been cancelled.  The generated CodeSplitMapper and CodeSplitGinMapper do this.
  */
 public interface CodeSplitMapper {
     boolean isLoaded();
@@ -0,0 +1,396 @@
+package com.googlecode.slotted.client;
+
+import com.google.gwt.http.client.URL;
+
+import java.sql.Timestamp;
+import java.util.Date;
+
+/**
+ * A {@link TokenCodec} that writes much shorter tokens than {@link TokenizerUtil}, which is selected with
+ * {@link TokenFormat}.  The parameters are written one after another without separators:
+ * <ul>
+ *     <li>Whole numbers, chars, booleans and dates are zigzag varints, with 5 bits in each base64url
+ *     character and the 6th bit marking that more characters follow.</li>
+ *     <li>Strings, floats and doubles are a varint length followed by the characters, which are only URL
+ *     encoded if they contain a character that needs it.  The length counts the decoded characters, so the
+ *     String is still found if the browser hands back the token with its escapes decoded.</li>
+ *     <li>A null is written as '.'.</li>
+ * </ul>
+ * The token isn't readable, so it is best for Places with many parameters.
+ * <p>
+ * The codec only writes the parameters.  The Place names in the History token are shortened separately by
+ * {@link HistoryMapper#setPlaceNameDictionary(String...)}, which is called in {@link HistoryMapper#init()}
+ * after the Places are registered.  New names need to be added to the end of that list, so bookmarked tokens
+ * keep going to the same Places.
+ */
+public class CompactTokenCodec implements TokenCodec {
+    private static final String Digits = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+    private static final char Null = '.';
+    private static final int More = 32;
+    private static int[] digitValues;
+
+    private StringBuilder builder;
+    private String token;
+    private int position;
+
+    /**
+     * Creates a codec for writing a token.
+     */
+    public CompactTokenCodec() {
+        builder = new StringBuilder();
+    }
+
+    /**
+     * Creates a codec for reading the token.
+     */
+    public CompactTokenCodec(String token) {
+        this.token = token;
+    }
+
+    private static int[] getDigitValues() {
+        if (digitValues == null) {
+            int[] values = new int[128];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = -1;
+            }
+            for (int i = 0; i < Digits.length(); i++) {
+                values[Digits.charAt(i)] = i;
+            }
+            digitValues = values;
+        }
+        return digitValues;
+    }
+
+    private void appendVarint(long value) {
+        do {
+            int digit = (int) (value & 31);
+            value >>>= 5;
+            if (value != 0) {
+                digit |= More;
+            }
+            builder.append(Digits.charAt(digit));
+        } while (value != 0);
+    }
+
+    private void appendSigned(long value) {
+        appendVarint((value << 1) ^ (value >> 63));
+    }
+
+    private void appendString(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (!TokenWriter.isSafe(value.charAt(i))) {
+                appendVarint(((long) value.length() << 1) | 1);
+                builder.append(URL.encodePathSegment(value));
+                return;
+            }
+        }
+        appendVarint((long) value.length() << 1);
+        builder.append(value);
+    }
+
+    private CompactTokenCodec appendNull() {
+        builder.append(Null);
+        return this;
+    }
+
+    /**
+     * @return True, and skips the '.', if the next parameter is a null.
+     */
+    private boolean nextIsNull() {
+        if (token.charAt(position) == Null) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private long nextVarint() {
+        int[] values = getDigitValues();
+        long value = 0;
+        int shift = 0;
+        int digit;
+        do {
+            if (position >= token.length()) {
+                throw new IllegalStateException("Token ends in the middle of a number:" + token);
+            }
+            char c = token.charAt(position++);
+            digit = c < values.length ? values[c] : -1;
+            if (digit < 0) {
+                throw new IllegalStateException("Invalid character '" + c + "' at index " + (position - 1) +
+                        " of token:" + token);
+            }
+            value |= (long) (digit & 31) << shift;
+            shift += 5;
+        } while ((digit & More) != 0);
+        return value;
+    }
+
+    private long nextSigned() {
+        long value = nextVarint();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private String nextString() {
+        long header = nextVarint();
+        int length = (int) (header >>> 1);
+        boolean encoded = (header & 1) != 0;
+        int end = encoded ? findEncodedEnd(length) : position + length;
+        if (end > token.length()) {
+            throw new IllegalStateException("Token ends in the middle of a String:" + token);
+        }
+        String value = token.substring(position, end);
+        position = end;
+        if (encoded && isEscaped(value)) {
+            value = URL.decodePathSegment(value);
+        }
+        return value;
+    }
+
+    /**
+     * Finds the end of an encoded String that is the passed number of characters long once decoded.  Each
+     * character is either written as is or as the %XX escapes of its UTF-8 bytes, so this still works when
+     * something between the codec and the browser has already decoded some or all of the escapes.
+     */
+    private int findEncodedEnd(int length) {
+        int end = position;
+        int decoded = 0;
+        while (decoded < length && end < token.length()) {
+            int lead = token.charAt(end) == '%' ? getEscapedByte(end) : -1;
+            if (lead < 0) {
+                end++;
+                decoded++;
+            } else {
+                int bytes = lead >= 0xF0 ? 4 : lead >= 0xE0 ? 3 : lead >= 0xC0 ? 2 : 1;
+                end += bytes * 3;
+                // A 4 byte character is a surrogate pair in Java and JavaScript Strings.
+                decoded += bytes == 4 ? 2 : 1;
+            }
+        }
+        if (decoded < length) {
+            return token.length() + 1;
+        }
+        return end;
+    }
+
+    /**
+     * @return The byte of the %XX escape at the index of the token, or -1 if there isn't one.
+     */
+    private int getEscapedByte(int index) {
+        return getEscapedByte(token, index);
+    }
+
+    private static int getEscapedByte(String value, int index) {
+        if (index + 2 >= value.length()) {
+            return -1;
+        }
+        int high = Character.digit(value.charAt(index + 1), 16);
+        int low = Character.digit(value.charAt(index + 2), 16);
+        if (high < 0 || low < 0) {
+            return -1;
+        }
+        return (high << 4) | low;
+    }
+
+    /**
+     * @return True if the value has escapes, and every '%' starts one, so a value that was already decoded
+     * isn't decoded again.
+     */
+    private static boolean isEscaped(String value) {
+        int index = value.indexOf('%');
+        if (index < 0) {
+            return false;
+        }
+        while (index >= 0) {
+            if (getEscapedByte(value, index) < 0) {
+                return false;
+            }
+            index = value.indexOf('%', index + 3);
+        }
+        return true;
+    }
+
+    /**
+     * @return The next String, or null if there are no more parameters or it was null.
+     */
+    private String nextNullableString() {
+        if (!hasMore() || nextIsNull()) {
+            return null;
+        }
+        return nextString();
+    }
+
+    @Override public String tokenize() {
+        return builder.toString();
+    }
+
+    @Override public boolean hasMore() {
+        return position < token.length();
+    }
+
+    @Override public CompactTokenCodec add(String param) {
+        if (param == null) {
+            return appendNull();
+        }
+        appendString(param);
+        return this;
+    }
+
+    @Override public CompactTokenCodec add(Object param) {
+        return add(param == null ? null : param.toString());
+    }
+
+    @Override public CompactTokenCodec add(int param) {
+        appendSigned(param);
+        return this;
+    }
+
+    @Override public CompactTokenCodec add(long param) {
+        appendSigned(param);
+        return this;
+    }
+
+    @Override public CompactTokenCodec add(float param) {
+        appendString(String.valueOf(param));
+        return this;
+    }
+
+    @Override public CompactTokenCodec add(double param) {
+        appendString(String.valueOf(param));
+        return this;
+    }
+
+    @Override public CompactTokenCodec add(boolean param) {
+        appendVarint(param ? 1 : 0);
+        return this;
+    }
+
+    @Override public CompactTokenCodec add(char param) {
+        appendVarint(param);
+        return this;
+    }
+
+    @Override public CompactTokenCodec add(Byte param) {
+        return param == null ? appendNull() : add(param.byteValue());
+    }
+
+    @Override public CompactTokenCodec add(Short param) {
+        return param == null ? appendNull() : add(param.shortValue());
+    }
+
+    @Override public CompactTokenCodec add(Integer param) {
+        return param == null ? appendNull() : add(param.intValue());
+    }
+
+    @Override public CompactTokenCodec add(Long param) {
+        return param == null ? appendNull() : add(param.longValue());
+    }
+
+    @Override public CompactTokenCodec add(Float param) {
+        return param == null ? appendNull() : add(param.floatValue());
+    }
+
+    @Override public CompactTokenCodec add(Double param) {
+        return param == null ? appendNull() : add(param.doubleValue());
+    }
+
+    @Override public CompactTokenCodec add(Boolean param) {
+        return param == null ? appendNull() : add(param.booleanValue());
+    }
+
+    @Override public CompactTokenCodec add(Character param) {
+        return param == null ? appendNull() : add(param.charValue());
+    }
+
+    @Override public CompactTokenCodec add(Date param) {
+        if (param == null) {
+            return appendNull();
+        }
+        appendSigned(param.getTime());
+        return this;
+    }
+
+    @Override public CompactTokenCodec add(Timestamp param) {
+        return add((Date) param);
+    }
+
+    @Override public String get() {
+        if (!hasMore()) {
+            return "";
+        }
+        return nextIsNull() ? null : nextString();
+    }
+
+    @Override public byte getbyte() {
+        return hasMore() ? (byte) nextSigned() : 0;
+    }
+
+    @Override public short getshort() {
+        return hasMore() ? (short) nextSigned() : 0;
+    }
+
+    @Override public int getint() {
+        return hasMore() ? (int) nextSigned() : 0;
+    }
+
+    @Override public long getlong() {
+        return hasMore() ? nextSigned() : 0;
+    }
+
+    @Override public float getfloat() {
+        return hasMore() ? Float.parseFloat(nextString()) : 0f;
+    }
+
+    @Override public double getdouble() {
+        return hasMore() ? Double.parseDouble(nextString()) : 0d;
+    }
+
+    @Override public boolean getboolean() {
+        return hasMore() && nextVarint() != 0;
+    }
+
+    @Override public char getchar() {
+        return hasMore() ? (char) nextVarint() : '\u0000';
+    }
+
+    @Override public Byte getByte() {
+        return !hasMore() || nextIsNull() ? null : Byte.valueOf((byte) nextSigned());
+    }
+
+    @Override public Short getShort() {
+        return !hasMore() || nextIsNull() ? null : Short.valueOf((short) nextSigned());
+    }
+
+    @Override public Integer getInteger() {
+        return !hasMore() || nextIsNull() ? null : Integer.valueOf((int) nextSigned());
+    }
+
+    @Override public Long getLong() {
+        return !hasMore() || nextIsNull() ? null : Long.valueOf(nextSigned());
+    }
+
+    @Override public Float getFloat() {
+        String param = nextNullableString();
+        return param == null ? null : Float.valueOf(Float.parseFloat(param));
+    }
+
+    @Override public Double getDouble() {
+        String param = nextNullableString();
+        return param == null ? null : Double.valueOf(Double.parseDouble(param));
+    }
+
+    @Override public Boolean getBoolean() {
+        return !hasMore() || nextIsNull() ? null : Boolean.valueOf(nextVarint() != 0);
+    }
+
+    @Override public Character getCharacter() {
+        return !hasMore() || nextIsNull() ? null : Character.valueOf((char) nextVarint());
+    }
+
+    @Override public Date getDate() {
+        return !hasMore() || nextIsNull() ? null : new Date(nextSigned());
+    }
+
+    @Override public Timestamp getTimestamp() {
+        return !hasMore() || nextIsNull() ? null : new Timestamp(nextSigned());
+    }
+}
@@ -0,0 +1,57 @@
+package com.googlecode.slotted.client;
+
+import java.util.Map;
+
+import com.google.web.bindery.event.shared.Event.Type;
+
+/**
+ * Collects statistics for a {@link SlottedEventBus}.  This default does nothing, and because
+ * {@link #isEnabled()} always returns false, the compiler removes the instrumentation from the bus.  Setting
+ * the deferred binding property "slotted.eventbus.instrumentation" to "on" replaces it with
+ * {@link RecordingEventBusInstrumentation}:
+ * <pre>
+ * &lt;set-property name="slotted.eventbus.instrumentation" value="on"/&gt;
+ * </pre>
+ */
+public class EventBusInstrumentation {
+    /**
+     * @return True if the bus should record statistics.
+     */
+    public boolean isEnabled() {
+        return false;
+    }
+
+    /**
+     * Called after an Event was dispatched to all its handlers.
+     *
+     * @param type The type of the Event.
+     * @param dispatchMillis The time it took to call all the handlers.
+     */
+    public void recordFire(Type<?> type, double dispatchMillis) {
+    }
+
+    /**
+     * Called when an Event or handler change is queued.
+     *
+     * @param fireQueueDepth The number of Events waiting to be fired.
+     * @param handlerQueueDepth The number of handler adds and removes waiting to be processed.
+     */
+    public void recordQueueDepth(int fireQueueDepth, int handlerQueueDepth) {
+    }
+
+    /**
+     * Creates a copy of the statistics recorded so far.
+     *
+     * @param handlers The bus's map of event type to map of source to handlers, which is used for the handler
+     *                 counts.
+     */
+    public EventBusStats snapshot(Map<Type<?>, Map<Object, Object[]>> handlers) {
+        return new EventBusStats();
+    }
+
+    /**
+     * Clears the recorded statistics.
+     */
+    public void reset() {
+    }
+}
@@ -0,0 +1,86 @@
+package com.googlecode.slotted.client;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.web.bindery.event.shared.Event.Type;
+
+/**
+ * A snapshot of the statistics of a {@link SlottedEventBus}, which is returned by
+ * {@link SlottedEventBus#getStats()}.  The snapshot is empty unless the instrumentation is turned on.
+ *
+ * @see EventBusInstrumentation
+ */
+public class EventBusStats {
+    /**
+     * The statistics for one Event type.
+     */
+    public static class TypeStats {
+        int fireCount;
+        double dispatchMillis;
+        HashMap<Object, Integer> handlerCounts = new HashMap<Object, Integer>();
+
+        /**
+         * @return The number of times an Event of the type was fired.
+         */
+        public int getFireCount() {
+            return fireCount;
+        }
+
+        /**
+         * @return The total time spent calling the type's handlers.
+         */
+        public double getDispatchMillis() {
+            return dispatchMillis;
+        }
+
+        /**
+         * @return The number of handlers for each source, where the null source holds the global handlers.
+         */
+        public Map<Object, Integer> getHandlerCounts() {
+            return Collections.unmodifiableMap(handlerCounts);
+        }
+
+        @Override public String toString() {
+            return "fires=" + fireCount + ", dispatchMillis=" + dispatchMillis + ", handlers=" + handlerCounts;
+        }
+    }
+
+    HashMap<Type<?>, TypeStats> typeStats = new HashMap<Type<?>, TypeStats>();
+    int fireQueueHighWater;
+    int handlerQueueHighWater;
+
+    /**
+     * @return The statistics for each Event type that was fired or has handlers.
+     */
+    public Map<Type<?>, TypeStats> getTypeStats() {
+        return Collections.unmodifiableMap(typeStats);
+    }
+
+    /**
+     * @return The statistics for the Event type, or null if it wasn't fired and has no handlers.
+     */
+    public TypeStats getTypeStats(Type<?> type) {
+        return typeStats.get(type);
+    }
+
+    /**
+     * @return The most Events that were waiting to be fired at once.
+     */
+    public int getFireQueueHighWater() {
+        return fireQueueHighWater;
+    }
+
+    /**
+     * @return The most handler adds and removes that were waiting to be processed at once.
+     */
+    public int getHandlerQueueHighWater() {
+        return handlerQueueHighWater;
+    }
+
+    @Override public String toString() {
+        return "EventBusStats{fireQueueHighWater=" + fireQueueHighWater + ", handlerQueueHighWater=" +
+                handlerQueueHighWater + ", types=" + typeStats + "}";
+    }
+}
@@ -8,7 +8,8 @@ import java.lang.annotation.Target;
 /**
  * Indicates that the field is to be tokenized by the AutoTokenizer into the global parameters. The
  * global parameters will appear at the end of the history token similar to URL parameters
- * (i.e. foo?key1=value&amp;key2=anotherValue).
+ * (i.e. foo?key1=value&amp;key2=anotherValue).  The field must be a String, int, long, float, double,
+ * boolean or one of their boxed types.  A null boxed field is left out of the token.
  *
  * The useInEquals parameter determines if the field should be included in the equals() that is
  * generated by the AutoTokenizer.
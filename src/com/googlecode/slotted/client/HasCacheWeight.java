@@ -0,0 +1,12 @@
+package com.googlecode.slotted.client;
+
+/**
+ * Implemented by Activities that are cached by {@link CacheActivities}, and are more expensive to keep in the
+ * background than others.  The weight is used by {@link CacheLimit#getMaxWeight()}.
+ */
+public interface HasCacheWeight {
+    /**
+     * Gets the relative cost of keeping this Activity in the background.  The default for other Activities is 1.
+     */
+    int getCacheWeight();
+}
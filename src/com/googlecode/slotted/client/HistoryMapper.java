@@ -15,15 +15,19 @@
  */
 package com.googlecode.slotted.client;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import com.google.gwt.activity.shared.ActivityMapper;
 import com.google.gwt.core.client.GWT;
+import com.google.gwt.http.client.URL;
 import com.google.gwt.place.shared.Place;
 import com.google.gwt.place.shared.PlaceHistoryMapper;
 import com.google.gwt.place.shared.PlaceTokenizer;
@@ -70,18 +74,75 @@ abstract public class HistoryMapper {
         }
     }
 
+    /**
+     * The result of scanning a history token, which can be cached.  When it is cached, the Places made from an
+     * AutoTokenizer are kept as prototypes, and later parses copy them instead of parsing the token again.
+     */
+    private static class ParsedToken {
+        private final ArrayList<PlaceTokenizer<? extends SlottedPlace>> tokenizers =
+                new ArrayList<PlaceTokenizer<? extends SlottedPlace>>();
+        private final ArrayList<String> placeTokens = new ArrayList<String>();
+        private final ArrayList<String> segments = new ArrayList<String>();
+        private final ArrayList<String> parameterNames = new ArrayList<String>();
+        private final ArrayList<String> parameterValues = new ArrayList<String>();
+        private SlottedPlace[] prototypes;
+
+        /**
+         * @param keepPrototypes True if the ParsedToken is cached, so the Places should be kept for the next call.
+         */
+        @SuppressWarnings("unchecked")
+        private SlottedPlace[] createPlaces(boolean keepPrototypes) {
+            PlaceParameters parameters = new PlaceParameters();
+            for (int i = 0; i < parameterNames.size(); i++) {
+                parameters.setParameter(parameterNames.get(i), parameterValues.get(i));
+            }
+
+            SlottedPlace[] places = new SlottedPlace[tokenizers.size()];
+            boolean fillPrototypes = keepPrototypes && prototypes == null;
+            if (fillPrototypes) {
+                prototypes = new SlottedPlace[places.length];
+            }
+            for (int i = 0; i < places.length; i++) {
+                PlaceTokenizer<? extends SlottedPlace> tokenizer = tokenizers.get(i);
+                if (prototypes != null && prototypes[i] != null) {
+                    places[i] = ((AutoTokenizer<SlottedPlace>) tokenizer).copy(prototypes[i]);
+                } else {
+                    places[i] = tokenizer.getPlace(placeTokens.get(i));
+                    if (places[i] == null) {
+                        throw new IllegalStateException("Place not defined:" + segments.get(i));
+                    }
+                    if (tokenizer instanceof AutoTokenizer) {
+                        AutoTokenizer<SlottedPlace> autoTokenizer = (AutoTokenizer<SlottedPlace>) tokenizer;
+                        autoTokenizer.fillFields(parameters, places[i]);
+                        if (fillPrototypes) {
+                            prototypes[i] = autoTokenizer.copy(places[i]);
+                        }
+                    }
+                }
+                places[i].setPlaceParameters(parameters);
+            }
+            return places;
+        }
+    }
+
     private static final Logger log = Logger.getLogger(HistoryMapper.class.getName());
     private PlaceFactory placeFactory = GWT.create(PlaceFactory.class);
     private HashMap<String, PlaceTokenizer<? extends SlottedPlace>> nameToTokenizerMap = new HashMap<String, PlaceTokenizer<? extends SlottedPlace>>();
     private HashMap<Class, String> placeToNameMap = new HashMap<Class, String>();
+    private HashMap<String, String> nameToCodeMap = new HashMap<String, String>();
+    private HashMap<String, String> codeToNameMap = new HashMap<String, String>();
     private HashMap<Class, Class<? extends SlottedPlace>[]> activityCacheMap = new HashMap<Class, Class<? extends SlottedPlace>[]>();
     private HashMap<Class, Class<? extends CodeSplitMapper>> codeSplitMap = new HashMap<Class, Class<? extends CodeSplitMapper>>();
+    private SlotTopology slotTopology = new SlotTopology();
     private SlottedPlace defaultPlace;
     private SlottedPlace errorPlace;
     private ActivityMapper legacyActivityMapper;
     private PlaceHistoryMapper legacyHistoryMapper;
     private boolean handlingHistory;
     private String handlingToken;
+    private LinkedHashMap<String, ParsedToken> tokenCache;
+    private int tokenCacheHits;
+    private int tokenCacheMisses;
 
     /**
      * Default constructor which adds itself as a History listener and calls init() on the base
@@ -166,6 +227,13 @@ abstract public class HistoryMapper {
         return codeSplitMap.get(place.getClass());
     }
 
+    /**
+     * Gets the index of the Slot hierarchy, which is built as Places are registered.
+     */
+    public SlotTopology getSlotTopology() {
+        return slotTopology;
+    }
+
     /**
      * @deprecated
      * This was broken into 2 calls.
@@ -331,6 +399,15 @@ abstract public class HistoryMapper {
                 }
             }
         }
+        if (tokenCache != null) {
+            tokenCache.clear();
+        }
+        if (place instanceof SlottedPlace) {
+            slotTopology.addPlace(((SlottedPlace) place).getClass(), childSlots);
+            if (tokenizer instanceof AutoTokenizer) {
+                SlottedPlace.registerHashTokenizer(((SlottedPlace) place).getClass(), (AutoTokenizer) tokenizer);
+            }
+        }
 
         if (tokenizer == null) {
             tokenizer = new DefaultPlaceTokenizer(placeClass, legacyActivityMapper);
@@ -416,45 +493,178 @@ abstract public class HistoryMapper {
      * @return List of SlottedPlaces newly created from the PlaceTokenizers
      */
     public SlottedPlace[] parseToken(String token) {
-        PlaceParameters parameters = new PlaceParameters();
+        ParsedToken parsed = null;
+        if (tokenCache != null) {
+            parsed = tokenCache.get(token);
+            if (parsed != null) {
+                tokenCacheHits++;
+            } else {
+                tokenCacheMisses++;
+            }
+        }
+        if (parsed == null) {
+            parsed = scanToken(token);
+            if (tokenCache != null) {
+                tokenCache.put(token, parsed);
+            }
+        }
+
+        return parsed.createPlaces(tokenCache != null);
+    }
+
+    /**
+     * Sets the number of parsed tokens that are kept, so navigating back and forward between the same tokens
+     * doesn't parse them again.  The Places are still created new for every call to {@link #parseToken(String)}.
+     *
+     * @param maxSize The number of tokens to keep, or 0 to turn off the cache, which is the default.
+     */
+    public void setTokenCacheSize(final int maxSize) {
+        if (maxSize <= 0) {
+            tokenCache = null;
+        } else {
+            LinkedHashMap<String, ParsedToken> oldCache = tokenCache;
+            tokenCache = new LinkedHashMap<String, ParsedToken>(16, 0.75f, true) {
+                @Override protected boolean removeEldestEntry(Map.Entry<String, ParsedToken> eldest) {
+                    return size() > maxSize;
+                }
+            };
+            if (oldCache != null) {
+                tokenCache.putAll(oldCache);
+            }
+        }
+    }
+
+    /**
+     * Sets a dictionary of Place names that are written in the token as '~' followed by their index in the list,
+     * which shortens tokens with long Place names.  Tokens with the full names are still parsed.  The order of
+     * the names must not change between releases, or bookmarked tokens will go to the wrong Place.  This is
+     * usually called at the end of {@link #init()}, once the Places are registered.
+     *
+     * @param names The registered Place names, as returned by {@link #getPlaceName(Class)}.
+     */
+    public void setPlaceNameDictionary(String... names) {
+        nameToCodeMap.clear();
+        codeToNameMap.clear();
+        for (int i = 0; i < names.length; i++) {
+            String name = names[i].toLowerCase();
+            String code = "~" + Integer.toString(i, 36);
+            nameToCodeMap.put(name, code);
+            codeToNameMap.put(code, name);
+        }
+        if (tokenCache != null) {
+            tokenCache.clear();
+        }
+    }
+
+    /**
+     * Gets the number of times {@link #parseToken(String)} found the token in the cache.
+     */
+    public int getTokenCacheHits() {
+        return tokenCacheHits;
+    }
+
+    /**
+     * Gets the number of times {@link #parseToken(String)} had to parse the token while the cache was on.
+     */
+    public int getTokenCacheMisses() {
+        return tokenCacheMisses;
+    }
 
-        String[] split = token.split("\\?");
-        String[] placeTokens = split[0].split("/");
+    /**
+     * Splits the token into the tokenizers, tokenizer tokens and decoded global parameters.
+     */
+    private ParsedToken scanToken(String token) {
+        ParsedToken parsed = new ParsedToken();
 
-        if (split.length > 1) {
-            String[] paramPairs = split[1].split("&");
+        int placesEnd = token.indexOf('?');
+        if (placesEnd < 0) {
+            placesEnd = token.length();
+        } else {
+            scanParameters(token, placesEnd + 1, parsed);
+        }
+        if (placesEnd == 0) {
+            throw new IllegalStateException("No Place in token:" + token);
+        }
 
-            for (String pair: paramPairs) {
-                String[] pairSplit = pair.split("=");
-                parameters.setParameter(pairSplit[0], pairSplit[1]);
+        int start = 0;
+        while (start < placesEnd) {
+            int end = token.indexOf('/', start);
+            if (end < 0 || end > placesEnd) {
+                end = placesEnd;
             }
+            if (end == start) {
+                throw new IllegalStateException("Empty Place at index " + start + " of token:" + token);
+            }
+            scanPlace(token, start, end, parsed);
+            start = end + 1;
+        }
+
+        return parsed;
+    }
+
+    /**
+     * Finds the tokenizer for the section of the token between start and end, which has the Place name and
+     * optionally a ':' followed by the tokenizer's token.
+     */
+    private void scanPlace(String token, int start, int end, ParsedToken parsed) {
+        int nameEnd = token.indexOf(':', start);
+        String parameterToken;
+        if (nameEnd < 0 || nameEnd > end) {
+            nameEnd = end;
+            parameterToken = "";
+        } else {
+            parameterToken = token.substring(nameEnd + 1, end);
         }
 
-        SlottedPlace[] places = new SlottedPlace[placeTokens.length];
-        for (int i = 0; i < places.length; i++) {
-            String[] placeParts = placeTokens[i].split(":", 2);
-            String parameterToken = "";
-            if (placeParts.length == 2) {
-                parameterToken = placeParts[1];
+        String name = token.substring(start, nameEnd);
+        if (name.startsWith("~") && codeToNameMap.containsKey(name)) {
+            name = codeToNameMap.get(name);
+        }
+        PlaceTokenizer<? extends SlottedPlace> tokenizer = nameToTokenizerMap.get(name);
+        if (tokenizer == null) {
+            tokenizer = nameToTokenizerMap.get(name.toLowerCase());
+            if (tokenizer == null) {
+                throw new IllegalStateException("No tokenizer for:" + name);
             }
+        }
 
-	        String name = placeParts[0].toLowerCase();
-            PlaceTokenizer<? extends SlottedPlace> tokenizer = nameToTokenizerMap.get(name);
-	        if (tokenizer == null) {
-		        throw new IllegalStateException("No tokenizer for:" + placeParts[0]);
-	        }
-            places[i] = tokenizer.getPlace(parameterToken);
-            if (tokenizer instanceof AutoTokenizer) {
-                //noinspection unchecked
-                ((AutoTokenizer) tokenizer).fillFields(parameters, places[i]);
+        parsed.tokenizers.add(tokenizer);
+        parsed.placeTokens.add(parameterToken);
+        parsed.segments.add(token.substring(start, end));
+    }
+
+    /**
+     * Parses the '&amp;' separated name=value pairs that start at the index, and decodes the names and values.
+     */
+    private void scanParameters(String token, int start, ParsedToken parsed) {
+        int length = token.length();
+        while (start < length) {
+            int end = token.indexOf('&', start);
+            if (end < 0) {
+                end = length;
             }
-            if (places[i] == null) {
-                throw new IllegalStateException("Place not defined:" + placeTokens[i]);
+            if (end > start) {
+                int equals = token.indexOf('=', start);
+                if (equals < 0 || equals > end) {
+                    throw new IllegalStateException("Missing '=' in global parameter at index " + start +
+                            " of token:" + token);
+                }
+                if (equals == start) {
+                    throw new IllegalStateException("Missing name in global parameter at index " + start +
+                            " of token:" + token);
+                }
+                parsed.parameterNames.add(decode(token.substring(start, equals)));
+                parsed.parameterValues.add(decode(token.substring(equals + 1, end)));
             }
-            places[i].setPlaceParameters(parameters);
+            start = end + 1;
         }
+    }
 
-        return places;
+    private static String decode(String value) {
+        if (value.indexOf('%') < 0 && value.indexOf('+') < 0) {
+            return value;
+        }
+        return URL.decodeQueryString(value);
     }
 
     private void navDefaultPlace(SlottedController controller) {
@@ -523,31 +733,28 @@ abstract public class HistoryMapper {
         }
     }
 
-    private String createPlaceToken(SlottedPlace place) {
+    /**
+     * Adds the name and tokenizer token for the Place to the writer.
+     */
+    private void writePlaceToken(TokenWriter writer, SlottedPlace place) {
         Place actualPlace = place;
         if (place instanceof WrappedPlace) {
             actualPlace = ((WrappedPlace) place).getPlace();
         }
-        String token;
         String name = placeToNameMap.get(actualPlace.getClass());
         if (name != null) {
             PlaceTokenizer tokenizer = nameToTokenizerMap.get(name);
             @SuppressWarnings("unchecked")
             String params = tokenizer.getToken(actualPlace);
-
-            token = name;
-            if (params != null && !params.isEmpty()) {
-                token += ":" + params;
-            }
+            String code = nameToCodeMap.get(name);
+            writer.appendPlace(code != null ? code : name, params);
 
         } else if (legacyHistoryMapper != null) {
-            token = legacyHistoryMapper.getToken(actualPlace);
+            writer.appendPlace(legacyHistoryMapper.getToken(actualPlace), null);
 
         } else {
             throw new IllegalStateException("Place not registered:" + place.getClass().getName());
         }
-
-        return token;
     }
 
     /**
@@ -567,17 +774,28 @@ abstract public class HistoryMapper {
      * @return History token that can be added to a base URL for navigation.
      */
     public String createToken(SlottedPlace place, SlottedPlace... nonDefaultPlaces) {
+        TokenWriter writer = new TokenWriter();
+        writeToken(writer, place, Arrays.asList(nonDefaultPlaces));
+        return writer.toString();
+    }
+
+    /**
+     * Same as {@link #createToken(SlottedPlace, SlottedPlace...)}, but adds the token to the writer.
+     *
+     * @param writer The writer the token is added to.
+     * @param place The SlottedPlace that will be navigated to.
+     * @param otherPlaces The other Places that should be included in the token.
+     */
+    public void writeToken(TokenWriter writer, SlottedPlace place, Iterable<SlottedPlace> otherPlaces) {
         PlaceParameters placeParameters = new PlaceParameters();
-        String token = createPlaceToken(place);
+        writePlaceToken(writer, place);
         place.extractParameters(placeParameters);
-        for (SlottedPlace nonDefaultPlace: nonDefaultPlaces) {
-            token += "/" + createPlaceToken(nonDefaultPlace);
-            nonDefaultPlace.extractParameters(placeParameters);
+        for (SlottedPlace otherPlace: otherPlaces) {
+            writePlaceToken(writer, otherPlace);
+            otherPlace.extractParameters(placeParameters);
         }
 
-        token += placeParameters.toString();
-
-        return token;
+        writer.appendParameters(placeParameters);
     }
 
     /**
@@ -603,25 +821,18 @@ abstract public class HistoryMapper {
      * @return History token string that contains all the Places in the hierarchy.
      */
     protected String createToken(ActiveSlot activeSlot, SlottedController controller) {
-        String token;
-        token = createPageList(activeSlot);
+        TokenWriter writer = new TokenWriter();
+        writePageList(writer, activeSlot);
+        writer.appendParameters(controller.getCurrentParameters());
 
-        PlaceParameters parameters = controller.getCurrentParameters();
-        if (parameters != null) {
-            token += parameters.toString();
-        }
-
-        return token;
+        return writer.toString();
     }
 
-    private String createPageList(ActiveSlot activeSlot) {
-        SlottedPlace place = activeSlot.getPlace();
-
-        String token = createPlaceToken(place);
+    private void writePageList(TokenWriter writer, ActiveSlot activeSlot) {
+        writePlaceToken(writer, activeSlot.getPlace());
         for (ActiveSlot child: activeSlot.getChildren()) {
-            token += "/" + createPageList(child);
+            writePageList(writer, child);
         }
-        return token;
     }
 
 }
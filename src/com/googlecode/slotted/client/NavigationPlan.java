@@ -0,0 +1,174 @@
+package com.googlecode.slotted.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import com.googlecode.slotted.client.SlottedController.RootSlotImpl;
+
+/**
+ * Computed once per navigation, and shared by the mayStop() phase and the stop/start phase.  It indexes the
+ * Places being navigated to by Slot, caches the Places of Activities to cache, and records what happens to
+ * each Slot.  The SlottedController exposes the last plan through {@link SlottedController#getNavigationPlan()}
+ * for diagnostics.
+ */
+public class NavigationPlan {
+    /**
+     * What was done to the Activity displayed in a Slot.
+     */
+    public enum Action {
+        /** The Activity was left as is, because the navigation was superseded or cancelled. */
+        None,
+        /** A new Activity was created and started. */
+        Start,
+        /** A backgrounded Activity was shown and refreshed. */
+        Foreground,
+        /** The existing Activity was refreshed. */
+        Refresh
+    }
+
+    /**
+     * The plan for a single Slot in the hierarchy.
+     */
+    public static class Step {
+        private final NavigationPlan plan;
+        private final Slot slot;
+        private final SlottedPlace currentPlace;
+        private final SlottedPlace newPlace;
+        private boolean stop;
+        private Action action = Action.None;
+
+        private Step(NavigationPlan plan, Slot slot, SlottedPlace currentPlace, SlottedPlace newPlace) {
+            this.plan = plan;
+            this.slot = slot;
+            this.currentPlace = currentPlace;
+            this.newPlace = newPlace;
+        }
+
+        /**
+         * Gets the Slot this step applies to.
+         */
+        public Slot getSlot() {
+            return slot;
+        }
+
+        /**
+         * Gets the Place displayed before the navigation, or null if the Slot is new.
+         */
+        public SlottedPlace getCurrentPlace() {
+            return currentPlace;
+        }
+
+        /**
+         * Gets the Place that will be displayed in the Slot.
+         */
+        public SlottedPlace getNewPlace() {
+            return newPlace;
+        }
+
+        /**
+         * Returns true if the current Activity is stopped (or backgrounded) by the navigation.
+         */
+        public boolean isStop() {
+            return stop;
+        }
+
+        /**
+         * Gets what was done to the Activity after any stop.
+         */
+        public Action getAction() {
+            return action;
+        }
+
+        void setStop(boolean stop) {
+            this.stop = stop;
+        }
+
+        void setAction(Action action) {
+            this.action = action;
+        }
+
+        @Override public String toString() {
+            return slot + ":" + currentPlace + "->" + newPlace + (stop ? " stop " : " ") + action;
+        }
+    }
+
+    private final boolean reloadAll;
+    private final HistoryMapper historyMapper;
+    private SlottedPlace rootPlace;
+    private HashMap<Slot, SlottedPlace> placeMap = new HashMap<Slot, SlottedPlace>();
+    private HashMap<Class<? extends SlottedPlace>, List<Class<? extends SlottedPlace>>> cacheMap =
+            new HashMap<Class<? extends SlottedPlace>, List<Class<? extends SlottedPlace>>>();
+    private ArrayList<Step> steps = new ArrayList<Step>();
+
+    /**
+     * Creates the plan for navigating to the passed Places.
+     *
+     * @param newPlaces All the Places that will be navigated to.
+     * @param reloadAll If true, all the Activities will be stopped and started.
+     * @param historyMapper Used to get the Places of Activities to cache.
+     */
+    public NavigationPlan(Iterable<SlottedPlace> newPlaces, boolean reloadAll, HistoryMapper historyMapper) {
+        this.reloadAll = reloadAll;
+        this.historyMapper = historyMapper;
+        for (SlottedPlace place: newPlaces) {
+            Slot parentSlot = place.getParentSlot();
+            if (rootPlace == null && (parentSlot == null || parentSlot instanceof RootSlotImpl)) {
+                rootPlace = place;
+            }
+            if (parentSlot != null && !placeMap.containsKey(parentSlot)) {
+                placeMap.put(parentSlot, place);
+            }
+        }
+    }
+
+    /**
+     * Returns true if all Activities are stopped and started.
+     */
+    public boolean isReloadAll() {
+        return reloadAll;
+    }
+
+    /**
+     * Gets the Place being navigated to for the Slot.
+     *
+     * @return The Place or null if the navigation doesn't specify one for the Slot.
+     */
+    public SlottedPlace getPlace(Slot slot) {
+        if (slot.getOwnerPlace() == null) {
+            return rootPlace;
+        }
+        return placeMap.get(slot);
+    }
+
+    /**
+     * Same as {@link HistoryMapper#getPlacesOfActivitiesToCache(SlottedPlace)}, but only looked up once per
+     * Place class during the navigation.
+     */
+    public List<Class<? extends SlottedPlace>> getPlacesOfActivitiesToCache(SlottedPlace place) {
+        List<Class<? extends SlottedPlace>> places = cacheMap.get(place.getClass());
+        if (places == null) {
+            places = historyMapper.getPlacesOfActivitiesToCache(place);
+            cacheMap.put(place.getClass(), places);
+        }
+        return places;
+    }
+
+    /**
+     * Gets the steps for all the Slots in the order they were processed.
+     */
+    public List<Step> getSteps() {
+        return Collections.unmodifiableList(steps);
+    }
+
+    boolean isStepOf(Step step) {
+        return step != null && step.plan == this;
+    }
+
+    Step addStep(Slot slot, SlottedPlace currentPlace, SlottedPlace newPlace) {
+        Step step = new Step(this, slot, currentPlace, newPlace);
+        steps.add(step);
+        return step;
+    }
+}
@@ -0,0 +1,179 @@
+package com.googlecode.slotted.client;
+
+import com.google.gwt.core.client.Duration;
+
+/**
+ * The time a navigation spent in each of its phases, which is sent with the {@link NavigationTimingEvent} after
+ * the navigation completes.  The phases follow each other, so their sum is the total time of the navigation.
+ * <p>
+ * When {@link SlottedController#setPerformanceMarks(boolean)} is turned on, each phase is also recorded as a
+ * window.performance mark and measure named "slotted:" and the phase, so it shows up in the browser's profiler.
+ */
+public class NavigationTiming {
+    /**
+     * The phases of a navigation, in the order they happen.
+     */
+    public enum Phase {
+        /** Creating the Place hierarchy and extracting the global parameters. */
+        Hierarchy,
+        /** Calling the {@link NavigationOverride}. */
+        Override,
+        /** Comparing the Places and calling mayStop() on the Activities being replaced. */
+        MayStop,
+        /** Stopping, constructing, starting and refreshing the Activities. */
+        ConstructStopStart,
+        /** Waiting for async Activities and code splits to return. */
+        AsyncWait,
+        /** Creating the token, clearing the cache and firing the {@link NewPlacesEvent}. */
+        Cleanup,
+        /** Showing the views of the Activities. */
+        ShowViews
+    }
+
+    private static final String MarkPrefix = "slotted:";
+
+    private final double startTime;
+    private double phaseStart;
+    private final double[] durations = new double[Phase.values().length];
+    private final boolean performanceMarks;
+    private String lastMark;
+    private String token;
+    private boolean viewsShown;
+    private Slot slowestSlot;
+    private SlottedPlace slowestPlace;
+    private double slowestSlotMillis;
+
+    /**
+     * Starts timing the navigation.
+     *
+     * @param performanceMarks True if each phase should also be written as a window.performance measure.
+     */
+    NavigationTiming(boolean performanceMarks) {
+        this.performanceMarks = performanceMarks;
+        startTime = Duration.currentTimeMillis();
+        phaseStart = startTime;
+        if (performanceMarks) {
+            lastMark = MarkPrefix + "start";
+            mark(lastMark);
+        }
+    }
+
+    /**
+     * Ends the phase, which started when the previous phase ended.
+     */
+    void endPhase(Phase phase) {
+        double now = Duration.currentTimeMillis();
+        durations[phase.ordinal()] += now - phaseStart;
+        phaseStart = now;
+        if (performanceMarks) {
+            String name = MarkPrefix + phase.name();
+            mark(name);
+            measure(name, lastMark, name);
+            lastMark = name;
+        }
+    }
+
+    /**
+     * Records the time it took to get and start an Activity, and keeps it if it is the slowest so far.
+     */
+    void recordSlot(Slot slot, SlottedPlace place, double millis) {
+        if (slowestSlot == null || millis > slowestSlotMillis) {
+            slowestSlot = slot;
+            slowestPlace = place;
+            slowestSlotMillis = millis;
+        }
+    }
+
+    void finish(String token, boolean viewsShown) {
+        this.token = token;
+        this.viewsShown = viewsShown;
+        if (performanceMarks) {
+            clearMark(lastMark);
+        }
+    }
+
+    /**
+     * @return The time spent in the phase, or 0 if the navigation didn't reach it.
+     */
+    public double getMillis(Phase phase) {
+        return durations[phase.ordinal()];
+    }
+
+    /**
+     * @return The time from the goTo() until the navigation completed.
+     */
+    public double getTotalMillis() {
+        return phaseStart - startTime;
+    }
+
+    /**
+     * @return The history token of the completed navigation.
+     */
+    public String getToken() {
+        return token;
+    }
+
+    /**
+     * @return False if a loading Activity was still blocking the views when the navigation completed, in which
+     * case the views are shown later and {@link Phase#ShowViews} doesn't include them.
+     */
+    public boolean isViewsShown() {
+        return viewsShown;
+    }
+
+    /**
+     * @return The Slot whose Activity took the longest to get and start, or null if no Activity was started.
+     */
+    public Slot getSlowestSlot() {
+        return slowestSlot;
+    }
+
+    /**
+     * @return The Place displayed in the slowest Slot.
+     */
+    public SlottedPlace getSlowestPlace() {
+        return slowestPlace;
+    }
+
+    /**
+     * @return The time the slowest Slot took to get and start its Activity, which includes waiting for an async
+     * Activity.
+     */
+    public double getSlowestSlotMillis() {
+        return slowestSlotMillis;
+    }
+
+    @Override public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(token).append(" total=").append(getTotalMillis());
+        for (Phase phase: Phase.values()) {
+            builder.append(", ").append(phase.name()).append('=').append(durations[phase.ordinal()]);
+        }
+        if (slowestPlace != null) {
+            builder.append(", slowest=").append(slowestPlace).append('(').append(slowestSlotMillis).append(')');
+        }
+        return builder.toString();
+    }
+
+    private static native void mark(String name) /*-{
+        var performance = $wnd.performance;
+        if (performance && performance.mark) {
+            performance.mark(name);
+        }
+    }-*/;
+
+    private static native void measure(String name, String startMark, String endMark) /*-{
+        var performance = $wnd.performance;
+        if (performance && performance.measure) {
+            performance.measure(name, startMark, endMark);
+            performance.clearMarks(startMark);
+        }
+    }-*/;
+
+    private static native void clearMark(String name) /*-{
+        var performance = $wnd.performance;
+        if (performance && performance.clearMarks) {
+            performance.clearMarks(name);
+        }
+    }-*/;
+}
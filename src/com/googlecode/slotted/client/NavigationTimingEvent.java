@@ -0,0 +1,58 @@
+package com.googlecode.slotted.client;
+
+import com.google.gwt.event.shared.EventHandler;
+import com.google.gwt.event.shared.GwtEvent;
+import com.google.gwt.event.shared.HandlerManager;
+
+/**
+ * Fired by the {@link SlottedController} after each completed navigation, with the time spent in each phase.
+ *
+ * @see NavigationTiming
+ */
+public class NavigationTimingEvent extends GwtEvent<NavigationTimingEvent.Handler> {
+    public static final Type<Handler> Type = new Type<Handler>();
+    /**
+     * Handler for the NavigationTiming Events.
+     */
+    public static interface Handler extends EventHandler {
+        /**
+         * Called after the navigation's Activities are started and the token is created.
+         */
+        void onNavigationTiming(NavigationTimingEvent event);
+    }
+
+    private NavigationTiming timing;
+
+    /**
+     * Creates an event for the completed navigation.
+     *
+     * @param timing The timings of the navigation.
+     */
+    protected NavigationTimingEvent(NavigationTiming timing) {
+        this.timing = timing;
+    }
+
+    /**
+     * Gets the timings of the navigation.
+     */
+    public NavigationTiming getTiming() {
+        return timing;
+    }
+
+    /**
+     * @return The type used to register handlers.
+     */
+    public Type<Handler> getAssociatedType() {
+        return Type;
+    }
+
+    /**
+     * Should only be called by {@link HandlerManager}. In other words, do not use
+     * or call.
+     *
+     * @param handler handler
+     */
+    protected void dispatch(Handler handler) {
+        handler.onNavigationTiming(this);
+    }
+}
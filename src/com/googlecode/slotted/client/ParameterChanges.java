@@ -0,0 +1,86 @@
+package com.googlecode.slotted.client;
+
+import java.util.Set;
+
+/**
+ * Describes what changed for a refreshed Activity since the previous navigation, which is passed to
+ * {@link SlottedActivity#onRefresh(ParameterChanges)}.
+ *
+ * @see SlottedActivity#getRefreshParameters()
+ */
+public class ParameterChanges {
+    private HistoryMapper historyMapper;
+    private SlottedPlace oldPlace;
+    private SlottedPlace newPlace;
+    private Boolean placeChanged;
+    private Set<String> changedParameters;
+
+    /**
+     * @param changedParameters The unmodifiable names of the changed parameters, which are shared by all the
+     *                          Activities refreshed in a navigation.
+     */
+    ParameterChanges(HistoryMapper historyMapper, SlottedPlace oldPlace, SlottedPlace newPlace,
+            Set<String> changedParameters)
+    {
+        this.historyMapper = historyMapper;
+        this.oldPlace = oldPlace;
+        this.newPlace = newPlace;
+        this.changedParameters = changedParameters;
+    }
+
+    /**
+     * @return True if the Activity's Place has a different token, which happens when a field that isn't used in
+     * equals() changes, or a parameter set on the Place changes.
+     */
+    @SuppressWarnings("unchecked")
+    public boolean isPlaceChanged() {
+        if (placeChanged == null) {
+            if (oldPlace == newPlace) {
+                placeChanged = false;
+            } else if (oldPlace.getClass() != newPlace.getClass()) {
+                placeChanged = true;
+            } else {
+                AutoTokenizer tokenizer = AutoTokenizer.tokenizers.get(oldPlace.getClass());
+                if (tokenizer != null) {
+                    // Compares the fields written in the token, instead of creating both tokens.
+                    placeChanged = !tokenizer.tokenEquals(oldPlace, newPlace) ||
+                            !oldPlace.hasSameSetParameters(newPlace);
+                } else {
+                    placeChanged = !historyMapper.createToken(oldPlace).equals(historyMapper.createToken(newPlace));
+                }
+            }
+        }
+        return placeChanged;
+    }
+
+    /**
+     * @return True if the global parameter was added, removed or has a different value.
+     */
+    public boolean isChanged(String parameterName) {
+        return changedParameters.contains(parameterName);
+    }
+
+    /**
+     * @return True if any of the global parameters was added, removed or has a different value.
+     */
+    public boolean isAnyChanged(String... parameterNames) {
+        for (String name: parameterNames) {
+            if (changedParameters.contains(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The names of all the global parameters that were added, removed or have a different value.
+     */
+    public Set<String> getChangedParameters() {
+        return changedParameters;
+    }
+
+    @Override public String toString() {
+        return "ParameterChanges{placeChanged=" + isPlaceChanged() + ", changedParameters=" +
+                changedParameters + "}";
+    }
+}
@@ -16,8 +16,11 @@
 package com.googlecode.slotted.client;
 
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.logging.Logger;
 
 /**
@@ -26,10 +29,65 @@ import java.util.logging.Logger;
  * instance that has all the global parameters for all Places. Two Places setting the same global parameter,
  * one will overwrite the others value.  It is the responsibility of the developer to avoid this conflict, or
  * use {@link TokenizerParameter} which associates values to a specific place.
+ * <p>
+ * Values are kept as the type they were set with, and are only converted to a String when they are read as
+ * a String or written to a token.
  */
 public class PlaceParameters {
     private static final Logger log = Logger.getLogger(SlottedController.class.getName());
-    private HashMap<String, String> paramMap = new HashMap<String, String>();
+    private LinkedHashMap<Key, Object> paramMap = new LinkedHashMap<Key, Object>();
+
+    /**
+     * A parameter name.  The names of the {@link GlobalParameter} fields are interned by the generated
+     * {@link AutoTokenizer}, which looks them up once instead of on every navigation, and those Keys are
+     * compared by identity.  Other names, like ones parsed from a History token, get a Key that is equal to
+     * the interned one but aren't added to the table, so the table can't grow with every URL.
+     */
+    public static final class Key {
+        private static final HashMap<String, Key> keys = new HashMap<String, Key>();
+        private final String name;
+
+        private Key(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Gets the Key for the name, adding it to the table the first time.  This is for the parameter names
+         * declared by Places.
+         */
+        public static Key intern(String name) {
+            Key key = keys.get(name);
+            if (key == null) {
+                key = new Key(name);
+                keys.put(name, key);
+            }
+            return key;
+        }
+
+        /**
+         * Gets the interned Key for the name, or a new Key if the name isn't declared by a Place.
+         */
+        public static Key get(String name) {
+            Key key = keys.get(name);
+            return key != null ? key : new Key(name);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        @Override public boolean equals(Object o) {
+            return this == o || (o instanceof Key && name.equals(((Key) o).name));
+        }
+
+        @Override public int hashCode() {
+            return name.hashCode();
+        }
+
+        @Override public String toString() {
+            return name;
+        }
+    }
 
     /**
      * Same as {@link #set(String, String)}
@@ -45,10 +103,7 @@ public class PlaceParameters {
      * @param value The value, which will be converted to a String. 'null' will become an empty String ("").
      */
     public void set(String name, String value) {
-        if (value == null ) {
-            value = "";
-        }
-        paramMap.put(name, value);
+        set(Key.get(name), value);
     }
 
     /**
@@ -58,7 +113,7 @@ public class PlaceParameters {
      * @param value The value, which will be converted to a String.
      */
     public void set(String name, int value) {
-        paramMap.put(name, "" + value);
+        set(Key.get(name), value);
     }
 
     /**
@@ -68,7 +123,7 @@ public class PlaceParameters {
      * @param value The value, which will be converted to a String.
      */
     public void set(String name, long value) {
-        paramMap.put(name, "" + value);
+        set(Key.get(name), value);
     }
 
     /**
@@ -78,7 +133,7 @@ public class PlaceParameters {
      * @param value The value, which will be converted to a String.
      */
     public void set(String name, float value) {
-        paramMap.put(name, "" + value);
+        set(Key.get(name), value);
     }
 
     /**
@@ -88,14 +143,66 @@ public class PlaceParameters {
      * @param value The value, which will be converted to a String.
      */
     public void set(String name, double value) {
-        paramMap.put(name, "" + value);
+        set(Key.get(name), value);
+    }
+
+    /**
+     * Sets the parameter by key/value pair.
+     *
+     * @param name The name or key of the parameter
+     * @param value The value, which will be converted to a String.
+     */
+    public void set(String name, boolean value) {
+        set(Key.get(name), value);
+    }
+
+    /**
+     * Same as {@link #set(String, String)}, but with an interned Key.
+     */
+    public void set(Key key, String value) {
+        paramMap.put(key, value == null ? "" : value);
+    }
+
+    /**
+     * Same as {@link #set(String, int)}, but with an interned Key.
+     */
+    public void set(Key key, int value) {
+        paramMap.put(key, value);
+    }
+
+    /**
+     * Same as {@link #set(String, long)}, but with an interned Key.
+     */
+    public void set(Key key, long value) {
+        paramMap.put(key, value);
+    }
+
+    /**
+     * Same as {@link #set(String, float)}, but with an interned Key.
+     */
+    public void set(Key key, float value) {
+        paramMap.put(key, value);
+    }
+
+    /**
+     * Same as {@link #set(String, double)}, but with an interned Key.
+     */
+    public void set(Key key, double value) {
+        paramMap.put(key, value);
+    }
+
+    /**
+     * Same as {@link #set(String, boolean)}, but with an interned Key.
+     */
+    public void set(Key key, boolean value) {
+        paramMap.put(key, value);
     }
 
     /**
      * Same as {@link #get(String)}
      */
     public String getParameter(String name) {
-        return paramMap.get(name);
+        return get(name);
     }
 
     /**
@@ -104,7 +211,15 @@ public class PlaceParameters {
      * @return String value or null if the value was never set.
      */
     public String get(String name) {
-        return paramMap.get(name);
+        return get(Key.get(name));
+    }
+
+    /**
+     * Same as {@link #get(String)}, but with an interned Key.
+     */
+    public String get(Key key) {
+        Object value = paramMap.get(key);
+        return value == null ? null : value.toString();
     }
 
     /**
@@ -114,9 +229,18 @@ public class PlaceParameters {
      * @throws NumberFormatException if the value isn't a valid number
      */
     public int getInt(String name) {
-        String value = paramMap.get(name);
-        if (value != null) {
-            return new Integer(value);
+        return getInt(Key.get(name));
+    }
+
+    /**
+     * Same as {@link #getInt(String)}, but with an interned Key.
+     */
+    public int getInt(Key key) {
+        Object value = paramMap.get(key);
+        if (value instanceof Integer) {
+            return (Integer) value;
+        } else if (value != null) {
+            return Integer.parseInt(value.toString());
         }
         return 0;
     }
@@ -128,9 +252,18 @@ public class PlaceParameters {
      * @throws NumberFormatException if the value isn't a valid number
      */
     public long getLong(String name) {
-        String value = paramMap.get(name);
-        if (value != null) {
-            return new Long(value);
+        return getLong(Key.get(name));
+    }
+
+    /**
+     * Same as {@link #getLong(String)}, but with an interned Key.
+     */
+    public long getLong(Key key) {
+        Object value = paramMap.get(key);
+        if (value instanceof Long || value instanceof Integer) {
+            return ((Number) value).longValue();
+        } else if (value != null) {
+            return Long.parseLong(value.toString());
         }
         return 0;
     }
@@ -142,9 +275,18 @@ public class PlaceParameters {
      * @throws NumberFormatException if the value isn't a valid number
      */
     public float getFloat(String name) {
-        String value = paramMap.get(name);
-        if (value != null) {
-            return new Float(value);
+        return getFloat(Key.get(name));
+    }
+
+    /**
+     * Same as {@link #getFloat(String)}, but with an interned Key.
+     */
+    public float getFloat(Key key) {
+        Object value = paramMap.get(key);
+        if (value instanceof Float) {
+            return (Float) value;
+        } else if (value != null) {
+            return Float.parseFloat(value.toString());
         }
         return 0;
     }
@@ -156,13 +298,52 @@ public class PlaceParameters {
      * @throws NumberFormatException if the value isn't a valid number
      */
     public double getDouble(String name) {
-        String value = paramMap.get(name);
-        if (value != null) {
-            return new Double(value);
+        return getDouble(Key.get(name));
+    }
+
+    /**
+     * Same as {@link #getDouble(String)}, but with an interned Key.
+     */
+    public double getDouble(Key key) {
+        Object value = paramMap.get(key);
+        if (value instanceof Double || value instanceof Float) {
+            return ((Number) value).doubleValue();
+        } else if (value != null) {
+            return Double.parseDouble(value.toString());
         }
         return 0;
     }
 
+    /**
+     * Gets the value based on the name key.
+     * @param name The name or key to be retrieved.
+     * @return the value or false if the value was never set.
+     */
+    public boolean getBoolean(String name) {
+        return getBoolean(Key.get(name));
+    }
+
+    /**
+     * Same as {@link #getBoolean(String)}, but with an interned Key.
+     */
+    public boolean getBoolean(Key key) {
+        Object value = paramMap.get(key);
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        return value != null && Boolean.parseBoolean(value.toString());
+    }
+
+    /**
+     * Used by the generated {@link AutoTokenizer} to leave boxed {@link GlobalParameter} fields null.
+     *
+     * @return True if the parameter has a value that isn't an empty String.
+     */
+    public boolean isSet(Key key) {
+        Object value = paramMap.get(key);
+        return value != null && !"".equals(value);
+    }
+
     /**
      * Gets the value based on the name key or throws an exception if the value wasn't set.
      * @param name The name or key to be retrieved.
@@ -185,40 +366,74 @@ public class PlaceParameters {
      */
     public void addPlaceParameters(PlaceParameters fromPlaceParameters, List<String> setKeys) {
         if (setKeys != null) {
-            for (String key: setKeys) {
-                String existingValue = paramMap.get(key);
-                String fromValue = fromPlaceParameters.paramMap.get(key);
+            for (String name: setKeys) {
+                Key key = Key.get(name);
+                Object existingValue = paramMap.get(key);
+                Object fromValue = fromPlaceParameters.paramMap.get(key);
                 if (existingValue == null) {
                     paramMap.put(key, fromValue);
-                } else if (!existingValue.equals(fromValue)) {
-                    log.warning(key + " has second value that is being ignored: " + fromValue);
+                } else if (!isSameValue(existingValue, fromValue)) {
+                    log.warning(name + " has second value that is being ignored: " + fromValue);
                 }
             }
         }
     }
 
     /**
-     * Creates an encoded url string with each key/value pair with an '=' and starting with and '&amp;' and '?'
-     * between each key/value.
+     * Values set with different types are the same if they would be written the same in the token.
+     */
+    private static boolean isSameValue(Object value1, Object value2) {
+        if (value1.equals(value2)) {
+            return true;
+        }
+        return value2 != null && value1.getClass() != value2.getClass() && value1.toString().equals(value2.toString());
+    }
+
+    /**
+     * Gets the names of the parameters that were added, removed or have a different value compared to the
+     * previous parameters.
      *
-     * @return Example: "&amp;key1=foo&amp;key2=Some+sentence+that+was+encoded."
+     * @param previous The parameters to compare to, which can be null.
      */
-    public String toString() {
-        String string = "";
-        if (!paramMap.isEmpty()) {
-            for (Entry<String, String> entry: paramMap.entrySet()) {
-                if (string.isEmpty()) {
-                    string += "?";
-                } else {
-                    string += "&";
+    Set<String> getChangedNames(PlaceParameters previous) {
+        HashSet<String> changed = new HashSet<String>();
+        if (previous == this) {
+            return changed;
+        }
+        for (Entry<Key, Object> entry: paramMap.entrySet()) {
+            Object previousValue = previous == null ? null : previous.paramMap.get(entry.getKey());
+            Object value = entry.getValue();
+            if (value == null ? previousValue != null : previousValue == null || !isSameValue(value, previousValue)) {
+                changed.add(entry.getKey().getName());
+            }
+        }
+        if (previous != null) {
+            for (Key key: previous.paramMap.keySet()) {
+                if (!paramMap.containsKey(key)) {
+                    changed.add(key.getName());
                 }
-
-                string += entry.getKey() + "=" + entry.getValue();
             }
         }
-        return string;
+        return changed;
     }
 
-
-
+    /**
+     * Gets all the key/value pairs, which is used by the {@link TokenWriter}.  The values are only converted to
+     * Strings by the writer.
+     */
+    Set<Entry<Key, Object>> entries() {
+        return paramMap.entrySet();
+    }
+    /**
+     * Creates an encoded url string with each key/value pair with an '=' and starting with and '?' and '&amp;'
+     * between each key/value.
+     *
+     * @return Example: "?key1=foo&amp;key2=Some+sentence+that+was+encoded."
+     */
+    public String toString() {
+        if (paramMap.isEmpty()) {
+            return "";
+        }
+        return new TokenWriter().appendParameters(this).toString();
+    }
 }
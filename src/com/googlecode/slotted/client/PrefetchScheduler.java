@@ -0,0 +1,292 @@
+package com.googlecode.slotted.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import com.google.gwt.activity.shared.Activity;
+import com.google.gwt.core.client.Callback;
+import com.google.gwt.user.client.Timer;
+
+/**
+ * Loads the code split fragments of the Places the user is likely to navigate to next, so the first visit
+ * doesn't wait for the download.  After a navigation settles, the scheduler waits for the browser to be idle,
+ * and then calls {@link CodeSplitMapper#load(Callback)} for the {@link CodeSplitMapper}s that aren't loaded yet
+ * of these Places:
+ * <ul>
+ *     <li>The default Places of the child Slots of the displayed Places.</li>
+ *     <li>The Places added with {@link #addTarget(SlottedPlace)}, which the navigation widgets do for the Places
+ *     they link to.</li>
+ * </ul>
+ * Nothing is loaded while a navigation is in flight or an Activity is loading.  Prefetching is off by default,
+ * and is turned on with:
+ * <pre>
+ * slottedController.getPrefetchScheduler().setEnabled(true);
+ * </pre>
+ */
+public class PrefetchScheduler {
+    /**
+     * The priority of the default Places of child Slots.
+     */
+    public static final int ChildSlotPriority = 20;
+
+    /**
+     * The priority of the Places added with {@link #addTarget(SlottedPlace)}.
+     */
+    public static final int TargetPriority = 10;
+
+    private final SlottedController slottedController;
+    private boolean enabled;
+    private int maxConcurrent = 1;
+    private int idleTimeout = 2000;
+    private int retryDelay = 250;
+    private LinkedHashMap<SlottedPlace, Integer> targets = new LinkedHashMap<SlottedPlace, Integer>();
+    private HashMap<Class<? extends SlottedPlace>, Integer> priorities =
+            new HashMap<Class<? extends SlottedPlace>, Integer>();
+    private ArrayList<Class<? extends CodeSplitMapper>> queue = new ArrayList<Class<? extends CodeSplitMapper>>();
+    private HashSet<Class<? extends CodeSplitMapper>> inFlight = new HashSet<Class<? extends CodeSplitMapper>>();
+    private HashSet<Class<? extends CodeSplitMapper>> failed = new HashSet<Class<? extends CodeSplitMapper>>();
+    private int scheduled;
+    private int prefetchCount;
+
+    PrefetchScheduler(SlottedController slottedController) {
+        this.slottedController = slottedController;
+    }
+
+    /**
+     * @return True if fragments are prefetched.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Turns prefetching on or off.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (enabled) {
+            navigationSettled();
+        } else {
+            cancel();
+        }
+    }
+
+    /**
+     * Sets the number of fragments that can be downloading at the same time, which defaults to 1.
+     */
+    public void setMaxConcurrent(int maxConcurrent) {
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+    }
+
+    /**
+     * Sets the longest time in milliseconds to wait for the browser to be idle before prefetching anyway, which
+     * defaults to 2000.  When the browser can't report idle time, this is how long the scheduler waits.
+     */
+    public void setIdleTimeout(int idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Sets the priority of a Place type, which overrides {@link #ChildSlotPriority} and {@link #TargetPriority}.
+     * Fragments are loaded highest priority first, and a negative priority stops the Place from being
+     * prefetched.
+     *
+     * @param placeClass The type of Place.
+     * @param priority The priority, or null to use the default.
+     */
+    public void setPriority(Class<? extends SlottedPlace> placeClass, Integer priority) {
+        if (priority == null) {
+            priorities.remove(placeClass);
+        } else {
+            priorities.put(placeClass, priority);
+        }
+    }
+
+    /**
+     * Adds a Place the user can navigate to from anywhere, such as the destination of a menu item.  A Place
+     * added more than once, like by two widgets, stays a target until it is removed the same number of times.
+     */
+    public void addTarget(SlottedPlace place) {
+        Integer count = targets.get(place);
+        targets.put(place, count == null ? 1 : count + 1);
+    }
+
+    /**
+     * Removes a Place added with {@link #addTarget(SlottedPlace)}.
+     */
+    public void removeTarget(SlottedPlace place) {
+        Integer count = targets.get(place);
+        if (count != null) {
+            if (count > 1) {
+                targets.put(place, count - 1);
+            } else {
+                targets.remove(place);
+            }
+        }
+    }
+
+    /**
+     * @return True if the Place was added with {@link #addTarget(SlottedPlace)} and hasn't been removed.
+     */
+    public boolean isTarget(SlottedPlace place) {
+        return targets.containsKey(place);
+    }
+
+    /**
+     * @return The number of fragments the scheduler has started loading.
+     */
+    public int getPrefetchCount() {
+        return prefetchCount;
+    }
+
+    /**
+     * Called when a navigation starts, which stops the scheduled prefetching.  Downloads that already started
+     * will finish.
+     */
+    void navigationStarted() {
+        cancel();
+    }
+
+    /**
+     * Called when a navigation has finished, which schedules prefetching for when the browser is idle.
+     */
+    void navigationSettled() {
+        if (enabled) {
+            schedule(0);
+        }
+    }
+
+    private void cancel() {
+        scheduled++;
+        queue.clear();
+    }
+
+    private void schedule(int delay) {
+        final int id = ++scheduled;
+        if (delay == 0 && hasIdleCallback()) {
+            requestIdleCallback(id, idleTimeout);
+        } else {
+            new Timer() {
+                @Override public void run() {
+                    onIdle(id);
+                }
+            }.schedule(delay == 0 ? idleTimeout : delay);
+        }
+    }
+
+    private void onIdle(int id) {
+        if (id != scheduled || !enabled || slottedController.getRoot() == null) {
+            return;
+        }
+        if (slottedController.isProcessingGoTo() || slottedController.isLoading()) {
+            schedule(retryDelay);
+            return;
+        }
+        if (queue.isEmpty()) {
+            fillQueue();
+        }
+        while (!queue.isEmpty() && inFlight.size() < maxConcurrent) {
+            load(queue.remove(0));
+        }
+    }
+
+    private void load(final Class<? extends CodeSplitMapper> mapperClass) {
+        CodeSplitMapper mapper = slottedController.getCodeSplitMapper(mapperClass);
+        if (mapper == null || mapper.isLoaded()) {
+            return;
+        }
+        inFlight.add(mapperClass);
+        prefetchCount++;
+        mapper.load(new Callback<Activity, Throwable>() {
+            @Override public void onSuccess(Activity result) {
+                loaded(mapperClass);
+            }
+
+            @Override public void onFailure(Throwable reason) {
+                SlottedController.log.info("Prefetch failed for:" + mapperClass.getName() + " " + reason);
+                failed.add(mapperClass);
+                loaded(mapperClass);
+            }
+        });
+    }
+
+    private void loaded(Class<? extends CodeSplitMapper> mapperClass) {
+        inFlight.remove(mapperClass);
+        if (enabled && !queue.isEmpty()) {
+            schedule(0);
+        }
+    }
+
+    /**
+     * Finds the fragments that aren't loaded for the reachable Places, and orders them by priority.
+     */
+    private void fillQueue() {
+        final HashMap<Class<? extends CodeSplitMapper>, Integer> candidates =
+                new HashMap<Class<? extends CodeSplitMapper>, Integer>();
+        ActiveSlot root = slottedController.getRoot();
+        if (root != null) {
+            addChildSlotDefaults(root, candidates);
+        }
+        for (SlottedPlace place: targets.keySet()) {
+            addCandidate(place, TargetPriority, candidates);
+        }
+
+        List<Class<? extends CodeSplitMapper>> ordered =
+                new ArrayList<Class<? extends CodeSplitMapper>>(candidates.keySet());
+        Collections.sort(ordered, new Comparator<Class<? extends CodeSplitMapper>>() {
+            @Override public int compare(Class<? extends CodeSplitMapper> class1, Class<? extends CodeSplitMapper> class2) {
+                return candidates.get(class2) - candidates.get(class1);
+            }
+        });
+        queue.addAll(ordered);
+    }
+
+    private void addChildSlotDefaults(ActiveSlot activeSlot, HashMap<Class<? extends CodeSplitMapper>, Integer> candidates) {
+        SlottedPlace place = activeSlot.getPlace();
+        if (place != null && place.getChildSlots() != null) {
+            for (Slot slot: place.getChildSlots()) {
+                if (slot.getDefaultPlace() != null) {
+                    addCandidate(slot.getDefaultPlace(), ChildSlotPriority, candidates);
+                }
+            }
+        }
+        for (ActiveSlot child: activeSlot.getChildren()) {
+            addChildSlotDefaults(child, candidates);
+        }
+    }
+
+    private void addCandidate(SlottedPlace place, int defaultPriority,
+            HashMap<Class<? extends CodeSplitMapper>, Integer> candidates)
+    {
+        Class<? extends CodeSplitMapper> mapperClass = slottedController.getHistoryMapper().getCodeSplitMapper(place);
+        if (mapperClass == null || inFlight.contains(mapperClass) || failed.contains(mapperClass)) {
+            return;
+        }
+        CodeSplitMapper mapper = slottedController.getCodeSplitMapper(mapperClass);
+        if (mapper == null || mapper.isLoaded()) {
+            return;
+        }
+        Integer priority = priorities.get(place.getClass());
+        int value = priority == null ? defaultPriority : priority;
+        Integer existing = candidates.get(mapperClass);
+        if (value >= 0 && (existing == null || value > existing)) {
+            candidates.put(mapperClass, value);
+        }
+    }
+
+    private static native boolean hasIdleCallback() /*-{
+        return !!$wnd.requestIdleCallback;
+    }-*/;
+
+    private native void requestIdleCallback(int id, int timeout) /*-{
+        var self = this;
+        $wnd.requestIdleCallback($entry(function() {
+            self.@com.googlecode.slotted.client.PrefetchScheduler::onIdle(I)(id);
+        }), {timeout: timeout});
+    }-*/;
+}
@@ -0,0 +1,65 @@
+package com.googlecode.slotted.client;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import com.google.web.bindery.event.shared.Event.Type;
+
+/**
+ * The {@link EventBusInstrumentation} that records statistics, which is used when the deferred binding
+ * property "slotted.eventbus.instrumentation" is "on".
+ */
+public class RecordingEventBusInstrumentation extends EventBusInstrumentation {
+    private HashMap<Type<?>, EventBusStats.TypeStats> typeStats = new HashMap<Type<?>, EventBusStats.TypeStats>();
+    private int fireQueueHighWater;
+    private int handlerQueueHighWater;
+
+    @Override public boolean isEnabled() {
+        return true;
+    }
+
+    @Override public void recordFire(Type<?> type, double dispatchMillis) {
+        EventBusStats.TypeStats stats = getTypeStats(typeStats, type);
+        stats.fireCount++;
+        stats.dispatchMillis += dispatchMillis;
+    }
+
+    @Override public void recordQueueDepth(int fireQueueDepth, int handlerQueueDepth) {
+        fireQueueHighWater = Math.max(fireQueueHighWater, fireQueueDepth);
+        handlerQueueHighWater = Math.max(handlerQueueHighWater, handlerQueueDepth);
+    }
+
+    @Override public EventBusStats snapshot(Map<Type<?>, Map<Object, Object[]>> handlers) {
+        EventBusStats snapshot = new EventBusStats();
+        snapshot.fireQueueHighWater = fireQueueHighWater;
+        snapshot.handlerQueueHighWater = handlerQueueHighWater;
+        for (Entry<Type<?>, EventBusStats.TypeStats> entry: typeStats.entrySet()) {
+            EventBusStats.TypeStats stats = getTypeStats(snapshot.typeStats, entry.getKey());
+            stats.fireCount = entry.getValue().fireCount;
+            stats.dispatchMillis = entry.getValue().dispatchMillis;
+        }
+        for (Entry<Type<?>, Map<Object, Object[]>> entry: handlers.entrySet()) {
+            EventBusStats.TypeStats stats = getTypeStats(snapshot.typeStats, entry.getKey());
+            for (Entry<Object, Object[]> sourceEntry: entry.getValue().entrySet()) {
+                stats.handlerCounts.put(sourceEntry.getKey(), sourceEntry.getValue().length);
+            }
+        }
+        return snapshot;
+    }
+
+    @Override public void reset() {
+        typeStats.clear();
+        fireQueueHighWater = 0;
+        handlerQueueHighWater = 0;
+    }
+
+    private static EventBusStats.TypeStats getTypeStats(Map<Type<?>, EventBusStats.TypeStats> map, Type<?> type) {
+        EventBusStats.TypeStats stats = map.get(type);
+        if (stats == null) {
+            stats = new EventBusStats.TypeStats();
+            map.put(type, stats);
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,19 @@
+package com.googlecode.slotted.client;
+
+/**
+ * Implemented by Activities that can be started again after they are stopped, instead of creating a new
+ * instance.  This saves the cost of injecting the Activity and building its view for Places that are displayed
+ * often.  Stopped Activities are kept in the {@link ActivityPool} of the SlottedController, and are used for the
+ * next Place of the same type.  The Place must return the Activity's class from
+ * {@link SlottedPlace#getActivityClass()}, or the Activity isn't pooled.
+ * <p>
+ * The Activity must not keep state from the previous Place that start() doesn't replace, and must not hold
+ * on to the EventBus or display it was given.
+ */
+public interface Recyclable {
+    /**
+     * Called after the Activity is stopped and before it is put in the pool, so it can clear the state from the
+     * Place it displayed.
+     */
+    void recycle();
+}
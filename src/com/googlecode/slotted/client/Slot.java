@@ -140,6 +140,26 @@ public class Slot {
     }
 
 
+    /**
+     * Removes the widget of a backgrounded Activity, which is called when the Activity is evicted from the cache.
+     *
+     * @return true if the widget was found and removed.
+     */
+    public boolean removeBackground(Activity activity) {
+        if (backgroundWidgets == null) {
+            return false;
+        }
+        Widget widget = backgroundWidgets.remove(activity);
+        if (widget == null) {
+            return false;
+        }
+        if (widget == currentView) {
+            currentView = null;
+        }
+        backgroundPanel.remove(widget);
+        return true;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -0,0 +1,164 @@
+package com.googlecode.slotted.client;
+
+import java.util.HashMap;
+
+/**
+ * Index of the Slot hierarchy, which is built by the {@link HistoryMapper} as each Place is registered.  The
+ * SlottedController uses the index to find the ancestor Slots of a navigation's Place, instead of walking the
+ * owner and parent Places one level at a time.  Child Slots are still asked from each Place instance, because
+ * they can depend on the Place's state.
+ *
+ * Slots owned by a {@link MultiParentPlace} don't have a fixed parent, so they are indexed without an
+ * ancestor chain and the SlottedController falls back to walking those Places.
+ */
+public class SlotTopology {
+    private static final Slot[] NoSlots = new Slot[0];
+
+    /**
+     * The information known about a single Slot.
+     */
+    public class Node {
+        private final Slot slot;
+        private final Class<? extends SlottedPlace> ownerClass;
+        private final SlottedPlace defaultPlace;
+        private final Slot parentSlot;
+        private final boolean dynamicParent;
+        private Slot[] ancestors;
+
+        private Node(Slot slot, Class<? extends SlottedPlace> ownerClass) {
+            this.slot = slot;
+            this.ownerClass = ownerClass;
+            this.defaultPlace = slot.getDefaultPlace();
+            this.dynamicParent = slot.getOwnerPlace() instanceof MultiParentPlace;
+            this.parentSlot = dynamicParent ? null : slot.getOwnerPlace().getParentSlot();
+        }
+
+        /**
+         * Gets the Slot this node represents.
+         */
+        public Slot getSlot() {
+            return slot;
+        }
+
+        /**
+         * Gets the class of the Place that owns and displays this Slot.
+         */
+        public Class<? extends SlottedPlace> getOwnerClass() {
+            return ownerClass;
+        }
+
+        /**
+         * Gets the Place displayed in this Slot when no other Place is specified.
+         */
+        public SlottedPlace getDefaultPlace() {
+            return defaultPlace;
+        }
+
+        /**
+         * Gets the Slot the owner Place is displayed in, or null if the owner is a MultiParentPlace.
+         */
+        public Slot getParentSlot() {
+            return parentSlot;
+        }
+
+        /**
+         * Gets the child Slots that are created when the default Place is displayed.
+         *
+         * @return The child Slots, which may be null or empty if there are none.
+         */
+        public Slot[] getChildSlots() {
+            return defaultPlace.getChildSlots();
+        }
+
+        /**
+         * Gets the chain of parent Slots starting with the owner's Slot and ending with the root Slot.
+         *
+         * @return The ancestor Slots, or null if a MultiParentPlace or unregistered Place is in the chain.
+         */
+        public Slot[] getAncestors() {
+            if (ancestors == null && !dynamicParent) {
+                ancestors = computeAncestors(parentSlot);
+            }
+            return ancestors;
+        }
+    }
+
+    // Keyed by owner class instead of Slot, because a Slot's hashCode follows its Places, which can change.
+    private HashMap<Class<? extends SlottedPlace>, Node[]> nodeMap =
+            new HashMap<Class<? extends SlottedPlace>, Node[]>();
+
+    /**
+     * Called by the HistoryMapper when a Place is registered to index its child Slots.
+     *
+     * @param placeClass The class being registered.
+     * @param childSlots The child Slots of the Place, which have already been validated.
+     */
+    protected void addPlace(Class<? extends SlottedPlace> placeClass, Slot[] childSlots) {
+        if (childSlots == null) {
+            childSlots = NoSlots;
+        }
+        Node[] nodes = new Node[childSlots.length];
+        for (int i = 0; i < childSlots.length; i++) {
+            nodes[i] = new Node(childSlots[i], placeClass);
+        }
+        nodeMap.put(placeClass, nodes);
+    }
+
+    /**
+     * Gets the indexed information for the Slot.
+     *
+     * @return The Node or null if the Slot isn't owned by a registered Place.
+     */
+    public Node getNode(Slot slot) {
+        if (slot == null || slot.getOwnerPlace() == null) {
+            return null;
+        }
+        Node[] nodes = nodeMap.get(slot.getOwnerPlace().getClass());
+        if (nodes == null) {
+            return null;
+        }
+        for (Node node: nodes) {
+            if (node.slot == slot) {
+                return node;
+            }
+        }
+        for (Node node: nodes) {
+            if (node.slot.equals(slot)) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the chain of parent Slots above the passed Slot, which is the same as walking
+     * {@code slot.getOwnerPlace().getParentSlot()} until the root Slot is reached.
+     *
+     * @param slot The Slot to find the ancestors of.
+     * @return The ancestor Slots, empty for the root Slot, or null if the chain can't be determined from the index.
+     */
+    public Slot[] getAncestors(Slot slot) {
+        if (slot == null || slot.getOwnerPlace() == null) {
+            return NoSlots;
+        }
+        Node node = getNode(slot);
+        if (node == null) {
+            return null;
+        }
+        return node.getAncestors();
+    }
+
+    private Slot[] computeAncestors(Slot parentSlot) {
+        if (parentSlot == null) {
+            return NoSlots;
+        }
+        Slot[] parentAncestors = getAncestors(parentSlot);
+        if (parentAncestors == null) {
+            return null;
+        }
+        Slot[] ancestors = new Slot[parentAncestors.length + 1];
+        ancestors[0] = parentSlot;
+        System.arraycopy(parentAncestors, 0, ancestors, 1, parentAncestors.length);
+        return ancestors;
+    }
+}
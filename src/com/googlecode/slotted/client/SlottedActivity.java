@@ -97,6 +97,15 @@ abstract public class SlottedActivity extends AbstractActivity{
         this.activeSlot = activeSlot;
     }
 
+    /**
+     * Called by the {@link ActivityPool} before a {@link Recyclable} Activity is pooled, which drops the
+     * references to the Slot it was displayed in and the loading state.
+     */
+    void clearForRecycle() {
+        init(null, null, null, null, null);
+        loadingLabels.clear();
+    }
+
     /**
      * On Cancel is called when the ActiveSlot display widget doesn't receive setWidget() call.
      * SlottedActivity overrides the default behaviour by calling onStop().  This was done because
@@ -115,6 +124,28 @@ abstract public class SlottedActivity extends AbstractActivity{
     public void onRefresh() {
     }
 
+    /**
+     * Same as {@link #onRefresh()}, but describes what changed since the previous navigation.  The default
+     * calls onRefresh().
+     *
+     * @param changes The Place and global parameter changes for this Activity.
+     */
+    public void onRefresh(ParameterChanges changes) {
+        onRefresh();
+    }
+
+    /**
+     * Lists the global parameters this Activity depends on.  If this returns null, which is the default, the
+     * Activity is refreshed on every navigation that keeps it.  Otherwise it is only refreshed when its Place's
+     * token changes, or one of the listed global parameters is added, removed or changed.  Return an empty array
+     * to only depend on the Place.
+     *
+     * @return The names of the global parameters, or null to always be refreshed.
+     */
+    public String[] getRefreshParameters() {
+        return null;
+    }
+
     /**
      * Called when loading process is complete.  The widget is not added to the DOM until the loading is
      * complete, so this method allows code to be run after the activity's widgets are added to the DOM.
@@ -147,10 +178,18 @@ abstract public class SlottedActivity extends AbstractActivity{
      * outside the start(), then a LoadingEvent is sent, but Slotted lifecycle is unaffected.
      */
     public void setLoadingStarted(Object... labels) {
+        if (activeSlot == null) {
+            // A late callback of an Activity that was stopped and pooled.
+            return;
+        }
         if (labels != null && labels.length > 0) {
-            loadingLabels.addAll(Arrays.asList(labels));
-        } else {
-            loadingLabels.add(SlottedActivity.class);
+            for (Object label: labels) {
+                if (loadingLabels.add(label)) {
+                    activeSlot.profileLoading(this, label, true);
+                }
+            }
+        } else if (loadingLabels.add(SlottedActivity.class)) {
+            activeSlot.profileLoading(this, SlottedActivity.class, true);
         }
         activeSlot.setLoading(true, this);
     }
@@ -161,13 +200,19 @@ abstract public class SlottedActivity extends AbstractActivity{
      * LoadingEvent with be sent stating loading is complete.
      */
     public void setLoadingComplete(Object... labels) {
+        if (activeSlot == null) {
+            // A late callback of an Activity that was stopped and pooled.
+            return;
+        }
         if (labels != null && labels.length > 0) {
             for (Object label: labels) {
-                loadingLabels.remove(label);
+                if (loadingLabels.remove(label)) {
+                    activeSlot.profileLoading(this, label, false);
+                }
             }
 
-        } else {
-            loadingLabels.remove(SlottedActivity.class);
+        } else if (loadingLabels.remove(SlottedActivity.class)) {
+            activeSlot.profileLoading(this, SlottedActivity.class, false);
         }
 
         if (loadingLabels.isEmpty()) {
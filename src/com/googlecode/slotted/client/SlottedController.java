@@ -19,8 +19,11 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -66,6 +69,22 @@ public class SlottedController {
         }
     }
 
+    /**
+     * The goTo() that is waiting for the current navigation to finish.  Only the last one is kept, so a burst
+     * of goTo() calls is coalesced into a single navigation.
+     */
+    private static class PendingGoTo {
+        private final SlottedPlace place;
+        private final SlottedPlace[] nonDefaultPlaces;
+        private final boolean reloadAll;
+
+        private PendingGoTo(SlottedPlace place, SlottedPlace[] nonDefaultPlaces, boolean reloadAll) {
+            this.place = place;
+            this.nonDefaultPlaces = nonDefaultPlaces;
+            this.reloadAll = reloadAll;
+        }
+    }
+
     /**
      * Default implementation of {@link Delegate}, based on {@link Window}.
      */
@@ -113,20 +132,32 @@ public class SlottedController {
     private boolean processingSync;
     private boolean tokenDone;
     private SlottedPlace mainGoToPlace;
-    protected List<Callback<Activity, Throwable>> asyncActivities = new LinkedList<Callback<Activity, Throwable>>();
-    private SlottedPlace nextGoToPlace;
-    @SuppressWarnings("FieldCanBeLocal")
-    private SlottedPlace[] nextGoToNonDefaultPlaces;
-    @SuppressWarnings("FieldCanBeLocal")
-    private boolean nextGoToReloadAll;
+    protected HashSet<ActivityRequest> asyncActivities = new HashSet<ActivityRequest>();
+    private int navigationGeneration;
+    private PendingGoTo nextGoTo;
     private List<SlottedPlace> currentHierarchyList;
     private List<SlottedPlace> possibleParentPlaces;
     private final Delegate delegate;
     private boolean reloadAll = false;
     private boolean useExistingChildren = false;
     private ActiveSlot root;
+    // By identity, so finding a Slot doesn't hash its Places.
+    private IdentityHashMap<Slot, ActiveSlot> activeSlotMap = new IdentityHashMap<Slot, ActiveSlot>();
     private PlaceParameters currentParameters;
+    private PlaceParameters navigationParameters;
+    private Set<String> changedParameterNames = Collections.emptySet();
+    private NavigationPlan navigationPlan;
     private NavigationOverride navigationOverride;
+    private NavigationTiming navigationTiming;
+    private boolean performanceMarks;
+    private boolean doubleBuffered;
+    private List<SlottedPlace> shownHierarchyList;
+    private PlaceParameters shownParameters;
+    private ActivityProfiler activityProfiler;
+    private PrefetchScheduler prefetchScheduler = new PrefetchScheduler(this);
+    private ActivityPool activityPool = new ActivityPool();
+    private SlottedPlace speculativePlace;
+    private SpeculativeRequest speculativeRequest;
     private String goToList;
     private String referringToken;
     private String currentToken;
@@ -310,6 +341,10 @@ public class SlottedController {
         //noinspection deprecation
         rootSlot.setDisplay(display);
         root = new ActiveSlot(null, rootSlot, eventBus, this);
+        activeSlotMap.clear();
+        addActiveSlot(root);
+        // Places name the shared RootSlot as their parent, which isn't the instance the root ActiveSlot displays.
+        activeSlotMap.put(RootSlot, root);
 
         if (isMainController) {
             History.fireCurrentHistoryState();
@@ -345,6 +380,26 @@ public class SlottedController {
         this.useExistingChildren = useExistingChildren;
     }
 
+    /**
+     * Limits how many Activities of the Place class are kept in the background by {@link CacheActivities}.
+     *
+     * @param placeClass The Place class of the cached Activities.
+     * @param limit The limit, or null to remove the limit.
+     */
+    public void setCacheLimit(Class<? extends SlottedPlace> placeClass, CacheLimit limit) {
+        activityCache.setLimit(placeClass, limit);
+    }
+
+    /**
+     * Limits how many Activities displayed in the Slot are kept in the background by {@link CacheActivities}.
+     *
+     * @param slot The Slot the cached Activities are displayed in.
+     * @param limit The limit, or null to remove the limit.
+     */
+    public void setCacheLimit(Slot slot, CacheLimit limit) {
+        activityCache.setLimit(slot, limit);
+    }
+
     /**
      * Allows for a NavigationOverride object to evaluate the Places before Slotted creates the Activities.
      *
@@ -362,6 +417,200 @@ public class SlottedController {
         return navigationOverride;
     }
 
+    /**
+     * Turns on writing each navigation phase as a window.performance mark and measure, so they can be seen in
+     * the browser's profiler.  The {@link NavigationTimingEvent} is fired either way.
+     *
+     * @param performanceMarks True to write the marks and measures.
+     */
+    public void setPerformanceMarks(boolean performanceMarks) {
+        this.performanceMarks = performanceMarks;
+    }
+
+    /**
+     * Turns on double buffered navigation.  The new Activities are started while the replaced Activities keep
+     * running and their views stay displayed.  Once no Activity is loading, all the new views are shown in one
+     * step, and then the replaced Activities are stopped.  If the navigation fails, the new Activities are
+     * stopped and the displayed page is left as it was.
+     * <p>
+     * The replaced Activities are stopped after the new ones are started, instead of before, so Activities
+     * that share resources need to handle both running at once.
+     *
+     * @param doubleBuffered True to keep the displayed page until the new one is ready.
+     */
+    public void setDoubleBuffered(boolean doubleBuffered) {
+        this.doubleBuffered = doubleBuffered;
+        if (doubleBuffered && !processingGoTo && root != null && root.getFirstBlockingSlot() == null) {
+            shownHierarchyList = currentHierarchyList;
+            shownParameters = currentParameters;
+        }
+    }
+
+    /**
+     * Returns true if the navigation is double buffered.
+     *
+     * @see #setDoubleBuffered(boolean)
+     */
+    public boolean isDoubleBuffered() {
+        return doubleBuffered;
+    }
+
+    /**
+     * Turns on recording the lifecycle timings of every Activity.
+     *
+     * @param activityProfiler The profiler that records the timings, or null to turn it off.
+     */
+    public void setActivityProfiler(ActivityProfiler activityProfiler) {
+        this.activityProfiler = activityProfiler;
+    }
+
+    /**
+     * Gets the profiler set with {@link #setActivityProfiler(ActivityProfiler)}, or null if there isn't one.
+     */
+    public ActivityProfiler getActivityProfiler() {
+        return activityProfiler;
+    }
+
+    /**
+     * Gets the scheduler that loads the code split fragments of the Places that can be navigated to next, while
+     * the browser is idle.  It is off until {@link PrefetchScheduler#setEnabled(boolean)} is called.
+     */
+    public PrefetchScheduler getPrefetchScheduler() {
+        return prefetchScheduler;
+    }
+
+    /**
+     * Gets the pool of stopped {@link Recyclable} Activities, which are started again instead of creating new
+     * ones.  The pool sizes and hit rates are reported by {@link ActivityPool#getAllStats()}.
+     */
+    public ActivityPool getActivityPool() {
+        return activityPool;
+    }
+
+    /**
+     * Loads the code split fragment of a Place that is likely to be navigated to next, such as the link under
+     * the mouse.  If resolveActivity is true, the Activity is also created, and is used instead of creating a new
+     * one if the next navigation goes to an equal Place.  Otherwise the Activity is dropped when the next
+     * navigation completes.  Only the Activity of the last Place passed is kept.
+     *
+     * @param place The Place that might be navigated to.
+     * @param resolveActivity True to also create the Activity.
+     */
+    public void prefetch(SlottedPlace place, boolean resolveActivity) {
+        final Class<? extends CodeSplitMapper> mapperClass = historyMapper.getCodeSplitMapper(place);
+        CodeSplitMapper mapper = mapperClass == null ? null : getCodeSplitMapper(mapperClass);
+        if (!resolveActivity) {
+            if (mapper != null && !mapper.isLoaded()) {
+                mapper.load(new Callback<Activity, Throwable>() {
+                    @Override public void onSuccess(Activity result) {
+                    }
+
+                    @Override public void onFailure(Throwable reason) {
+                        log.info("Prefetch failed for:" + mapperClass.getName() + " " + reason);
+                    }
+                });
+            }
+            return;
+        }
+        if (place.equals(speculativePlace)) {
+            return;
+        }
+
+        discardSpeculativeActivity();
+        speculativePlace = place;
+        speculativeRequest = new SpeculativeRequest(navigationGeneration);
+        if (mapper != null) {
+            mapper.get(place, speculativeRequest);
+        } else {
+            place.getActivity(speculativeRequest);
+        }
+    }
+
+    /**
+     * Passes the Activity created by {@link #prefetch(SlottedPlace, boolean)} to the callback if it was for an
+     * equal Place.  If the Activity is still being created, the callback is called when it is done, so a click
+     * during the prefetch doesn't request the Activity a second time.  The Activity is only passed once.
+     *
+     * @param place The Place being navigated to.
+     * @param callback The request of the navigation.
+     * @return True if the callback was or will be called, or false if there isn't a prefetch for the Place.
+     */
+    boolean joinSpeculativeRequest(SlottedPlace place, Callback<Activity, Throwable> callback) {
+        if (speculativeRequest == null || !place.equals(speculativePlace)) {
+            return false;
+        }
+        SpeculativeRequest request = speculativeRequest;
+        speculativePlace = null;
+        speculativeRequest = null;
+        request.join(callback);
+        return true;
+    }
+
+    private void discardSpeculativeActivity() {
+        if (speculativeRequest != null) {
+            speculativeRequest.cancel();
+        }
+        speculativePlace = null;
+        speculativeRequest = null;
+    }
+
+    /**
+     * The request made by {@link #prefetch(SlottedPlace, boolean)}, which keeps the Activity until a navigation
+     * joins it.
+     */
+    private class SpeculativeRequest extends ActivityRequest {
+        private boolean done;
+        private Activity activity;
+        private Throwable failure;
+        private Callback<Activity, Throwable> joined;
+
+        private SpeculativeRequest(int generation) {
+            super(generation);
+        }
+
+        private void join(Callback<Activity, Throwable> callback) {
+            if (done) {
+                finish(callback);
+            } else {
+                joined = callback;
+            }
+        }
+
+        private void finish(Callback<Activity, Throwable> callback) {
+            if (failure != null) {
+                callback.onFailure(failure);
+            } else {
+                callback.onSuccess(activity);
+            }
+        }
+
+        @Override public void onSuccess(Activity result) {
+            done = true;
+            activity = result;
+            if (joined != null) {
+                finish(joined);
+            }
+        }
+
+        @Override public void onFailure(Throwable reason) {
+            done = true;
+            failure = reason;
+            if (joined != null) {
+                finish(joined);
+            } else if (!isCancelled()) {
+                log.info("Prefetch failed for:" + speculativePlace + " " + reason);
+                discardSpeculativeActivity();
+            }
+        }
+    }
+
+    /**
+     * Gets the timings of the navigation being processed, or null if there isn't one.
+     */
+    NavigationTiming getNavigationTiming() {
+        return navigationTiming;
+    }
+
     /**
      * Set the features to pass to {@link Window#open(String, String, String)} when the SHIFT key is
      * pressed.
@@ -493,44 +742,63 @@ public class SlottedController {
 
             } else {
                 if (processingGoTo) {
-                    nextGoToPlace = newPlace;
-                    nextGoToNonDefaultPlaces = nonDefaultPlaces;
-                    nextGoToReloadAll = reloadAll;
+                    nextGoTo = new PendingGoTo(newPlace, nonDefaultPlaces, reloadAll);
+                    if (!asyncActivities.isEmpty()) {
+                        // The Activities still loading will be replaced, so don't wait for them.
+                        cancelAsyncActivities();
+                        if (!processingSync) {
+                            asyncGoToCleanup(true);
+                        }
+                    }
 
                 } else {
                     processingGoTo = true;
                     processingSync = true;
+                    navigationTiming = new NavigationTiming(performanceMarks);
+                    prefetchScheduler.navigationStarted();
+                    if (activityProfiler != null) {
+                        activityProfiler.startNavigation();
+                    }
+                    navigationGeneration++;
                     mainGoToPlace = newPlace;
                     tokenDone = false;
-                    nextGoToPlace = null;
-                    nextGoToNonDefaultPlaces = null;
-                    nextGoToReloadAll = false;
+                    nextGoTo = null;
 
                     List<SlottedPlace> nonDefaultPlacesList = Arrays.asList(nonDefaultPlaces);
                     indexMultiParentPlaces(newPlace, nonDefaultPlacesList);
                     List<SlottedPlace> hierarchyList = createHierarchyList(newPlace, nonDefaultPlacesList);
-                    currentParameters = historyMapper.extractParameters(hierarchyList);
+                    PlaceParameters parameters = historyMapper.extractParameters(hierarchyList);
+                    navigationTiming.endPhase(NavigationTiming.Phase.Hierarchy);
 
                     if (navigationOverride != null) {
                         List<SlottedPlace> override = navigationOverride.checkOverrides(this, hierarchyList);
                         newPlace = override.get(0);
                         hierarchyList = createHierarchyList(newPlace, Arrays.asList(nonDefaultPlaces));
-                        currentParameters = historyMapper.extractParameters(hierarchyList);
-
+                        parameters = historyMapper.extractParameters(hierarchyList);
+                        navigationTiming.endPhase(NavigationTiming.Phase.Override);
                     }
 
+                    NavigationPlan plan = new NavigationPlan(hierarchyList, reloadAll, historyMapper);
                     ArrayList<String> warnings = new ArrayList<String>();
                     try {
-                        root.maybeGoTo(hierarchyList, reloadAll, warnings);
+                        root.maybeGoTo(plan, warnings);
                     } catch (Exception e) {
                         maybeGoToException = e;
                     }
+                    navigationTiming.endPhase(NavigationTiming.Phase.MayStop);
 
                     boolean constructedCleanup = false;
                     if (warnings.isEmpty() || delegate.confirm(warnings.toArray(new String[warnings.size()]))) {
                         currentHierarchyList = hierarchyList;
-                        root.constructStopStart(currentParameters, hierarchyList, reloadAll);
+                        navigationPlan = plan;
+                        // The parameters become current when the navigation is cleaned up, but the refreshed
+                        // Activities compare them to the current ones now.
+                        navigationParameters = parameters;
+                        changedParameterNames = Collections.unmodifiableSet(
+                                parameters.getChangedNames(currentParameters));
+                        root.constructStopStart(parameters, plan);
                         constructedCleanup = true;
+                        navigationTiming.endPhase(NavigationTiming.Phase.ConstructStopStart);
                     }
 
                     processingSync = false;
@@ -552,7 +820,20 @@ public class SlottedController {
      */
     protected void handleGoToException(Throwable e) {
         processingGoTo = false;
-        asyncActivities.clear();
+        navigationTiming = null;
+        // Double buffering may have been turned off during the navigation, so anything buffered is rolled back.
+        if (root != null && root.hasBuffered()) {
+            try {
+                if (shownHierarchyList != null) {
+                    currentHierarchyList = shownHierarchyList;
+                    currentParameters = shownParameters;
+                }
+                root.rollbackBuffered();
+            } catch (Exception rollbackException) {
+                log.log(Level.WARNING, "Problem restoring the displayed Activities", rollbackException);
+            }
+        }
+        cancelAsyncActivities();
         log.log(Level.SEVERE, "Problem while goTo:" + goToList, e);
         SlottedErrorPlace errorPlace = historyMapper.getErrorPlace();
         if (errorPlace != null && !(mainGoToPlace instanceof SlottedErrorPlace)) {
@@ -573,27 +854,123 @@ public class SlottedController {
      */
     protected void asyncGoToCleanup(boolean constructedCleanup) {
         if (!processingSync && asyncActivities.isEmpty()) {
+            if (nextGoTo != null) {
+                // A newer goTo() replaces this navigation, so its partly built hierarchy isn't cleaned up or shown.
+                navigationTiming = null;
+                processingGoTo = false;
+                PendingGoTo pending = nextGoTo;
+                goTo(pending.place, pending.nonDefaultPlaces, pending.reloadAll);
+                return;
+            }
+
+            NavigationTiming timing = constructedCleanup ? navigationTiming : null;
+            navigationTiming = null;
+            if (timing != null) {
+                timing.endPhase(NavigationTiming.Phase.AsyncWait);
+            }
             if (constructedCleanup) {
                 LinkedList<SlottedPlace> places = new LinkedList<SlottedPlace>();
                 fillPlaces(root, places);
 
+                currentParameters = navigationParameters;
                 referringToken = currentToken;
                 currentToken = historyMapper.createToken(this);
                 tokenDone = true;
                 activityCache.clearUnused();
+                evictBackgroundActivities();
+                discardSpeculativeActivity();
                 eventBus.fireEventFromSource(new NewPlacesEvent(places, this), SlottedController.this);
             }
 
             processingGoTo = false;
+            if (timing != null) {
+                timing.endPhase(NavigationTiming.Phase.Cleanup);
+            }
 
-            if (!attemptShowViews()) {
+            if (constructedCleanup && activityProfiler != null) {
+                activityProfiler.endNavigation(root, currentToken);
+            }
+
+            boolean viewsShown = attemptShowViews();
+            if (timing != null) {
+                timing.endPhase(NavigationTiming.Phase.ShowViews);
+                timing.finish(currentToken, viewsShown);
+                eventBus.fireEventFromSource(new NavigationTimingEvent(timing), SlottedController.this);
+            }
+            if (!viewsShown) {
                 eventBus.fireEventFromSource(new LoadingEvent(true), SlottedController.this);
             }
 
-            if (nextGoToPlace != null) {
-                goTo(nextGoToPlace, nextGoToNonDefaultPlaces, nextGoToReloadAll);
+            if (nextGoTo != null) {
+                // Queued by a handler of the NewPlacesEvent.
+                PendingGoTo pending = nextGoTo;
+                goTo(pending.place, pending.nonDefaultPlaces, pending.reloadAll);
+            } else {
+                prefetchScheduler.navigationSettled();
+            }
+        }
+    }
+
+    /**
+     * Stops the backgrounded Activities that exceed a {@link CacheLimit}, and removes their widgets.
+     */
+    private void evictBackgroundActivities() {
+        for (ActivityCache.Entry entry: activityCache.evictOverLimit()) {
+            try {
+                entry.activity.onStop();
+            } catch (Exception e) {
+                log.log(Level.SEVERE, "Problem stopping evicted Activity:" + entry.activity, e);
             }
+            Slot slot = entry.place.getParentSlot();
+            if (slot != null) {
+                slot.removeBackground(entry.activity);
+            }
+            eventBus.fireEventFromSource(new ActivityEvictedEvent(entry.place, entry.activity), this);
+        }
+    }
+
+    /**
+     * Returns true while a goTo() is being processed, which includes waiting for async Activities.
+     */
+    boolean isProcessingGoTo() {
+        return processingGoTo;
+    }
+
+    /**
+     * Gets the id of the current navigation, which is incremented for every goTo() that is processed.
+     */
+    protected int getNavigationGeneration() {
+        return navigationGeneration;
+    }
+
+    /**
+     * Called when an {@link ActivityRequest} returns.  Results from cancelled requests and from earlier
+     * navigations are dropped.
+     *
+     * @param request The request that returned.
+     * @return True if the Activity should be started.
+     */
+    protected boolean acceptActivityRequest(ActivityRequest request) {
+        return !request.isCancelled() && request.getGeneration() == navigationGeneration &&
+                asyncActivities.remove(request);
+    }
+
+    /**
+     * Marks whether an Activity is being started, so a goTo() called while starting is only queued.
+     *
+     * @return The previous value, which should be restored when starting is finished.
+     */
+    protected boolean setProcessingSync(boolean processingSync) {
+        boolean previous = this.processingSync;
+        this.processingSync = processingSync;
+        return previous;
+    }
+
+    private void cancelAsyncActivities() {
+        for (ActivityRequest request: asyncActivities) {
+            request.cancel();
         }
+        asyncActivities.clear();
     }
 
     public SlottedDialogController createSlottedDialog(PopupPanel popupPanel, AcceptsOneWidget display) {
@@ -627,29 +1004,46 @@ public class SlottedController {
      */
     private List<SlottedPlace> createHierarchyList(SlottedPlace newPlace, List<SlottedPlace> nonDefaults) {
         LinkedList<SlottedPlace> hierarchyList = new LinkedList<SlottedPlace>();
+        NonDefaultIndex nonDefaultIndex = new NonDefaultIndex(nonDefaults);
 
         hierarchyList.add(newPlace);
 
-        addChildPlaces(newPlace, nonDefaults, useExistingChildren, null, hierarchyList);
+        addChildPlaces(newPlace, nonDefaultIndex, useExistingChildren, null, hierarchyList);
 
         // Adding parent Places
         Slot childSlot = newPlace.getParentSlot();
-        Slot parentSlot = getActualParentSlot(childSlot);
-        while (parentSlot != null) {
-            SlottedPlace parentPlace = getPlaceForSlot(parentSlot, nonDefaults, childSlot.getOwnerPlace(), true);
-            if (parentPlace != null) {
-                hierarchyList.add(parentPlace);
-                addChildPlaces(parentPlace, nonDefaults, true, childSlot, hierarchyList);
+        Slot[] ancestors = historyMapper.getSlotTopology().getAncestors(childSlot);
+        if (ancestors != null) {
+            for (Slot parentSlot: ancestors) {
+                if (!addParentPlace(parentSlot, childSlot, nonDefaultIndex, hierarchyList)) {
+                    break;
+                }
+                childSlot = parentSlot;
+            }
+        } else {
+            // MultiParentPlaces in the chain need to be walked, because their parent can change.
+            Slot parentSlot = getActualParentSlot(childSlot);
+            while (parentSlot != null && addParentPlace(parentSlot, childSlot, nonDefaultIndex, hierarchyList)) {
                 childSlot = parentSlot;
                 parentSlot = getActualParentSlot(parentSlot);
-            } else {
-                parentSlot = null;
             }
         }
 
         return hierarchyList;
     }
 
+    private boolean addParentPlace(Slot parentSlot, Slot childSlot, NonDefaultIndex nonDefaults,
+            List<SlottedPlace> hierarchyList)
+    {
+        SlottedPlace parentPlace = getPlaceForSlot(parentSlot, nonDefaults, childSlot.getOwnerPlace(), true);
+        if (parentPlace != null) {
+            hierarchyList.add(parentPlace);
+            addChildPlaces(parentPlace, nonDefaults, true, childSlot, hierarchyList);
+            return true;
+        }
+        return false;
+    }
+
     private Slot getActualParentSlot(Slot slot) {
         SlottedPlace actualParentPlace = slot.getOwnerPlace();
         if (actualParentPlace != null) {
@@ -661,7 +1055,7 @@ public class SlottedController {
         return null;
     }
 
-    private void addChildPlaces(SlottedPlace parentPlace, List<SlottedPlace> nonDefaults,
+    private void addChildPlaces(SlottedPlace parentPlace, NonDefaultIndex nonDefaults,
             boolean useExisting, Slot excludeSlot, List<SlottedPlace> hierarchyList)
     {
         // This makes sure all children Places are reset if the parent not equal to existing
@@ -692,22 +1086,18 @@ public class SlottedController {
      * finally the Slot's defaultChildPlace.
      *
      * @param slot The slot to get the Place for.
-     * @param nonDefaults The list of Places that should be used before existing Places or default Place.
+     * @param nonDefaults The Places that should be used before existing Places or default Place.
      * @param defaultPlace The defaultPlace that should be used, or null if the slots defaultPlace should be used.
      *                     This is needed when child is known but the parent is unknown, because child's defaultParentPlace,
      *                     might be different then Slot's defaultPlace.
      * @param useExisting if false, the existing place will be skipped and the default will be used.
      */
-    private SlottedPlace getPlaceForSlot(Slot slot, List<SlottedPlace> nonDefaults, SlottedPlace defaultPlace,
+    private SlottedPlace getPlaceForSlot(Slot slot, NonDefaultIndex nonDefaults, SlottedPlace defaultPlace,
             boolean useExisting)
     {
-        for (SlottedPlace place: nonDefaults) {
-            if (defaultPlace != null && place.getClass().equals(defaultPlace.getClass())) {
-                //This check is made encase the nonDefaults contains a Place that cause the newPlace not to be displayed.
-                return place;
-            } else if (slot.equals(place.getParentSlot())) {
-                return place;
-            }
+        SlottedPlace nonDefault = nonDefaults.get(slot, defaultPlace);
+        if (nonDefault != null) {
+            return nonDefault;
         }
 
         if (useExisting) {
@@ -727,6 +1117,49 @@ public class SlottedController {
         return slot.getDefaultPlace();
     }
 
+    /**
+     * Indexes the nonDefault Places of a goTo() by class and parent Slot, so each Slot in the hierarchy is a lookup
+     * instead of a scan.  When a Place matches both ways, the one earliest in the list wins.
+     */
+    private static class NonDefaultIndex {
+        private HashMap<Class<? extends SlottedPlace>, Integer> byClass;
+        private HashMap<Slot, Integer> bySlot;
+        private List<SlottedPlace> places;
+
+        NonDefaultIndex(List<SlottedPlace> places) {
+            this.places = places;
+            if (!places.isEmpty()) {
+                byClass = new HashMap<Class<? extends SlottedPlace>, Integer>();
+                bySlot = new HashMap<Slot, Integer>();
+                int i = 0;
+                for (SlottedPlace place: places) {
+                    if (!byClass.containsKey(place.getClass())) {
+                        byClass.put(place.getClass(), i);
+                    }
+                    Slot parentSlot = place.getParentSlot();
+                    if (parentSlot != null && !bySlot.containsKey(parentSlot)) {
+                        bySlot.put(parentSlot, i);
+                    }
+                    i++;
+                }
+            }
+        }
+
+        SlottedPlace get(Slot slot, SlottedPlace defaultPlace) {
+            if (byClass == null) {
+                return null;
+            }
+            Integer index = bySlot.get(slot);
+            if (defaultPlace != null) {
+                Integer classIndex = byClass.get(defaultPlace.getClass());
+                if (classIndex != null && (index == null || classIndex < index)) {
+                    index = classIndex;
+                }
+            }
+            return index != null ? places.get(index) : null;
+        }
+    }
+
 
     private void fillPlaces(ActiveSlot slot, LinkedList<SlottedPlace> places) {
         places.add(slot.getPlace());
@@ -736,7 +1169,7 @@ public class SlottedController {
     }
 
     protected boolean shouldStartActivity() {
-        return nextGoToPlace == null;
+        return nextGoTo == null;
     }
 
     /**
@@ -766,6 +1199,11 @@ public class SlottedController {
             ActiveSlot blockingSlot = root.getFirstBlockingSlot();
             if (blockingSlot == null) {
                 root.showViews();
+                shownHierarchyList = currentHierarchyList;
+                shownParameters = currentParameters;
+                // Double buffering may have been turned off during the navigation, and this does nothing if
+                // no Activities were buffered.
+                root.stopBuffered();
                 eventBus.fireEventFromSource(new LoadingEvent(false), SlottedController.this);
                 return true;
             } else if (blockingSlot.isLoading()) {
@@ -776,13 +1214,22 @@ public class SlottedController {
     }
 
     /**
-     * Clones the passed place by converting it to a token, and then parsing the token.  This means any data not tokenized
-     * will be lost in the cloning process.
+     * Clones the passed place by copying the tokenized fields if it uses an AutoTokenizer, or else by converting
+     * it to a token, and then parsing the token.  This means any data not tokenized will be lost in the cloning
+     * process.
      *
      * @param place The SlottedPlace to clone.
      * @return A new instance of the Place that can be changed without effecting existing hierarchy.
      */
+    @SuppressWarnings("unchecked")
     public <T extends SlottedPlace> T clonePlace(T place) {
+        AutoTokenizer tokenizer = AutoTokenizer.tokenizers.get(place.getClass());
+        if (tokenizer != null) {
+            T copy = (T) tokenizer.copy(place);
+            copy.copyParameters(place);
+            return copy;
+        }
+
         String token = createToken(place);
         SlottedPlace[] places = historyMapper.parseToken(token);
         //noinspection unchecked
@@ -813,11 +1260,9 @@ public class SlottedController {
      * default places defined for the slots.
      */
     public String createUrl(SlottedPlace newPlace, SlottedPlace... nonDefaultPlaces) {
-        String url = Document.get().getURL();
-        String[] splitUrl = url.split("#");
-        String token = createToken(newPlace, nonDefaultPlaces);
-
-        return splitUrl[0] + "#" + token;
+        TokenWriter writer = new TokenWriter(getBaseUrl());
+        writeToken(writer, newPlace, nonDefaultPlaces);
+        return writer.toString();
     }
 
     /**
@@ -832,11 +1277,21 @@ public class SlottedController {
      * default places defined for the slots.
      */
     public String createSimpleUrl(SlottedPlace newPlace, SlottedPlace... nonDefaultPlaces) {
-        String url = Document.get().getURL();
-        String[] splitUrl = url.split("#");
-        String token = createSimpleToken(newPlace, nonDefaultPlaces);
+        TokenWriter writer = new TokenWriter(getBaseUrl());
+        historyMapper.writeToken(writer, newPlace, Arrays.asList(nonDefaultPlaces));
+        return writer.toString();
+    }
 
-        return splitUrl[0] + "#" + token;
+    /**
+     * Gets the current URL up to and including the '#'.
+     */
+    private String getBaseUrl() {
+        String url = Document.get().getURL();
+        int hashIndex = url.indexOf('#');
+        if (hashIndex < 0) {
+            return url + "#";
+        }
+        return url.substring(0, hashIndex + 1);
     }
 
     /**
@@ -850,10 +1305,7 @@ public class SlottedController {
      * default places defined for the slots.
      */
     public String createSimpleToken(SlottedPlace newPlace, SlottedPlace... nonDefaultPlaces) {
-        PlaceParameters placeParameters = new PlaceParameters();
-        newPlace.extractParameters(placeParameters);
-        String token = historyMapper.createToken(newPlace, nonDefaultPlaces);
-        return token;
+        return historyMapper.createToken(newPlace, nonDefaultPlaces);
     }
 
     /**
@@ -864,11 +1316,40 @@ public class SlottedController {
      * default places defined for the slots.
      */
     public String createToken(SlottedPlace newPlace, SlottedPlace... nonDefaultPlaces) {
+        TokenWriter writer = new TokenWriter();
+        writeToken(writer, newPlace, nonDefaultPlaces);
+        return writer.toString();
+    }
+
+    private void writeToken(TokenWriter writer, SlottedPlace newPlace, SlottedPlace[] nonDefaultPlaces) {
         List<SlottedPlace> hierarchyList = createHierarchyList(newPlace, Arrays.asList(nonDefaultPlaces));
-        hierarchyList.remove(0);
+        historyMapper.writeToken(writer, newPlace, hierarchyList.subList(1, hierarchyList.size()));
+    }
 
-        String token = historyMapper.createToken(newPlace, hierarchyList.toArray(new SlottedPlace[hierarchyList.size()]));
-        return token;
+    /**
+     * Called by ActiveSlot when a child ActiveSlot is created, so it can be found without walking the hierarchy.
+     */
+    protected void addActiveSlot(ActiveSlot activeSlot) {
+        activeSlotMap.put(activeSlot.getSlot(), activeSlot);
+    }
+
+    /**
+     * Called by ActiveSlot when a child ActiveSlot is discarded.
+     */
+    protected void removeActiveSlot(ActiveSlot activeSlot) {
+        if (activeSlotMap.get(activeSlot.getSlot()) == activeSlot) {
+            activeSlotMap.remove(activeSlot.getSlot());
+        }
+    }
+
+    /**
+     * Gets the ActiveSlot currently displaying the Slot.
+     *
+     * @param slot The Slot to find.
+     * @return The ActiveSlot or null if the Slot isn't in the hierarchy.
+     */
+    protected ActiveSlot findActiveSlot(Slot slot) {
+        return activeSlotMap.get(slot);
     }
 
     /**
@@ -889,6 +1370,11 @@ public class SlottedController {
      */
     @SuppressWarnings("unchecked")
     public <T extends Place> T getCurrentPlace(Slot slot) {
+        if (!processingGoTo) {
+            ActiveSlot activeSlot = findActiveSlot(slot);
+            return activeSlot != null ? (T) activeSlot.getPlace() : null;
+        }
+        // The ActiveSlots are being updated, so use the hierarchy that is being navigated to.
         for (SlottedPlace place: currentHierarchyList) {
             if (place.getParentSlot() == slot) {
                 return (T) place;
@@ -934,6 +1420,10 @@ public class SlottedController {
      */
     @SuppressWarnings("unchecked")
     public Activity getCurrentActivity(Slot slot) {
+        ActiveSlot activeSlot = findActiveSlot(slot);
+        if (activeSlot != null && activeSlot.getActivity() != null) {
+            return activeSlot.getActivity();
+        }
         Place place = getCurrentPlace(slot);
         if (place != null  && place instanceof SlottedPlace) {
             Class placeType = place.getClass();
@@ -979,6 +1469,17 @@ public class SlottedController {
         }
     }
 
+    /**
+     * Compares the global parameters of the current navigation to the previous one, which is used to decide if
+     * an Activity needs to be refreshed.
+     *
+     * @param oldPlace The Place the Activity displayed before the navigation.
+     * @param newPlace The Place the Activity displays now.
+     */
+    ParameterChanges getParameterChanges(SlottedPlace oldPlace, SlottedPlace newPlace) {
+        return new ParameterChanges(historyMapper, oldPlace, newPlace, changedParameterNames);
+    }
+
     /**
      * Returns the {@link PlaceParameters} that used to display the current state.
      *
@@ -988,6 +1489,16 @@ public class SlottedController {
         return currentParameters;
     }
 
+    /**
+     * Gets the plan of the last navigation that was constructed, which lists what happened to each Slot.
+     * This is intended for diagnostics, and shouldn't be changed.
+     *
+     * @return The plan, or null if no navigation has been constructed.
+     */
+    public NavigationPlan getNavigationPlan() {
+        return navigationPlan;
+    }
+
     /**
      * Returns the EventBus used for all events in the slotted framework.
      */
@@ -20,15 +20,13 @@
 */
 package com.googlecode.slotted.client;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import com.google.gwt.core.client.Duration;
+import com.google.gwt.core.client.GWT;
 import com.google.web.bindery.event.shared.Event;
 import com.google.web.bindery.event.shared.Event.Type;
 import com.google.web.bindery.event.shared.EventBus;
@@ -42,21 +40,113 @@ import com.google.web.bindery.event.shared.UmbrellaException;
  * <li> Complete the processing of an Event before processing an Event fired during processing
  * <li> Allow handlers added during processing to handle Events fired during processing.
  * </ul>
+ * Handlers are kept in arrays that are replaced instead of changed, so dispatching can loop over them without
+ * a copy, and the handlers for a source are merged with the global handlers once and then cached.  Queued
+ * events and handler changes are kept in ring buffers, so firing an event doesn't allocate once the buffers
+ * have grown to the needed size.
+ * <p>
+ * Statistics about the Events can be collected with {@link EventBusInstrumentation}, which is compiled out
+ * unless it is turned on.
  */
 public class SlottedEventBus extends EventBus {
-    private interface Command {
-        void execute();
+    private static final Object[] NoHandlers = new Object[0];
+    private static final Object Add = "add";
+    private static final Object Remove = "remove";
+
+    /**
+     * A FIFO queue of fixed size records that reuses its array.
+     */
+    static class RingQueue {
+        private final int stride;
+        private Object[] items;
+        private int capacity = 8;
+        private int head;
+        private int size;
+
+        RingQueue(int stride) {
+            this.stride = stride;
+            items = new Object[capacity * stride];
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * Reserves space at the end of the queue.
+         *
+         * @return The index of the record's first item, which the caller fills.
+         */
+        private int reserve() {
+            if (size == capacity) {
+                Object[] grown = new Object[capacity * 2 * stride];
+                for (int i = 0; i < size; i++) {
+                    System.arraycopy(items, ((head + i) & (capacity - 1)) * stride, grown, i * stride, stride);
+                }
+                items = grown;
+                capacity *= 2;
+                head = 0;
+            }
+            int index = ((head + size) & (capacity - 1)) * stride;
+            size++;
+            return index;
+        }
+
+        void add(Object item0, Object item1) {
+            int index = reserve();
+            items[index] = item0;
+            items[index + 1] = item1;
+        }
+
+        void add(Object item0, Object item1, Object item2, Object item3) {
+            int index = reserve();
+            items[index] = item0;
+            items[index + 1] = item1;
+            items[index + 2] = item2;
+            items[index + 3] = item3;
+        }
+
+        /**
+         * @return The item of the first record.
+         */
+        Object peek(int item) {
+            return items[head * stride + item];
+        }
+
+        /**
+         * Removes the first record, and clears its items so they can be garbage collected.
+         */
+        void removeFirst() {
+            int index = head * stride;
+            for (int i = 0; i < stride; i++) {
+                items[index + i] = null;
+            }
+            head = (head + 1) & (capacity - 1);
+            size--;
+        }
     }
 
+    // GWT.create() throws outside of client code, so a bus used in a plain JVM test doesn't record anything.
+    private final EventBusInstrumentation instrumentation = GWT.isClient() ?
+            GWT.<EventBusInstrumentation>create(EventBusInstrumentation.class) : new EventBusInstrumentation();
     private boolean processing;
-    LinkedList<Command> fireEventQueue = new LinkedList<Command>();
-    LinkedList<Command> addHandlerQueue = new LinkedList<Command>();
+    RingQueue fireEventQueue = new RingQueue(2);
+    RingQueue addHandlerQueue = new RingQueue(4);
+
+    /**
+     * Map of event type to map of event source to array of their handlers.  The arrays are never changed.
+     */
+    private final Map<Event.Type<?>, Map<Object, Object[]>> map = new HashMap<Type<?>, Map<Object, Object[]>>();
 
     /**
-     * Map of event type to map of event source to list of their handlers.
+     * Map of event type to map of event source to the source's handlers followed by the global handlers.
      */
-    private final Map<Event.Type<?>, Map<Object, List<?>>> map = new HashMap<Type<?>, Map<Object,
-            List<?>>>();
+    private final Map<Event.Type<?>, Map<Object, Object[]>> dispatchCache =
+            new HashMap<Type<?>, Map<Object, Object[]>>();
 
 
     @Override public <H> HandlerRegistration addHandler(Type<H> type, H handler) {
@@ -75,11 +165,8 @@ public class SlottedEventBus extends EventBus {
         }
 
         if (processing) {
-            addHandlerQueue.add(new Command() {
-                @Override public void execute() {
-                    doAdd(type, source, handler);
-                }
-            });
+            addHandlerQueue.add(Add, type, source, handler);
+            recordQueueDepth();
         } else {
             doAdd(type, source, handler);
         }
@@ -95,28 +182,44 @@ public class SlottedEventBus extends EventBus {
         fireEventFromSource(event, null);
     }
 
-    @Override public void fireEventFromSource(final Event<?> event, final Object source) {
+    @Override public void fireEventFromSource(Event<?> event, Object source) {
         if (event == null) {
             throw new NullPointerException("Cannot fire null event");
         }
 
-        fireEventQueue.add(new Command() {
-            @Override public void execute() {
-                doFire(event, source);
-            }
-        });
+        fireEventQueue.add(event, source);
+        recordQueueDepth();
         processQueues();
     }
 
-    public <H> void removeHandlerFromSource(final Type<H> type, final Object source,
-            final H handler)
-    {
+    /**
+     * Gets a snapshot of the statistics, which is empty unless the "slotted.eventbus.instrumentation" property
+     * is "on".
+     *
+     * @see EventBusInstrumentation
+     */
+    public EventBusStats getStats() {
+        return instrumentation.snapshot(map);
+    }
+
+    /**
+     * Clears the fire counts, dispatch times and queue high-water marks.  The handler counts always show the
+     * current handlers.
+     */
+    public void resetStats() {
+        instrumentation.reset();
+    }
+
+    private void recordQueueDepth() {
+        if (instrumentation.isEnabled()) {
+            instrumentation.recordQueueDepth(fireEventQueue.size(), addHandlerQueue.size());
+        }
+    }
+
+    public <H> void removeHandlerFromSource(Type<H> type, Object source, H handler) {
         if (processing) {
-            addHandlerQueue.add(new Command() {
-                @Override public void execute() {
-                    doRemove(type, source, handler);
-                }
-            });
+            addHandlerQueue.add(Remove, type, source, handler);
+            recordQueueDepth();
         } else {
             doRemove(type, source, handler);
         }
@@ -128,12 +231,22 @@ public class SlottedEventBus extends EventBus {
             try {
                 while (!fireEventQueue.isEmpty()) {
                     while (!addHandlerQueue.isEmpty()) {
-                        Command add = addHandlerQueue.removeFirst();
-                        add.execute();
+                        Object command = addHandlerQueue.peek(0);
+                        Type<?> type = (Type<?>) addHandlerQueue.peek(1);
+                        Object source = addHandlerQueue.peek(2);
+                        Object handler = addHandlerQueue.peek(3);
+                        addHandlerQueue.removeFirst();
+                        if (command == Add) {
+                            doAdd(type, source, handler);
+                        } else {
+                            doRemove(type, source, handler);
+                        }
                     }
 
-                    Command fire = fireEventQueue.removeFirst();
-                    fire.execute();
+                    Event<?> event = (Event<?>) fireEventQueue.peek(0);
+                    Object source = fireEventQueue.peek(1);
+                    fireEventQueue.removeFirst();
+                    doFire(event, source);
                 }
             } finally {
                 processing = false;
@@ -141,31 +254,45 @@ public class SlottedEventBus extends EventBus {
         }
     }
 
-    private <H> void doAdd(Event.Type<H> type, Object source, H handler) {
-        List<H> list = ensureHandlerList(type, source);
-        list.add(handler);
-    }
-
-    private <H> void doRemove(Event.Type<H> type, Object source, H handler) {
-        List<H> list = ensureHandlerList(type, source);
-        list.remove(handler);
-    }
-
-    private <H> List<H> ensureHandlerList(Event.Type<H> type, Object source) {
-        Map<Object, List<?>> sourceMap = map.get(type);
+    private void doAdd(Event.Type<?> type, Object source, Object handler) {
+        Map<Object, Object[]> sourceMap = map.get(type);
         if (sourceMap == null) {
-            sourceMap = new HashMap<Object, List<?>>();
+            sourceMap = new HashMap<Object, Object[]>();
             map.put(type, sourceMap);
         }
 
-        // safe, we control the puts.
-        @SuppressWarnings("unchecked") List<H> handlers = (List<H>) sourceMap.get(source);
+        Object[] handlers = sourceMap.get(source);
         if (handlers == null) {
-            handlers = new ArrayList<H>();
-            sourceMap.put(source, handlers);
+            handlers = NoHandlers;
         }
+        Object[] added = new Object[handlers.length + 1];
+        System.arraycopy(handlers, 0, added, 0, handlers.length);
+        added[handlers.length] = handler;
+        sourceMap.put(source, added);
+        dispatchCache.remove(type);
+    }
 
-        return handlers;
+    private void doRemove(Event.Type<?> type, Object source, Object handler) {
+        Map<Object, Object[]> sourceMap = map.get(type);
+        Object[] handlers = sourceMap == null ? null : sourceMap.get(source);
+        if (handlers == null) {
+            return;
+        }
+
+        for (int i = 0; i < handlers.length; i++) {
+            if (handler.equals(handlers[i])) {
+                if (handlers.length == 1) {
+                    sourceMap.remove(source);
+                } else {
+                    Object[] removed = new Object[handlers.length - 1];
+                    System.arraycopy(handlers, 0, removed, 0, i);
+                    System.arraycopy(handlers, i + 1, removed, i, removed.length - i);
+                    sourceMap.put(source, removed);
+                }
+                dispatchCache.remove(type);
+                return;
+            }
+        }
     }
 
     private <H> void doFire(Event<H> event, Object source) {
@@ -173,11 +300,14 @@ public class SlottedEventBus extends EventBus {
             EventHelper.setSource(event, source);
         }
 
-        List<H> handlers = getDispatchList(event.getAssociatedType(), source);
+        Object[] handlers = getDispatchArray(event.getAssociatedType(), source);
         Set<Throwable> causes = null;
+        double start = instrumentation.isEnabled() ? Duration.currentTimeMillis() : 0;
 
-        for (H handler : handlers) {
+        for (int i = 0; i < handlers.length; i++) {
             try {
+                // safe, we control the puts.
+                @SuppressWarnings("unchecked") H handler = (H) handlers[i];
                 EventHelper.dispatch(event, handler);
             } catch (Throwable e) {
                 if (causes == null) {
@@ -187,36 +317,45 @@ public class SlottedEventBus extends EventBus {
             }
         }
 
+        if (instrumentation.isEnabled()) {
+            instrumentation.recordFire(event.getAssociatedType(), Duration.currentTimeMillis() - start);
+        }
         if (causes != null) {
             throw new UmbrellaException(causes);
         }
     }
 
-    private <H> List<H> getDispatchList(Event.Type<H> type, Object source) {
-        List<H> directHandlers = getHandlerList(type, source);
+    private Object[] getDispatchArray(Event.Type<?> type, Object source) {
+        Map<Object, Object[]> sourceMap = map.get(type);
+        if (sourceMap == null) {
+            return NoHandlers;
+        }
+        Object[] globalHandlers = sourceMap.get(null);
+        if (globalHandlers == null) {
+            globalHandlers = NoHandlers;
+        }
         if (source == null) {
+            return globalHandlers;
+        }
+        Object[] directHandlers = sourceMap.get(source);
+        if (directHandlers == null) {
+            return globalHandlers;
+        } else if (globalHandlers.length == 0) {
             return directHandlers;
         }
 
-        List<H> globalHandlers = getHandlerList(type, null);
-
-        List<H> rtn = new ArrayList<H>(directHandlers);
-        rtn.addAll(globalHandlers);
-        return rtn;
-    }
-
-    private <H> List<H> getHandlerList(Event.Type<H> type, Object source) {
-        Map<Object, List<?>> sourceMap = map.get(type);
-        if (sourceMap == null) {
-            return Collections.emptyList();
+        Map<Object, Object[]> sourceCache = dispatchCache.get(type);
+        if (sourceCache == null) {
+            sourceCache = new HashMap<Object, Object[]>();
+            dispatchCache.put(type, sourceCache);
         }
-
-        // safe, we control the puts.
-        @SuppressWarnings("unchecked") List<H> handlers = (List<H>) sourceMap.get(source);
+        Object[] handlers = sourceCache.get(source);
         if (handlers == null) {
-            return Collections.emptyList();
+            handlers = new Object[directHandlers.length + globalHandlers.length];
+            System.arraycopy(directHandlers, 0, handlers, 0, directHandlers.length);
+            System.arraycopy(globalHandlers, 0, handlers, directHandlers.length, globalHandlers.length);
+            sourceCache.put(source, handlers);
         }
-
         return handlers;
     }
 }
@@ -19,6 +19,7 @@ import com.google.gwt.activity.shared.Activity;
 import com.google.gwt.core.client.Callback;
 import com.google.gwt.place.shared.Place;
 
+import java.util.HashMap;
 import java.util.LinkedList;
 
 /**
@@ -30,10 +31,21 @@ import java.util.LinkedList;
  * by Place/Activities.
  */
 abstract public class SlottedPlace extends Place implements HasParameters {
+    /**
+     * The AutoTokenizer hashCode() uses for each Place class.  It is set when the Place is registered with the
+     * HistoryMapper, or picked the first time a Place of the class is hashed.  It isn't changed afterwards, so
+     * the hash of a Place doesn't change while it is in a HashMap.
+     */
+    private static final HashMap<Class<? extends SlottedPlace>, AutoTokenizer> hashTokenizers =
+            new HashMap<Class<? extends SlottedPlace>, AutoTokenizer>();
 
     private String[] equalsParameterNames = new String[0];
     private PlaceParameters placeParameters = new PlaceParameters();
     private LinkedList<String> setKeys = new LinkedList<String>();
+    private AutoTokenizer autoTokenizer;
+    private int autoTokenizerCount = -1;
+    private AutoTokenizer hashTokenizer;
+    private boolean hashTokenizerSet;
 
     /**
      * Gets the slot that this Place is displayed in.  A Place can only be associated to one Slot, but it is
@@ -74,7 +86,9 @@ abstract public class SlottedPlace extends Place implements HasParameters {
     }
 
     /**
-     * Attempts to get the Activity via async call, which allows for custom Code Splitting logic.
+     * Attempts to get the Activity via async call, which allows for custom Code Splitting logic.  If a newer
+     * navigation replaces this one before the call returns, the result is ignored, and
+     * {@link ActivityRequest#isCancelled(Callback)} can be used to skip creating the Activity.
      *
      * @param callback Passed by SlottedController to handle the async call.
      */
@@ -120,6 +134,35 @@ abstract public class SlottedPlace extends Place implements HasParameters {
         intoPlaceParameters.addPlaceParameters(this.placeParameters, setKeys);
     }
 
+    /**
+     * Copies the global parameters set with {@link #setParameter(String, String)} from the source, which is
+     * used when the Place is cloned.
+     */
+    void copyParameters(SlottedPlace source) {
+        for (String key: source.setKeys) {
+            setParameter(key, source.getParameter(key));
+        }
+    }
+
+    /**
+     * @return True if the Place has the same global parameters set with {@link #setParameter(String, String)} as
+     * this Place, which are written in its token.
+     */
+    boolean hasSameSetParameters(SlottedPlace place) {
+        if (setKeys.size() != place.setKeys.size()) {
+            return false;
+        }
+        for (String key: setKeys) {
+            String value = getParameter(key);
+            if (!place.setKeys.contains(key) || (value != null ? !value.equals(place.getParameter(key)) :
+                    place.getParameter(key) != null))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Called by the Slotted framework to sync the global parameters for all Places.
      *
@@ -159,7 +202,7 @@ abstract public class SlottedPlace extends Place implements HasParameters {
             return false;
         }
 
-        AutoTokenizer tokenizer = AutoTokenizer.tokenizers.get(this.getClass());
+        AutoTokenizer tokenizer = getAutoTokenizer();
         if (tokenizer != null && !tokenizer.equals(this, (Place) o)) {
             return false;
         }
@@ -177,11 +220,16 @@ abstract public class SlottedPlace extends Place implements HasParameters {
     }
 
     /**
-     * Simple hashcode based on the Class, because it is believed that this won't be used much.
+     * If AutoTokenizer is used, the hashcode includes all the annotated variables used in equals().  Registering
+     * the AutoTokenizer after a Place of the class was hashed throws an IllegalStateException.
      */
-    @Override
+    @SuppressWarnings("unchecked") @Override
     public int hashCode() {
         int result = getClass().hashCode();
+        AutoTokenizer tokenizer = getHashTokenizer();
+        if (tokenizer != null) {
+            result = 31 * result + tokenizer.hashCode(this);
+        }
         for (String name: equalsParameterNames) {
             String value = getParameter(name);
             result = 31 * result + (value != null ? value.hashCode() : 0);
@@ -190,6 +238,50 @@ abstract public class SlottedPlace extends Place implements HasParameters {
         return result;
     }
 
+    /**
+     * Gets the AutoTokenizer for this Place's class, which is only looked up again if it wasn't found and more
+     * AutoTokenizers have been registered since.
+     */
+    private AutoTokenizer getAutoTokenizer() {
+        if (autoTokenizer == null && autoTokenizerCount != AutoTokenizer.tokenizers.size()) {
+            autoTokenizerCount = AutoTokenizer.tokenizers.size();
+            autoTokenizer = AutoTokenizer.tokenizers.get(getClass());
+        }
+        return autoTokenizer;
+    }
+
+    /**
+     * Called by the HistoryMapper when a Place class is registered with an AutoTokenizer, so hashCode() uses it
+     * even if no Place of the class was created through the tokenizer yet.
+     *
+     * @throws IllegalStateException if a Place of the class was already hashed without an AutoTokenizer, because
+     * those Places would no longer be found in the HashMaps that hold them.
+     */
+    static void registerHashTokenizer(Class<? extends SlottedPlace> placeClass, AutoTokenizer tokenizer) {
+        if (hashTokenizers.containsKey(placeClass)) {
+            if (hashTokenizers.get(placeClass) == null) {
+                throw new IllegalStateException(placeClass.getName() + " was hashed before its AutoTokenizer " +
+                        "was registered.  Register the Place before its instances are put in a HashMap or HashSet.");
+            }
+        } else {
+            hashTokenizers.put(placeClass, tokenizer);
+        }
+    }
+
+    private AutoTokenizer getHashTokenizer() {
+        if (!hashTokenizerSet) {
+            Class<? extends SlottedPlace> placeClass = getClass();
+            if (hashTokenizers.containsKey(placeClass)) {
+                hashTokenizer = hashTokenizers.get(placeClass);
+            } else {
+                hashTokenizer = getAutoTokenizer();
+                hashTokenizers.put(placeClass, hashTokenizer);
+            }
+            hashTokenizerSet = true;
+        }
+        return hashTokenizer;
+    }
+
     /**
      * @return The simple name of the class.
      */
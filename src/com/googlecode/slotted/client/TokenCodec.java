@@ -0,0 +1,66 @@
+package com.googlecode.slotted.client;
+
+import java.sql.Timestamp;
+import java.util.Date;
+
+/**
+ * Writes and reads the {@link TokenizerParameter} fields of a Place for its {@link AutoTokenizer}.  The fields
+ * are added in the order they are declared, and read back in the same order, so the encoding doesn't need to
+ * contain the field names.  {@link TokenizerUtil} is the default, and a Place can choose a different codec
+ * with {@link TokenFormat}.
+ * <p>
+ * The generated tokenizer creates the codec directly, so an implementation needs a public default constructor
+ * for writing a token, and a public constructor that takes the token String for reading it.  The written token
+ * must not contain '/', ':', '?' or '&amp;' outside of its own escaping, because those separate the Places and
+ * the global parameters in the History token.
+ */
+public interface TokenCodec {
+    TokenCodec add(String param);
+    TokenCodec add(Object param);
+    TokenCodec add(int param);
+    TokenCodec add(long param);
+    TokenCodec add(float param);
+    TokenCodec add(double param);
+    TokenCodec add(boolean param);
+    TokenCodec add(char param);
+    TokenCodec add(Byte param);
+    TokenCodec add(Short param);
+    TokenCodec add(Integer param);
+    TokenCodec add(Long param);
+    TokenCodec add(Float param);
+    TokenCodec add(Double param);
+    TokenCodec add(Boolean param);
+    TokenCodec add(Character param);
+    TokenCodec add(Date param);
+    TokenCodec add(Timestamp param);
+
+    /**
+     * @return The token with all the added parameters.
+     */
+    String tokenize();
+
+    /**
+     * @return True if there are parameters left to be read.
+     */
+    boolean hasMore();
+
+    String get();
+    byte getbyte();
+    short getshort();
+    int getint();
+    long getlong();
+    float getfloat();
+    double getdouble();
+    boolean getboolean();
+    char getchar();
+    Byte getByte();
+    Short getShort();
+    Integer getInteger();
+    Long getLong();
+    Float getFloat();
+    Double getDouble();
+    Boolean getBoolean();
+    Character getCharacter();
+    Date getDate();
+    Timestamp getTimestamp();
+}
@@ -0,0 +1,19 @@
+package com.googlecode.slotted.client;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Defines the {@link TokenCodec} the {@link AutoTokenizer} of a Place uses for the {@link TokenizerParameter}
+ * fields.  Without this annotation, the readable {@link TokenizerUtil} format is used.  Changing the codec of a
+ * Place changes its tokens, so existing bookmarks to the Place will no longer parse.
+ *
+ * @see CompactTokenCodec
+ */
+@Target({ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface TokenFormat {
+    Class<? extends TokenCodec> value();
+}
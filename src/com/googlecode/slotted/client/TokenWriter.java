@@ -0,0 +1,111 @@
+package com.googlecode.slotted.client;
+
+import java.util.Map.Entry;
+
+import com.google.gwt.http.client.URL;
+
+/**
+ * Builds a history token in a single buffer.  Places are separated by '/', the tokenizer's token follows the
+ * Place name after a ':', and the global parameters are added at the end starting with a '?'.  Parameter
+ * names and values are encoded, so they can be decoded by {@link HistoryMapper#parseToken(String)}.
+ */
+public class TokenWriter {
+    private final StringBuilder builder;
+    private boolean hasPlace;
+    private boolean hasParameter;
+
+    /**
+     * Creates a writer for just the token.
+     */
+    public TokenWriter() {
+        this("");
+    }
+
+    /**
+     * Creates a writer that starts with the prefix, which is usually the base URL and the '#'.
+     *
+     * @param prefix The text that goes before the token.
+     */
+    public TokenWriter(String prefix) {
+        builder = new StringBuilder(prefix.length() + 64);
+        builder.append(prefix);
+    }
+
+    /**
+     * Adds a Place to the token.
+     *
+     * @param name The registered name of the Place.
+     * @param placeToken The token from the Place's tokenizer, which can be null or empty.
+     * @return This writer.
+     */
+    public TokenWriter appendPlace(String name, String placeToken) {
+        if (hasParameter) {
+            throw new IllegalStateException("Places must be added before the parameters.");
+        }
+        if (hasPlace) {
+            builder.append('/');
+        }
+        builder.append(name);
+        if (placeToken != null && !placeToken.isEmpty()) {
+            builder.append(':').append(placeToken);
+        }
+        hasPlace = true;
+        return this;
+    }
+
+    /**
+     * Adds all the global parameters to the end of the token.
+     *
+     * @return This writer.
+     */
+    public TokenWriter appendParameters(PlaceParameters parameters) {
+        if (parameters != null) {
+            for (Entry<PlaceParameters.Key, Object> entry: parameters.entries()) {
+                Object value = entry.getValue();
+                appendParameter(entry.getKey().getName(), value == null ? null : value.toString());
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Adds a single global parameter to the end of the token.
+     *
+     * @return This writer.
+     */
+    public TokenWriter appendParameter(String name, String value) {
+        builder.append(hasParameter ? '&' : '?');
+        appendEncoded(name);
+        builder.append('=');
+        if (value != null) {
+            appendEncoded(value);
+        }
+        hasParameter = true;
+        return this;
+    }
+
+    /**
+     * @return The prefix and the token.
+     */
+    @Override public String toString() {
+        return builder.toString();
+    }
+
+    private void appendEncoded(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (!isSafe(value.charAt(i))) {
+                builder.append(URL.encodeQueryString(value));
+                return;
+            }
+        }
+        builder.append(value);
+    }
+
+    /**
+     * @return True if the character is never changed by URL encoding.
+     */
+    static boolean isSafe(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') ||
+                c == '-' || c == '_' || c == '.' || c == '~';
+    }
+}
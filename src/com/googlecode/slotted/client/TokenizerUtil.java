@@ -6,14 +6,22 @@ import com.google.gwt.i18n.client.DateTimeFormat.PredefinedFormat;
 
 import java.sql.Timestamp;
 import java.util.Date;
-import java.util.LinkedList;
 
 /**
- * A utility class used by {@link AutoTokenizer}.
+ * The default {@link TokenCodec} used by {@link AutoTokenizer}.  A built TokenizerUtil appends each parameter
+ * to a single buffer, and an extracted TokenizerUtil reads the parameters with a cursor over the token, so neither
+ * needs a list of Strings.  Parameters are separated by '&amp;', are encoded as path segments, and a null String
+ * is written as '#'.
  */
-public class TokenizerUtil {
+public class TokenizerUtil implements TokenCodec {
+    private static DateTimeFormat dateFormat;
 
-    private LinkedList<String> parameters;
+    private StringBuilder builder;
+    private int count;
+
+    private String token;
+    private int position;
+    private int limit;
 
     public static TokenizerUtil build() {
         return new TokenizerUtil();
@@ -24,258 +32,357 @@ public class TokenizerUtil {
     }
 
     private TokenizerUtil() {
-        parameters = new LinkedList<String>();
+        builder = new StringBuilder();
     }
 
     private TokenizerUtil(String token) {
-        String[] params = token.split("&");
-        parameters = new LinkedList<String>();
-        for (String param: params) {
-            if ("#".equals(param)) {
-                parameters.add(null);
-
-            } else {
-                param = URL.decodePathSegment(param);
-                parameters.add(param);
-            }
+        this.token = token;
+        // Trailing empty parameters are ignored, the same as String.split("&").
+        limit = token.length();
+        while (limit > 0 && token.charAt(limit - 1) == '&') {
+            limit--;
         }
+        position = limit == 0 && !token.isEmpty() ? -1 : 0;
     }
 
-    public String tokenize() {
-        StringBuilder sb = new StringBuilder();
-        boolean first = true;
-        for (String param: parameters) {
-            if (!first) {
-                sb.append("&");
-            } else {
-                first = false;
-            }
-            if (param == null) {
-                sb.append("#");
-            } else {
-                sb.append(URL.encodePathSegment(param));
-            }
+    private static DateTimeFormat getDateFormat() {
+        if (dateFormat == null) {
+            dateFormat = DateTimeFormat.getFormat(PredefinedFormat.ISO_8601);
         }
+        return dateFormat;
+    }
 
-        return sb.toString();
+    public String tokenize() {
+        return builder.toString();
     }
 
     public boolean hasMore() {
-        return !parameters.isEmpty();
+        return position >= 0;
+    }
+
+    /**
+     * Reads the next parameter, which must only be called if {@link #hasMore()}.
+     *
+     * @return The decoded parameter, or null if it was written as '#'.
+     */
+    private String next() {
+        int end = token.indexOf('&', position);
+        if (end < 0 || end > limit) {
+            end = limit;
+        }
+        String param = token.substring(position, end);
+        position = end == limit ? -1 : end + 1;
+
+        if ("#".equals(param)) {
+            return null;
+        } else if (param.indexOf('%') >= 0) {
+            return URL.decodePathSegment(param);
+        }
+        return param;
+    }
+
+    private StringBuilder nextBuffer() {
+        if (count > 0) {
+            builder.append('&');
+        }
+        count++;
+        return builder;
+    }
+
+    private void append(String param) {
+        StringBuilder sb = nextBuffer();
+        if (param == null) {
+            sb.append('#');
+            return;
+        }
+        for (int i = 0; i < param.length(); i++) {
+            if (!TokenWriter.isSafe(param.charAt(i))) {
+                sb.append(URL.encodePathSegment(param));
+                return;
+            }
+        }
+        sb.append(param);
     }
 
     public String get() {
-        if (!parameters.isEmpty()) {
-            return parameters.removeFirst();
+        if (hasMore()) {
+            return next();
         }
         return "";
     }
 
     public byte getbyte() {
-        if (!parameters.isEmpty()) {
-            return Byte.parseByte(parameters.removeFirst());
+        if (hasMore()) {
+            return Byte.parseByte(next());
         }
         return 0;
     }
 
     public short getshort() {
-        if (!parameters.isEmpty()) {
-            return Short.parseShort(parameters.removeFirst());
+        if (hasMore()) {
+            return Short.parseShort(next());
         }
         return 0;
     }
 
     public int getint() {
-        if (!parameters.isEmpty()) {
-            return Integer.parseInt(parameters.removeFirst());
+        if (hasMore()) {
+            return Integer.parseInt(next());
+        }
+        return 0;
+    }
+
+    public long getlong() {
+        if (hasMore()) {
+            return Long.parseLong(next());
         }
         return 0;
     }
 
     public float getfloat() {
-        if (!parameters.isEmpty()) {
-            return Float.parseFloat(parameters.removeFirst());
+        if (hasMore()) {
+            return Float.parseFloat(next());
         }
         return 0f;
     }
 
     public double getdouble() {
-        if (!parameters.isEmpty()) {
-            return Double.parseDouble(parameters.removeFirst());
+        if (hasMore()) {
+            return Double.parseDouble(next());
         }
         return 0d;
     }
 
-    @SuppressWarnings("SimplifiableIfStatement")
     public boolean getboolean() {
-        if (!parameters.isEmpty()) {
-            return Boolean.parseBoolean(parameters.removeFirst());
-        }
-        return false;
+        return hasMore() && Boolean.parseBoolean(next());
     }
 
     public char getchar() {
-        if (!parameters.isEmpty()) {
-            return parameters.removeFirst().charAt(0);
+        if (hasMore()) {
+            return next().charAt(0);
         }
         return '\u0000';
     }
 
-    public Byte getByte() {
-        if (!parameters.isEmpty()) {
-            String param = parameters.removeFirst();
+    /**
+     * @return The next parameter, or null if there are no more or it is empty.
+     */
+    private String nextValue() {
+        if (hasMore()) {
+            String param = next();
             if (param != null && !param.isEmpty()) {
-                return new Byte(param);
+                return param;
             }
         }
         return null;
     }
 
+    public Byte getByte() {
+        String param = nextValue();
+        return param == null ? null : Byte.valueOf(Byte.parseByte(param));
+    }
+
     public Short getShort() {
-        if (!parameters.isEmpty()) {
-            String param = parameters.removeFirst();
-            if (param != null && !param.isEmpty()) {
-                return new Short(param);
-            }
-        }
-        return null;
+        String param = nextValue();
+        return param == null ? null : Short.valueOf(Short.parseShort(param));
     }
 
     public Integer getInteger() {
-        if (!parameters.isEmpty()) {
-            String param = parameters.removeFirst();
-            if (param != null && !param.isEmpty()) {
-                return new Integer(param);
-            }
-        }
-        return null;
+        String param = nextValue();
+        return param == null ? null : Integer.valueOf(Integer.parseInt(param));
     }
 
     public Long getLong() {
-        if (!parameters.isEmpty()) {
-            String param = parameters.removeFirst();
-            if (param != null && !param.isEmpty()) {
-                return new Long(param);
-            }
-        }
-        return null;
+        String param = nextValue();
+        return param == null ? null : Long.valueOf(Long.parseLong(param));
     }
 
     public Float getFloat() {
-        if (!parameters.isEmpty()) {
-            String param = parameters.removeFirst();
-            if (param != null && !param.isEmpty()) {
-                return new Float(param);
-            }
-        }
-        return null;
+        String param = nextValue();
+        return param == null ? null : Float.valueOf(Float.parseFloat(param));
     }
 
     public Double getDouble() {
-        if (!parameters.isEmpty()) {
-            String param = parameters.removeFirst();
-            if (param != null && !param.isEmpty()) {
-                return new Double(param);
-            }
-        }
-        return null;
+        String param = nextValue();
+        return param == null ? null : Double.valueOf(Double.parseDouble(param));
     }
 
     public Boolean getBoolean() {
-        if (!parameters.isEmpty()) {
-            String param = parameters.removeFirst();
-            if (param != null && !param.isEmpty()) {
-                return Boolean.valueOf(param);
-            }
-        }
-        return null;
+        String param = nextValue();
+        return param == null ? null : Boolean.valueOf(param);
     }
 
     public Character getCharacter() {
-        if (!parameters.isEmpty()) {
-            String param = parameters.removeFirst();
-            if (param != null && !param.isEmpty()) {
-                return param.charAt(0);
-            }
-        }
-        return null;
+        String param = nextValue();
+        return param == null ? null : Character.valueOf(param.charAt(0));
     }
 
     public Date getDate() {
-        if (!parameters.isEmpty()) {
-            String d = parameters.removeFirst();
-            if(d != null && d.trim().length() > 0) {
-                return DateTimeFormat.getFormat(PredefinedFormat.ISO_8601).parse(d);
-            }
+        String param = nextValue();
+        if (param != null && param.trim().length() > 0) {
+            return getDateFormat().parse(param);
         }
         return null;
     }
 
     public Timestamp getTimestamp() {
-        if (!parameters.isEmpty()) {
-            String ts = parameters.removeFirst();
-            if(ts != null && ts.trim().length() > 0) {
-                return new Timestamp(DateTimeFormat.getFormat(PredefinedFormat.ISO_8601).parse(ts).getTime());
-            }
-        }
-        return null;
+        Date date = getDate();
+        return date == null ? null : new Timestamp(date.getTime());
     }
 
     public TokenizerUtil add(String param) {
-        parameters.add(param);
+        append(param);
         return this;
     }
 
     public TokenizerUtil add(Object param) {
-        if (param == null) {
-            parameters.add("");
-        } else {
-            parameters.add(param.toString());
-        }
+        append(param == null ? "" : param.toString());
         return this;
     }
 
     public TokenizerUtil add(int param) {
-        parameters.add("" + param);
+        nextBuffer().append(param);
+        return this;
+    }
+
+    public TokenizerUtil add(long param) {
+        nextBuffer().append(param);
         return this;
     }
 
     public TokenizerUtil add(float param) {
-        parameters.add("" + param);
+        nextBuffer().append(param);
         return this;
     }
 
     public TokenizerUtil add(double param) {
-        parameters.add("" + param);
+        nextBuffer().append(param);
         return this;
     }
 
     public TokenizerUtil add(boolean param) {
-        parameters.add("" + param);
+        nextBuffer().append(param);
         return this;
     }
 
     public TokenizerUtil add(char param) {
-        parameters.add("" + param);
+        append(String.valueOf(param));
         return this;
     }
 
-    public TokenizerUtil add(Date param) {
-        if(param != null) {
-            parameters.add(DateTimeFormat.getFormat(PredefinedFormat.ISO_8601).format(param));
+    public TokenizerUtil add(byte param) {
+        nextBuffer().append(param);
+        return this;
+    }
+
+    public TokenizerUtil add(short param) {
+        nextBuffer().append(param);
+        return this;
+    }
+
+    public TokenizerUtil add(Byte param) {
+        if (param == null) {
+            nextBuffer();
         } else {
-            parameters.add("");
+            nextBuffer().append(param.byteValue());
         }
         return this;
     }
 
-    public TokenizerUtil add(Timestamp param) {
-        if(param != null) {
-            parameters.add(DateTimeFormat.getFormat(PredefinedFormat.ISO_8601).format(param));
+    public TokenizerUtil add(Short param) {
+        if (param == null) {
+            nextBuffer();
+        } else {
+            nextBuffer().append(param.shortValue());
+        }
+        return this;
+    }
+
+    public TokenizerUtil add(Float param) {
+        if (param == null) {
+            nextBuffer();
+        } else {
+            nextBuffer().append(param.floatValue());
+        }
+        return this;
+    }
+
+    public TokenizerUtil add(Double param) {
+        if (param == null) {
+            nextBuffer();
+        } else {
+            nextBuffer().append(param.doubleValue());
+        }
+        return this;
+    }
+
+    public TokenizerUtil add(Boolean param) {
+        if (param == null) {
+            nextBuffer();
+        } else {
+            nextBuffer().append(param.booleanValue());
+        }
+        return this;
+    }
+
+    public TokenizerUtil add(Character param) {
+        if (param == null) {
+            nextBuffer();
+        } else {
+            append(String.valueOf(param.charValue()));
+        }
+        return this;
+    }
+
+    public TokenizerUtil add(Integer param) {
+        if (param == null) {
+            nextBuffer();
+        } else {
+            nextBuffer().append(param.intValue());
+        }
+        return this;
+    }
+
+    public TokenizerUtil add(Long param) {
+        if (param == null) {
+            nextBuffer();
+        } else {
+            nextBuffer().append(param.longValue());
+        }
+        return this;
+    }
+
+    public TokenizerUtil add(Date param) {
+        if (param == null) {
+            nextBuffer();
         } else {
-            parameters.add("");
+            append(getDateFormat().format(param));
         }
         return this;
     }
 
+    public TokenizerUtil add(Timestamp param) {
+        return add((Date) param);
+    }
+
+    /**
+     * Copies a mutable Date, which is used by the {@link AutoTokenizer#copy(com.google.gwt.place.shared.Place)}.
+     */
+    public static Date copy(Date date) {
+        return date == null ? null : new Date(date.getTime());
+    }
+
+    /**
+     * Copies a mutable Timestamp, which is used by the
+     * {@link AutoTokenizer#copy(com.google.gwt.place.shared.Place)}.
+     */
+    public static Timestamp copy(Timestamp timestamp) {
+        if (timestamp == null) {
+            return null;
+        }
+        Timestamp copy = new Timestamp(timestamp.getTime());
+        copy.setNanos(timestamp.getNanos());
+        return copy;
+    }
+
 }
@@ -0,0 +1,136 @@
+package com.googlecode.slotted.client.widgets;
+
+import com.google.gwt.event.dom.client.BlurEvent;
+import com.google.gwt.event.dom.client.BlurHandler;
+import com.google.gwt.event.dom.client.FocusEvent;
+import com.google.gwt.event.dom.client.FocusHandler;
+import com.google.gwt.event.dom.client.HasBlurHandlers;
+import com.google.gwt.event.dom.client.HasFocusHandlers;
+import com.google.gwt.event.dom.client.HasMouseOutHandlers;
+import com.google.gwt.event.dom.client.HasMouseOverHandlers;
+import com.google.gwt.event.dom.client.MouseOutEvent;
+import com.google.gwt.event.dom.client.MouseOutHandler;
+import com.google.gwt.event.dom.client.MouseOverEvent;
+import com.google.gwt.event.dom.client.MouseOverHandler;
+import com.google.gwt.user.client.Timer;
+import com.googlecode.slotted.client.SlottedController;
+import com.googlecode.slotted.client.SlottedPlace;
+
+/**
+ * Prefetches the Place of a navigation widget when the mouse rests over it or it has the focus for the dwell
+ * time, so a following click doesn't wait for the code split fragment.  If the click doesn't follow, the
+ * prefetched Activity is dropped at the end of the next navigation.
+ *
+ * @see SlottedController#prefetch(SlottedPlace, boolean)
+ */
+public class IntentPrefetcher implements MouseOverHandler, MouseOutHandler, FocusHandler, BlurHandler {
+    /**
+     * What is prefetched.
+     */
+    public enum Mode {
+        /** Nothing is prefetched. */
+        Off,
+        /** Only the code split fragment is loaded. */
+        Fragment,
+        /** The code split fragment is loaded and the Activity is created. */
+        Activity
+    }
+
+    /**
+     * The default time in milliseconds the mouse or focus needs to stay on the widget.
+     */
+    public static final int DefaultDwell = 150;
+
+    private final SlottedController slottedController;
+    private final SlottedPlace place;
+    private Mode mode;
+    private int dwell;
+    private Timer timer;
+
+    /**
+     * Creates the prefetcher and adds it as a handler to the widget's mouse and focus events, if the widget has
+     * them.
+     *
+     * @param widget The navigation widget.
+     * @param slottedController The controller that will navigate to the Place.
+     * @param place The Place the widget navigates to.
+     * @param mode What to prefetch.
+     * @param dwell The time in milliseconds the mouse or focus needs to stay on the widget.
+     * @return The prefetcher, which can be used to change the mode.
+     */
+    public static IntentPrefetcher attach(Object widget, SlottedController slottedController, SlottedPlace place,
+            Mode mode, int dwell)
+    {
+        IntentPrefetcher prefetcher = new IntentPrefetcher(slottedController, place, mode, dwell);
+        if (widget instanceof HasMouseOverHandlers) {
+            ((HasMouseOverHandlers) widget).addMouseOverHandler(prefetcher);
+        }
+        if (widget instanceof HasMouseOutHandlers) {
+            ((HasMouseOutHandlers) widget).addMouseOutHandler(prefetcher);
+        }
+        if (widget instanceof HasFocusHandlers) {
+            ((HasFocusHandlers) widget).addFocusHandler(prefetcher);
+        }
+        if (widget instanceof HasBlurHandlers) {
+            ((HasBlurHandlers) widget).addBlurHandler(prefetcher);
+        }
+        return prefetcher;
+    }
+
+    private IntentPrefetcher(SlottedController slottedController, SlottedPlace place, Mode mode, int dwell) {
+        this.slottedController = slottedController;
+        this.place = place;
+        this.mode = mode;
+        this.dwell = dwell;
+    }
+
+    /**
+     * Changes what is prefetched.
+     *
+     * @param mode What to prefetch.
+     * @param dwell The time in milliseconds the mouse or focus needs to stay on the widget.
+     */
+    public void setMode(Mode mode, int dwell) {
+        this.mode = mode;
+        this.dwell = dwell;
+        if (mode == Mode.Off) {
+            cancel();
+        }
+    }
+
+    @Override public void onMouseOver(MouseOverEvent event) {
+        start();
+    }
+
+    @Override public void onMouseOut(MouseOutEvent event) {
+        cancel();
+    }
+
+    @Override public void onFocus(FocusEvent event) {
+        start();
+    }
+
+    @Override public void onBlur(BlurEvent event) {
+        cancel();
+    }
+
+    private void start() {
+        if (mode == Mode.Off || timer != null) {
+            return;
+        }
+        timer = new Timer() {
+            @Override public void run() {
+                timer = null;
+                slottedController.prefetch(place, mode == Mode.Activity);
+            }
+        };
+        timer.schedule(dwell);
+    }
+
+    private void cancel() {
+        if (timer != null) {
+            timer.cancel();
+            timer = null;
+        }
+    }
+}
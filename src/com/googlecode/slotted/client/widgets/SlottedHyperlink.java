@@ -8,16 +8,44 @@ import com.googlecode.slotted.client.SlottedController;
 import com.googlecode.slotted.client.SlottedPlace;
 
 public class SlottedHyperlink extends Anchor {
+    private final SlottedPlace place;
+    private IntentPrefetcher intentPrefetcher;
+
     public SlottedHyperlink(SafeHtml html, SlottedPlace place, SlottedPlace... nonDefaultPlaces) {
         this(html.asString(), place, nonDefaultPlaces);
     }
 
     public SlottedHyperlink(String text, final SlottedPlace place, final SlottedPlace... nonDefaultPlaces) {
         super(text);
+        this.place = place;
         addClickHandler(new ClickHandler() {
             @Override public void onClick(ClickEvent event) {
                 SlottedController.instance.goTo(place, nonDefaultPlaces);
             }
         });
     }
+
+    /**
+     * Prefetches the Place when the mouse rests over the link or it has the focus for
+     * {@link IntentPrefetcher#DefaultDwell} milliseconds.
+     *
+     * @param mode What to prefetch.
+     */
+    public void setIntentPrefetch(IntentPrefetcher.Mode mode) {
+        setIntentPrefetch(mode, IntentPrefetcher.DefaultDwell);
+    }
+
+    /**
+     * Prefetches the Place when the mouse rests over the link or it has the focus for the dwell time.
+     *
+     * @param mode What to prefetch.
+     * @param dwell The time in milliseconds the mouse or focus needs to stay on the link.
+     */
+    public void setIntentPrefetch(IntentPrefetcher.Mode mode, int dwell) {
+        if (intentPrefetcher == null) {
+            intentPrefetcher = IntentPrefetcher.attach(this, SlottedController.instance, place, mode, dwell);
+        } else {
+            intentPrefetcher.setMode(mode, dwell);
+        }
+    }
 }
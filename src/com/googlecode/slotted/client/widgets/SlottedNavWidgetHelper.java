@@ -3,10 +3,13 @@ package com.googlecode.slotted.client.widgets;
 import com.google.gwt.event.dom.client.ClickEvent;
 import com.google.gwt.event.dom.client.ClickHandler;
 import com.google.gwt.event.dom.client.HasClickHandlers;
+import com.google.gwt.event.logical.shared.AttachEvent;
 import com.google.gwt.place.shared.Place;
+import com.google.gwt.user.client.ui.Widget;
 import com.google.web.bindery.event.shared.EventBus;
 import com.google.web.bindery.event.shared.ResettableEventBus;
 import com.googlecode.slotted.client.NewPlacesEvent;
+import com.googlecode.slotted.client.PrefetchScheduler;
 import com.googlecode.slotted.client.SlottedController;
 import com.googlecode.slotted.client.SlottedPlace;
 
@@ -18,6 +21,8 @@ abstract public class SlottedNavWidgetHelper<D extends HasClickHandlers> impleme
     protected HashMap<Place, D> strictEqualMap = new HashMap<Place, D>();
     protected HashMap<D, Place> widgetMap = new HashMap<D, Place>();
     private boolean clearActiveOnNoMatch = true;
+    private IntentPrefetcher.Mode intentPrefetch = IntentPrefetcher.Mode.Off;
+    private int intentDwell = IntentPrefetcher.DefaultDwell;
 
     private SlottedController slottedController;
 
@@ -38,6 +43,18 @@ abstract public class SlottedNavWidgetHelper<D extends HasClickHandlers> impleme
         this.clearActiveOnNoMatch = clearActiveOnNoMatch;
     }
 
+    /**
+     * Prefetches the Place of a widget when the mouse rests over it or it has the focus for the dwell time.  This
+     * only applies to the widgets added afterwards.
+     *
+     * @param mode What to prefetch.
+     * @param dwell The time in milliseconds the mouse or focus needs to stay on the widget.
+     */
+    public void setIntentPrefetch(IntentPrefetcher.Mode mode, int dwell) {
+        this.intentPrefetch = mode;
+        this.intentDwell = dwell;
+    }
+
     public void addNavWidget(D widget, SlottedPlace place) {
         addNavWidget(widget, place, false);
     }
@@ -52,6 +69,7 @@ abstract public class SlottedNavWidgetHelper<D extends HasClickHandlers> impleme
         }
 
         widgetMap.put(widget, place);
+        addPrefetchTarget(widget, place);
         if (strictEquals) {
             strictEqualMap.put(place, widget);
         } else {
@@ -69,12 +87,39 @@ abstract public class SlottedNavWidgetHelper<D extends HasClickHandlers> impleme
         }
     }
 
+    /**
+     * Makes the Place a prefetch target while the widget is attached, so removed widgets don't keep their Places
+     * in the {@link PrefetchScheduler}.  Widgets that can't be attached are targets as long as the helper exists.
+     */
+    private void addPrefetchTarget(D widget, final SlottedPlace place) {
+        final PrefetchScheduler prefetchScheduler = slottedController.getPrefetchScheduler();
+        if (widget instanceof Widget) {
+            if (((Widget) widget).isAttached()) {
+                prefetchScheduler.addTarget(place);
+            }
+            ((Widget) widget).addAttachHandler(new AttachEvent.Handler() {
+                @Override public void onAttachOrDetach(AttachEvent event) {
+                    if (event.isAttached()) {
+                        prefetchScheduler.addTarget(place);
+                    } else {
+                        prefetchScheduler.removeTarget(place);
+                    }
+                }
+            });
+        } else {
+            prefetchScheduler.addTarget(place);
+        }
+    }
+
     protected void addHandler(D widget, final SlottedPlace place) {
         widget.addClickHandler(new ClickHandler() {
             @Override public void onClick(ClickEvent event) {
                 slottedController.goTo(place);
             }
         });
+        if (intentPrefetch != IntentPrefetcher.Mode.Off) {
+            IntentPrefetcher.attach(widget, slottedController, place, intentPrefetch, intentDwell);
+        }
     }
 
     public void clearActive() {
@@ -63,6 +63,26 @@ public class SlottedTabBar extends TabBar implements SelectionHandler<Integer>,
     public void addTab(SlottedPlace place, String label) {
         super.addTab(label);
         places.add(place);
+        if (isAttached()) {
+            slottedController.getPrefetchScheduler().addTarget(place);
+        }
+    }
+
+    /**
+     * Makes the tab Places prefetch targets while the bar is attached.
+     */
+    @Override protected void onLoad() {
+        super.onLoad();
+        for (SlottedPlace place: places) {
+            slottedController.getPrefetchScheduler().addTarget(place);
+        }
+    }
+
+    @Override protected void onUnload() {
+        for (SlottedPlace place: places) {
+            slottedController.getPrefetchScheduler().removeTarget(place);
+        }
+        super.onUnload();
     }
 
     /**
@@ -2,6 +2,7 @@ package com.googlecode.slotted.rebind;
 
 import java.io.PrintWriter;
 import java.lang.annotation.Annotation;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -91,6 +92,9 @@ public class AutoHistoryMapperGenerator extends Generator {
         JClassType[] types = typeOracle.getTypes();
         List<String> scanPackages = getScanPackages(context, clazz);
 
+        // All the tokenizers are created before any Place is registered, so every AutoTokenizer is known when
+        // registration starts hashing Places.
+        List<String> registrations = new ArrayList<String>();
         for (JClassType place: types) {
             if (!place.isAbstract() && place.isDefaultInstantiable() &&
                     place.isAssignableTo(placeType) && isInScanPackages(place, scanPackages))
@@ -100,21 +104,25 @@ public class AutoHistoryMapperGenerator extends Generator {
                 String placeActivitiesToCache = getPlaceActivitiesToCache(place);
                 String codeSplitMapper = getCodeSplitMapper(place);
 
-                String tokenizerParam;
+                String tokenizerClass;
                 if (tokenizer != null) {
-                    tokenizerParam = "(PlaceTokenizer) GWT.create(" +
-                            tokenizer.getQualifiedSourceName() + ".class)";
+                    tokenizerClass = tokenizer.getQualifiedSourceName();
                 } else {
-                    String autoTokenizer = new AutoTokenizerGenerator().generate(logger, context,
+                    tokenizerClass = new AutoTokenizerGenerator().generate(logger, context,
                             place.getQualifiedSourceName());
-                    tokenizerParam = "(PlaceTokenizer) GWT.create(" + autoTokenizer + ".class)";
                 }
+                String tokenizerVariable = "tokenizer" + registrations.size();
+                sourceWriter.println("PlaceTokenizer " + tokenizerVariable + " = (PlaceTokenizer) GWT.create(" +
+                        tokenizerClass + ".class);");
 
-                sourceWriter.println("registerPlace(" + place.getQualifiedSourceName() +
-                        ".class, " + prefix + ", " + tokenizerParam + ", " +
+                registrations.add("registerPlace(" + place.getQualifiedSourceName() +
+                        ".class, " + prefix + ", " + tokenizerVariable + ", " +
                         placeActivitiesToCache + ", " + codeSplitMapper + ");");
             }
         }
+        for (String registration: registrations) {
+            sourceWriter.println(registration);
+        }
 
         sourceWriter.outdent();
         sourceWriter.println("}");
@@ -1,13 +1,14 @@
 package com.googlecode.slotted.rebind;
 
 import com.google.gwt.core.client.GWT;
+import com.google.gwt.core.ext.BadPropertyValueException;
 import com.google.gwt.core.ext.Generator;
 import com.google.gwt.core.ext.GeneratorContext;
 import com.google.gwt.core.ext.TreeLogger;
 import com.google.gwt.core.ext.UnableToCompleteException;
 import com.google.gwt.core.ext.typeinfo.JClassType;
 import com.google.gwt.core.ext.typeinfo.JField;
-import com.google.gwt.core.ext.typeinfo.JType;
+import com.google.gwt.core.ext.typeinfo.JPrimitiveType;
 import com.google.gwt.core.ext.typeinfo.NotFoundException;
 import com.google.gwt.core.ext.typeinfo.TypeOracle;
 import com.google.gwt.place.shared.PlaceTokenizer;
@@ -15,8 +16,11 @@ import com.google.gwt.user.rebind.ClassSourceFileComposerFactory;
 import com.google.gwt.user.rebind.SourceWriter;
 import com.googlecode.slotted.client.AutoTokenizer;
 import com.googlecode.slotted.client.GlobalParameter;
+import com.googlecode.slotted.client.MultiParentPlace;
 import com.googlecode.slotted.client.PlaceParameters;
 import com.googlecode.slotted.client.SlottedPlace;
+import com.googlecode.slotted.client.TokenCodec;
+import com.googlecode.slotted.client.TokenFormat;
 import com.googlecode.slotted.client.TokenizerParameter;
 import com.googlecode.slotted.client.TokenizerUtil;
 
@@ -30,6 +34,9 @@ import java.util.Set;
 
 public class AutoTokenizerGenerator extends Generator {
     private static String NamePostfix = "Tokenizer";
+    private static String PrivateAccessProperty = "slotted.tokenizer.private.access";
+    private static String PrivateAccessJsni = "jsni";
+    private static String PrivateAccessError = "error";
 
     public String generate(TreeLogger logger, GeneratorContext context, String typeName)
             throws UnableToCompleteException
@@ -41,6 +48,7 @@ public class AutoTokenizerGenerator extends Generator {
                 throw new UnableToCompleteException();
             }
 
+            boolean privateJsni = isPrivateJsni(context);
             LinkedList<JField> tokenParams = new LinkedList<JField>();
             LinkedList<JField> globalParams = new LinkedList<JField>();
             LinkedList<JField> equalsParams = new LinkedList<JField>();
@@ -51,7 +59,7 @@ public class AutoTokenizerGenerator extends Generator {
                 for (JField field: fields) {
                     for (Annotation annotation: field.getAnnotations()) {
                         if (annotation instanceof TokenizerParameter) {
-                            checkType(logger, field.getType());
+                            checkAccess(logger, field, placeType, privateJsni);
                             tokenParams.add(field);
                             if (((TokenizerParameter) annotation).useInEquals()) {
                                 equalsParams.add(field);
@@ -59,7 +67,8 @@ public class AutoTokenizerGenerator extends Generator {
                             break;
 
                         } else if (annotation instanceof GlobalParameter) {
-                            checkType(logger, field.getType());
+                            checkAccess(logger, field, placeType, privateJsni);
+                            checkGlobalType(logger, field);
                             globalParams.add(field);
                             if (((GlobalParameter) annotation).useInEquals()) {
                                 equalsParams.add(field);
@@ -75,11 +84,16 @@ public class AutoTokenizerGenerator extends Generator {
                 writeConstructor(sourceWriter, placeType);
                 writeAccessors(sourceWriter, tokenParams, placeType);
                 writeAccessors(sourceWriter, globalParams, placeType);
+                writeGlobalKeys(sourceWriter, globalParams);
                 writeGlobalExtractor(sourceWriter, globalParams, placeType);
                 writeGlobalSetter(sourceWriter, globalParams, placeType);
-                writeGetToken(sourceWriter, tokenParams, placeType);
-                writeGetPlace(sourceWriter, tokenParams, placeType);
-                writeEquals(sourceWriter, equalsParams, placeType);
+                String codec = getCodec(placeType);
+                writeGetToken(sourceWriter, tokenParams, placeType, codec);
+                writeGetPlace(sourceWriter, tokenParams, placeType, codec);
+                writeEquals(sourceWriter, "equals", equalsParams, placeType);
+                writeEquals(sourceWriter, "tokenEquals", tokenParams, placeType);
+                writeHashCode(sourceWriter, equalsParams, placeType);
+                writeCopy(sourceWriter, tokenParams, globalParams, placeType);
 
                 sourceWriter.commit(logger);
                 logger.log(TreeLogger.DEBUG, "Done Generating source for " + placeType.getName(), null);
@@ -93,15 +107,63 @@ public class AutoTokenizerGenerator extends Generator {
 
     }
 
-    private void checkType(TreeLogger logger, JType type) throws UnableToCompleteException {
-        if ("long".equals(type.getQualifiedBinaryName())) {
-            logger.log(TreeLogger.ERROR, "long primitive is not allowed in AutoTokenizer, because JSNI " +
-                    "is used to populate fields.  Please use Long wrapper class to get long functionality. " +
-                    "For more info see: http://google-web-toolkit.googlecode.com/svn/trunk/distro-source/core/src/doc/helpInfo/longJsniRestriction.html");
+    private void checkAccess(TreeLogger logger, JField field, JClassType placeType, boolean privateJsni)
+            throws UnableToCompleteException
+    {
+        if (!privateJsni && field.isPrivate()) {
+            logger.log(TreeLogger.ERROR, field.getEnclosingType().getQualifiedSourceName() + "." +
+                    field.getName() + " is private and can't be inlined by " + placeType.getQualifiedSourceName() +
+                    NamePostfix + ".  Make the field non-private, or set the configuration property " +
+                    PrivateAccessProperty + " to \"" + PrivateAccessJsni + "\".");
             throw new UnableToCompleteException();
         }
     }
 
+    private void checkGlobalType(TreeLogger logger, JField field) throws UnableToCompleteException {
+        if (getParametersGetMethod(field) == null) {
+            logger.log(TreeLogger.ERROR, field.getEnclosingType().getQualifiedSourceName() + "." +
+                    field.getName() + " has a type that can't be a GlobalParameter.  Use String, int, long, " +
+                    "float, double, boolean or their boxed types.");
+            throw new UnableToCompleteException();
+        }
+    }
+
+    /**
+     * Fields that the generated Tokenizer can reach from its package are read and written in plain Java, which
+     * the compiler can inline.  Everything else, like private fields or protected fields of a super class in
+     * another package, needs JSNI.
+     */
+    private boolean isJavaAccessible(JField field, JClassType placeType) {
+        if (field.isPrivate() || field.isFinal() || field.isStatic()) {
+            return false;
+        }
+        JClassType enclosingType = field.getEnclosingType();
+        boolean samePackage = enclosingType.getPackage().equals(placeType.getPackage());
+        return (enclosingType.isPublic() || samePackage) && (field.isPublic() || samePackage);
+    }
+
+    private boolean isPrivateJsni(GeneratorContext context) {
+        try {
+            List<String> values = context.getPropertyOracle().getConfigurationProperty(PrivateAccessProperty)
+                    .getValues();
+            return values.isEmpty() || !PrivateAccessError.equals(values.get(0));
+        } catch (BadPropertyValueException e) {
+            return true;
+        }
+    }
+
+    /**
+     * @return The qualified name of the {@link TokenCodec} from {@link TokenFormat}, or null for the default
+     * {@link TokenizerUtil}.
+     */
+    private String getCodec(JClassType placeType) {
+        TokenFormat format = placeType.findAnnotationInTypeHierarchy(TokenFormat.class);
+        if (format == null || TokenizerUtil.class.equals(format.value())) {
+            return null;
+        }
+        return format.value().getCanonicalName();
+    }
+
     private JClassType getPlaceType(TypeOracle typeOracle, String typeName)
             throws NotFoundException
     {
@@ -163,28 +225,70 @@ public class AutoTokenizerGenerator extends Generator {
     }
 
     private void writeAccessors(SourceWriter sourceWriter, JField field, JClassType placeType) {
-        sourceWriter.println("private native void set" + field.getName() + "(" +
-                placeType.getQualifiedSourceName() + " place, " +
-                field.getType().getSimpleSourceName() + " value) /*-{");
-        sourceWriter.println("    place.@" + field.getEnclosingType().getQualifiedSourceName() + "::" +
-                field.getName() + " = value;");
-        sourceWriter.println("}-*/;");
-
-        sourceWriter.println("private native " + field.getType().getSimpleSourceName() + " get" +
-                field.getName() + "(" + placeType.getQualifiedSourceName() + " place) /*-{");
-        sourceWriter.println("    return place.@" + field.getEnclosingType().getQualifiedSourceName() + "::" +
-                field.getName() + ";");
-        sourceWriter.println("}-*/;");
+        String placeString = placeType.getQualifiedSourceName();
+        String typeString = field.getType().getSimpleSourceName();
+        String enclosingString = field.getEnclosingType().getQualifiedSourceName();
+
+        if (isJavaAccessible(field, placeType)) {
+            String fieldRef = "place." + field.getName();
+            if (field.getEnclosingType() != placeType) {
+                // Cast in case a subclass hides the field with one of the same name.
+                fieldRef = "((" + enclosingString + ") place)." + field.getName();
+            }
+            sourceWriter.println("private void set" + field.getName() + "(" + placeString + " place, " +
+                    typeString + " value) {");
+            sourceWriter.println("    " + fieldRef + " = value;");
+            sourceWriter.println("}");
+
+            sourceWriter.println("private " + typeString + " get" + field.getName() + "(" + placeString +
+                    " place) {");
+            sourceWriter.println("    return " + fieldRef + ";");
+            sourceWriter.println("}");
+
+        } else {
+            // A long is opaque in JSNI, but it is only passed through, so it is safe.
+            String unsafeLong = "long".equals(field.getType().getQualifiedBinaryName()) ?
+                    "@com.google.gwt.core.client.UnsafeNativeLong " : "";
+            sourceWriter.println(unsafeLong + "private native void set" + field.getName() + "(" +
+                    placeString + " place, " + typeString + " value) /*-{");
+            sourceWriter.println("    place.@" + enclosingString + "::" + field.getName() + " = value;");
+            sourceWriter.println("}-*/;");
+
+            sourceWriter.println(unsafeLong + "private native " + typeString + " get" + field.getName() + "(" +
+                    placeString + " place) /*-{");
+            sourceWriter.println("    return place.@" + enclosingString + "::" + field.getName() + ";");
+            sourceWriter.println("}-*/;");
+        }
         sourceWriter.println();
     }
 
+    private void writeGlobalKeys(SourceWriter sourceWriter, List<JField> fields) {
+        for (JField field: fields) {
+            sourceWriter.println("private static final PlaceParameters.Key key" + field.getName() +
+                    " = PlaceParameters.Key.intern(\"" + field.getName() + "\");");
+        }
+        if (!fields.isEmpty()) {
+            sourceWriter.println();
+        }
+    }
+
     private void writeGlobalExtractor(SourceWriter sourceWriter, List<JField> fields, JClassType placeType) {
         sourceWriter.println("public void extractFields(PlaceParameters intoPlaceParameters, " +
                 placeType.getQualifiedSourceName() +" place) {");
         sourceWriter.indent();
         for (JField field: fields) {
-            sourceWriter.println("intoPlaceParameters.set(\"" + field.getName() + "\", get" +
-                    field.getName() + "(place));");
+            String fieldName = field.getName();
+            String unboxMethod = getUnboxMethod(field);
+            if (unboxMethod != null) {
+                sourceWriter.println("if (get" + fieldName + "(place) != null) {");
+                sourceWriter.indent();
+                sourceWriter.println("intoPlaceParameters.set(key" + fieldName + ", get" + fieldName + "(place)." +
+                        unboxMethod + "());");
+                sourceWriter.outdent();
+                sourceWriter.println("}");
+            } else {
+                sourceWriter.println("intoPlaceParameters.set(key" + fieldName + ", get" + fieldName + "(place));");
+            }
         }
         sourceWriter.outdent();
         sourceWriter.println("}");
@@ -196,16 +300,23 @@ public class AutoTokenizerGenerator extends Generator {
                 placeType.getQualifiedSourceName() +" place) {");
         sourceWriter.indent();
         for (JField field: fields) {
-            sourceWriter.println("set" + field.getName() + "(place, placeParameters.get" +
-                                    getGetMethod(field) + "(\"" + field.getName() + "\"));");
+            String fieldName = field.getName();
+            String value = "placeParameters." + getParametersGetMethod(field) + "(key" + fieldName + ")";
+            if (getUnboxMethod(field) != null) {
+                value = "placeParameters.isSet(key" + fieldName + ") ? " +
+                        field.getType().getQualifiedSourceName() + ".valueOf(" + value + ") : null";
+            }
+            sourceWriter.println("set" + fieldName + "(place, " + value + ");");
         }
         sourceWriter.outdent();
         sourceWriter.println("}");
         sourceWriter.println();
     }
 
-    private void writeEquals(SourceWriter sourceWriter, List<JField> fields, JClassType placeType) {
-        sourceWriter.println("public boolean equals(" + placeType.getQualifiedSourceName() +" p1, " +
+    private void writeEquals(SourceWriter sourceWriter, String methodName, List<JField> fields,
+            JClassType placeType)
+    {
+        sourceWriter.println("public boolean " + methodName + "(" + placeType.getQualifiedSourceName() +" p1, " +
                 placeType.getQualifiedSourceName() +" p2) {");
         sourceWriter.indent();
         sourceWriter.println("String s1;");
@@ -213,7 +324,12 @@ public class AutoTokenizerGenerator extends Generator {
 
         for (JField field: fields) {
             String fieldName = field.getName();
-            if (field.getType().isPrimitive() != null) {
+            JPrimitiveType primitiveType = field.getType().isPrimitive();
+            if (primitiveType == JPrimitiveType.FLOAT || primitiveType == JPrimitiveType.DOUBLE) {
+                // Compared like hashCode() hashes them, so 0.0 and -0.0 differ and NaN equals itself.
+                sourceWriter.println("if (" + primitiveType.getQualifiedBoxedSourceName() + ".compare(get" +
+                        fieldName + "(p1), get" + fieldName + "(p2)) != 0) {");
+            } else if (primitiveType != null) {
                 sourceWriter.println("if (get" + fieldName + "(p1) != get" + fieldName + "(p2)) {");
             } else if ("java.lang.String".equals(field.getType().getQualifiedBinaryName())) {
                 sourceWriter.println("s1 = get" + fieldName + "(p1) != null ? get" + fieldName + "(p1) : \"\";");
@@ -235,13 +351,68 @@ public class AutoTokenizerGenerator extends Generator {
         sourceWriter.println();
     }
 
-    private void writeGetToken(SourceWriter sourceWriter, List<JField> fields, JClassType placeType) {
+    private void writeHashCode(SourceWriter sourceWriter, List<JField> fields, JClassType placeType) {
+        sourceWriter.println("public int hashCode(" + placeType.getQualifiedSourceName() +" place) {");
+        sourceWriter.indent();
+        sourceWriter.println("int result = 0;");
+
+        for (JField field: fields) {
+            if (MultiParentPlace.class.getName().equals(field.getEnclosingType().getQualifiedSourceName())) {
+                // slotIndex changes when the Place is indexed, and the Place is used in the Slot's hashCode.
+                continue;
+            }
+            String getter = "get" + field.getName() + "(place)";
+            JPrimitiveType primitiveType = field.getType().isPrimitive();
+            if (primitiveType != null) {
+                sourceWriter.println("result = 31 * result + " + primitiveType.getQualifiedBoxedSourceName() +
+                        ".valueOf(" + getter + ").hashCode();");
+            } else {
+                // Matches equals(), where a null String is the same as an empty String.
+                sourceWriter.println("result = 31 * result + (" + getter + " != null ? " + getter +
+                        ".hashCode() : 0);");
+            }
+        }
+
+        sourceWriter.println("return result;");
+        sourceWriter.outdent();
+        sourceWriter.println("}");
+        sourceWriter.println();
+    }
+
+    private void writeCopy(SourceWriter sourceWriter, List<JField> tokenParams, List<JField> globalParams,
+            JClassType placeType)
+    {
+        String placeString = placeType.getQualifiedSourceName();
+        sourceWriter.println("public " + placeString + " copy(" + placeString + " place) {");
+        sourceWriter.indent();
+        sourceWriter.println(placeString + " copy = GWT.create(" + placeString + ".class);");
+        LinkedList<JField> fields = new LinkedList<JField>(tokenParams);
+        fields.addAll(globalParams);
+        for (JField field: fields) {
+            String value = "get" + field.getName() + "(place)";
+            String typeName = field.getType().getQualifiedBinaryName();
+            if (Date.class.getName().equals(typeName) || Timestamp.class.getName().equals(typeName)) {
+                value = "TokenizerUtil.copy(" + value + ")";
+            }
+            sourceWriter.println("set" + field.getName() + "(copy, " + value + ");");
+        }
+        sourceWriter.println("return copy;");
+        sourceWriter.outdent();
+        sourceWriter.println("}");
+        sourceWriter.println();
+    }
+
+    private void writeGetToken(SourceWriter sourceWriter, List<JField> fields, JClassType placeType, String codec) {
         sourceWriter.println("public String getToken(" +
                 placeType.getQualifiedSourceName() + " place) {");
         if (fields.isEmpty()) {
             sourceWriter.println("    return \"\";");
         } else {
-            sourceWriter.println("    TokenizerUtil builder = TokenizerUtil.build();");
+            if (codec == null) {
+                sourceWriter.println("    TokenizerUtil builder = TokenizerUtil.build();");
+            } else {
+                sourceWriter.println("    " + codec + " builder = new " + codec + "();");
+            }
             for (JField field: fields) {
                 sourceWriter.println("     builder.add(get" + field.getName() + "(place));");
             }
@@ -251,13 +422,17 @@ public class AutoTokenizerGenerator extends Generator {
         sourceWriter.println();
     }
 
-    private void writeGetPlace(SourceWriter sourceWriter, List<JField> fields, JClassType placeType) {
+    private void writeGetPlace(SourceWriter sourceWriter, List<JField> fields, JClassType placeType, String codec) {
         String placeString = placeType.getQualifiedSourceName();
         sourceWriter.println("public " + placeString + " getPlace(String token) {");
         sourceWriter.indent();
         sourceWriter.println(placeString + " place = GWT.create(" + placeString + ".class);");
         if (!fields.isEmpty()) {
-            sourceWriter.println("TokenizerUtil extractor = TokenizerUtil.extract(token);");
+            if (codec == null) {
+                sourceWriter.println("TokenizerUtil extractor = TokenizerUtil.extract(token);");
+            } else {
+                sourceWriter.println(codec + " extractor = new " + codec + "(token);");
+            }
             for (JField field: fields) {
                 sourceWriter.println("set" + field.getName() + "(place, extractor.get" +
                         getGetMethod(field) + "());");
@@ -269,6 +444,47 @@ public class AutoTokenizerGenerator extends Generator {
         sourceWriter.println();
     }
 
+    /**
+     * @return The {@link PlaceParameters} getter for the field's type, or null if the type isn't supported.
+     */
+    private String getParametersGetMethod(JField field) {
+        String name = field.getType().getQualifiedSourceName();
+        if ("java.lang.String".equals(name)) {
+            return "get";
+        } else if ("int".equals(name) || "java.lang.Integer".equals(name)) {
+            return "getInt";
+        } else if ("long".equals(name) || "java.lang.Long".equals(name)) {
+            return "getLong";
+        } else if ("float".equals(name) || "java.lang.Float".equals(name)) {
+            return "getFloat";
+        } else if ("double".equals(name) || "java.lang.Double".equals(name)) {
+            return "getDouble";
+        } else if ("boolean".equals(name) || "java.lang.Boolean".equals(name)) {
+            return "getBoolean";
+        }
+        return null;
+    }
+
+    /**
+     * @return The method that unboxes the field's value, or null if the field isn't a boxed type.  Boxed fields
+     * are left out of the PlaceParameters when they are null, and are set to null when the parameter is missing.
+     */
+    private String getUnboxMethod(JField field) {
+        String name = field.getType().getQualifiedSourceName();
+        if ("java.lang.Integer".equals(name)) {
+            return "intValue";
+        } else if ("java.lang.Long".equals(name)) {
+            return "longValue";
+        } else if ("java.lang.Float".equals(name)) {
+            return "floatValue";
+        } else if ("java.lang.Double".equals(name)) {
+            return "doubleValue";
+        } else if ("java.lang.Boolean".equals(name)) {
+            return "booleanValue";
+        }
+        return null;
+    }
+
     private String getGetMethod(JField field) {
         String name = field.getType().getSimpleSourceName();
         if ("String".equals(name)) {
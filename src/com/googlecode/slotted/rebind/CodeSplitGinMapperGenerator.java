@@ -2,6 +2,7 @@ package com.googlecode.slotted.rebind;
 
 import java.io.PrintWriter;
 import java.lang.annotation.Annotation;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -21,6 +22,7 @@ import com.google.gwt.core.ext.typeinfo.TypeOracle;
 import com.google.gwt.place.shared.Place;
 import com.google.gwt.user.rebind.ClassSourceFileComposerFactory;
 import com.google.gwt.user.rebind.SourceWriter;
+import com.googlecode.slotted.client.ActivityRequest;
 import com.googlecode.slotted.client.CodeSplit;
 import com.googlecode.slotted.client.CodeSplitGinMapper;
 import com.googlecode.slotted.client.CodeSplitLoadException;
@@ -73,9 +75,11 @@ public class CodeSplitGinMapperGenerator extends Generator {
         String implementName = classType.getQualifiedBinaryName();
         composer.addImplementedInterface(implementName);
         composer.addImport(GWT.class.getCanonicalName());
+        composer.addImport(HashMap.class.getCanonicalName());
         composer.addImport(RunAsyncCallback.class.getCanonicalName());
         composer.addImport(Callback.class.getCanonicalName());
         composer.addImport(Activity.class.getCanonicalName());
+        composer.addImport(ActivityRequest.class.getCanonicalName());
         composer.addImport(SlottedPlace.class.getCanonicalName());
         composer.addImport(SlottedException.class.getCanonicalName());
         composer.addImport(CodeSplitLoadException.class.getCanonicalName());
@@ -156,6 +160,11 @@ public class CodeSplitGinMapperGenerator extends Generator {
         sourceWriter.println("public void onSuccess() {");
         sourceWriter.indent();
         sourceWriter.println("loaded = true;");
+        sourceWriter.println("if (ActivityRequest.isCancelled(callback)) {");
+        sourceWriter.indent();
+        sourceWriter.println("return;");
+        sourceWriter.outdent();
+        sourceWriter.println("}");
         sourceWriter.println("if (place == null) {");
         sourceWriter.indent();
         sourceWriter.println("callback.onSuccess(null);");
@@ -192,6 +201,10 @@ public class CodeSplitGinMapperGenerator extends Generator {
     }
 
     private void writeGetActivityMethod(TreeLogger logger, SourceWriter sourceWriter, List<JClassType> codeSplitPlaces, JClassType ginType) throws NotFoundException, UnableToCompleteException {
+        PlaceIdTable idTable = new PlaceIdTable(codeSplitPlaces);
+        idTable.writeTable(sourceWriter);
+        idTable.writeGetPlaceId(sourceWriter);
+
         sourceWriter.println("private static " + ginType.getQualifiedBinaryName() + " ginjector;");
         sourceWriter.println("public " + ginType.getQualifiedBinaryName() + " getGinjector() {");
         sourceWriter.indent();
@@ -206,24 +219,31 @@ public class CodeSplitGinMapperGenerator extends Generator {
         sourceWriter.println("ginjector = GWT.create(" + ginType.getQualifiedBinaryName() + ".class);");
         sourceWriter.outdent();
         sourceWriter.println("}");
+        writeSwitch(logger, sourceWriter, idTable, ginType);
+        sourceWriter.println("return null;");
+        sourceWriter.outdent();
+        sourceWriter.println("}");
+    }
 
-        for (JClassType place: codeSplitPlaces) {
-            generateIf(logger, sourceWriter, place, ginType);
+    private void writeSwitch(TreeLogger logger, SourceWriter sourceWriter, PlaceIdTable idTable, JClassType ginType) throws NotFoundException, UnableToCompleteException {
+        sourceWriter.println("switch (getPlaceId(place)) {");
+        sourceWriter.indent();
+        List<JClassType> places = idTable.getPlaces();
+        for (int i = 0; i < places.size(); i++) {
+            generateCase(logger, sourceWriter, i, places.get(i), ginType);
         }
-
-        sourceWriter.println("return null;");
         sourceWriter.outdent();
         sourceWriter.println("}");
     }
 
-    private void generateIf(TreeLogger logger, SourceWriter sourceWriter, JClassType placeType, JClassType ginType) throws NotFoundException, UnableToCompleteException {
+    private void generateCase(TreeLogger logger, SourceWriter sourceWriter, int id, JClassType placeType, JClassType ginType) throws NotFoundException, UnableToCompleteException {
         PlaceActivity annotation = placeType.getAnnotation(PlaceActivity.class);
         if (annotation == null || annotation.value() == null) {
             logger.log(TreeLogger.ERROR, "@PlaceActivity not defined on:" + placeType);
             throw new UnableToCompleteException();
         }
 
-        sourceWriter.println("if (place instanceof " + placeType.getQualifiedSourceName() + ") {");
+        sourceWriter.println("case " + id + ": {");
 
         Class<? extends Activity>[] activityClasses = annotation.value();
         if (activityClasses.length == 1) {
@@ -2,6 +2,7 @@ package com.googlecode.slotted.rebind;
 
 import java.io.PrintWriter;
 import java.lang.annotation.Annotation;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -20,6 +21,7 @@ import com.google.gwt.core.ext.typeinfo.TypeOracle;
 import com.google.gwt.place.shared.Place;
 import com.google.gwt.user.rebind.ClassSourceFileComposerFactory;
 import com.google.gwt.user.rebind.SourceWriter;
+import com.googlecode.slotted.client.ActivityRequest;
 import com.googlecode.slotted.client.CodeSplit;
 import com.googlecode.slotted.client.CodeSplitLoadException;
 import com.googlecode.slotted.client.PlaceActivity;
@@ -69,9 +71,11 @@ public class CodeSplitMapperGenerator extends Generator {
         String implementName = classType.getQualifiedBinaryName();
         composer.addImplementedInterface(implementName);
         composer.addImport(GWT.class.getCanonicalName());
+        composer.addImport(HashMap.class.getCanonicalName());
         composer.addImport(RunAsyncCallback.class.getCanonicalName());
         composer.addImport(Callback.class.getCanonicalName());
         composer.addImport(Activity.class.getCanonicalName());
+        composer.addImport(ActivityRequest.class.getCanonicalName());
         composer.addImport(SlottedPlace.class.getCanonicalName());
         composer.addImport(SlottedException.class.getCanonicalName());
         composer.addImport(CodeSplitLoadException.class.getCanonicalName());
@@ -140,6 +144,11 @@ public class CodeSplitMapperGenerator extends Generator {
         sourceWriter.println("public void onSuccess() {");
         sourceWriter.indent();
         sourceWriter.println("loaded = true;");
+        sourceWriter.println("if (ActivityRequest.isCancelled(callback)) {");
+        sourceWriter.indent();
+        sourceWriter.println("return;");
+        sourceWriter.outdent();
+        sourceWriter.println("}");
         sourceWriter.println("if (place == null) {");
         sourceWriter.indent();
         sourceWriter.println("callback.onSuccess(null);");
@@ -176,24 +185,32 @@ public class CodeSplitMapperGenerator extends Generator {
     }
 
     protected void writeGetActivityMethod(TreeLogger logger, SourceWriter sourceWriter, List<JClassType> codeSplitPlaces) throws NotFoundException, UnableToCompleteException {
-        sourceWriter.println("public void getActivity(final SlottedPlace place) {");
+        PlaceIdTable idTable = new PlaceIdTable(codeSplitPlaces);
+        idTable.writeTable(sourceWriter);
+        idTable.writeGetPlaceId(sourceWriter);
+
+        sourceWriter.println("public Activity getActivity(final SlottedPlace place) {");
         sourceWriter.indent();
-        for (JClassType place: codeSplitPlaces) {
-            generateIf(logger, sourceWriter, place);
+        sourceWriter.println("switch (getPlaceId(place)) {");
+        sourceWriter.indent();
+        List<JClassType> places = idTable.getPlaces();
+        for (int i = 0; i < places.size(); i++) {
+            generateCase(logger, sourceWriter, i, places.get(i));
         }
-        sourceWriter.println();
+        sourceWriter.outdent();
+        sourceWriter.println("}");
         sourceWriter.println("return null;");
         sourceWriter.outdent();
         sourceWriter.println("}");
     }
 
-    protected void generateIf(TreeLogger logger, SourceWriter sourceWriter, JClassType placeType) throws NotFoundException, UnableToCompleteException {
+    protected void generateCase(TreeLogger logger, SourceWriter sourceWriter, int id, JClassType placeType) throws NotFoundException, UnableToCompleteException {
         PlaceActivity annotation = placeType.getAnnotation(PlaceActivity.class);
         if (annotation == null || annotation.value() == null) {
             logger.log(TreeLogger.ERROR, "@PlaceActivity not defined on:" + placeType);
             throw new UnableToCompleteException();
         }
-        sourceWriter.println("if (place instanceof " + placeType.getQualifiedSourceName() + ") {");
+        sourceWriter.println("case " + id + ": {");
 
         Class<? extends Activity>[] activityClasses = annotation.value();
         if (activityClasses.length == 1) {
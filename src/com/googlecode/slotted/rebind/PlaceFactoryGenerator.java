@@ -1,7 +1,9 @@
 package com.googlecode.slotted.rebind;
 
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 
 import com.google.gwt.core.client.GWT;
@@ -40,34 +42,42 @@ public class PlaceFactoryGenerator extends Generator {
             SourceWriter sourceWriter = getSourceWriter(clazz, context, logger);
 
             if (sourceWriter != null) {
-                sourceWriter.println("public " +
-                        placeType.getQualifiedSourceName() +
-                        " newInstance(Class placeClass) {");
-
                 JClassType[] types = typeOracle.getTypes();
 	            List<String> scanPackages = getScanPackages(context, clazz);
 
-                int count = 0;
+                List<JClassType> places = new ArrayList<JClassType>();
                 for (int i = 0; i < types.length; i++) {
                     if (!types[i].isAbstract() && types[i].isDefaultInstantiable() &&
                             types[i].isAssignableTo(placeType) && isInScanPackages(types[i], scanPackages))
                     {
-                        if (count == 0) {
-                            sourceWriter.print("   if(");
-                        } else {
-                            sourceWriter.print("   else if(");
-                        }
-                        sourceWriter.println(types[i].getQualifiedSourceName()
-                                + ".class.equals(placeClass)) {"
-                                + " return GWT.create( "
-                                + types[i].getQualifiedSourceName() + ".class);"
-                                + "}");
-
-                        count++;
+                        places.add(types[i]);
                     }
                 }
+                PlaceIdTable idTable = new PlaceIdTable(places);
+                idTable.writeTable(sourceWriter);
+
+                sourceWriter.println("public " +
+                        placeType.getQualifiedSourceName() +
+                        " newInstance(Class placeClass) {");
+                sourceWriter.indent();
+                sourceWriter.println("Integer id = placeIds.get(placeClass);");
+                sourceWriter.println("if (id == null) {");
+                sourceWriter.indent();
+                sourceWriter.println("return null;");
+                sourceWriter.outdent();
+                sourceWriter.println("}");
+                sourceWriter.println("switch (id) {");
+                sourceWriter.indent();
+                List<JClassType> idPlaces = idTable.getPlaces();
+                for (int i = 0; i < idPlaces.size(); i++) {
+                    sourceWriter.println("case " + i + ": return GWT.create("
+                            + idPlaces.get(i).getQualifiedSourceName() + ".class);");
+                }
+                sourceWriter.outdent();
+                sourceWriter.println("}");
 
                 sourceWriter.println("return null;");
+                sourceWriter.outdent();
                 sourceWriter.println("}");
                 sourceWriter.commit(logger);
                 logger.log(TreeLogger.DEBUG, "Done Generating source for "
@@ -123,6 +133,7 @@ public class PlaceFactoryGenerator extends Generator {
         String implementName = PlaceFactory.class.getName();
         composer.addImplementedInterface(implementName);
         composer.addImport(GWT.class.getCanonicalName());
+        composer.addImport(HashMap.class.getCanonicalName());
 
         PrintWriter printWriter = context.tryCreate(logger, packageName,simpleName);
 
@@ -0,0 +1,83 @@
+package com.googlecode.slotted.rebind;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import com.google.gwt.core.ext.typeinfo.JClassType;
+import com.google.gwt.user.rebind.SourceWriter;
+
+/**
+ * Gives each Place type a dense integer id, and writes the static table that maps the Place classes to their
+ * ids.  The generated classes switch on the id, so finding the code for a Place doesn't test each Place type in
+ * turn.  The generated source needs to import java.util.HashMap.
+ */
+class PlaceIdTable {
+    private final List<JClassType> declaredPlaces;
+    private final List<JClassType> places;
+
+    /**
+     * @param places The Place types in their declared order.  The ids are given in name order, so they are the
+     * same on every compile.
+     */
+    PlaceIdTable(List<JClassType> places) {
+        this.declaredPlaces = new ArrayList<JClassType>(places);
+        this.places = new ArrayList<JClassType>(places);
+        Collections.sort(this.places, new Comparator<JClassType>() {
+            @Override public int compare(JClassType type1, JClassType type2) {
+                return type1.getQualifiedSourceName().compareTo(type2.getQualifiedSourceName());
+            }
+        });
+    }
+
+    /**
+     * @return The Place types, where the index is the id.
+     */
+    List<JClassType> getPlaces() {
+        return places;
+    }
+
+    /**
+     * Writes the placeIds field and the static initializer that fills it.
+     */
+    void writeTable(SourceWriter sourceWriter) {
+        sourceWriter.println("private static final HashMap<Class, Integer> placeIds = new HashMap<Class, Integer>(" +
+                Math.max(16, places.size() * 2) + ");");
+        sourceWriter.println("static {");
+        sourceWriter.indent();
+        for (int i = 0; i < places.size(); i++) {
+            sourceWriter.println("placeIds.put(" + places.get(i).getQualifiedSourceName() + ".class, " + i + ");");
+        }
+        sourceWriter.outdent();
+        sourceWriter.println("}");
+        sourceWriter.println();
+    }
+
+    /**
+     * Writes the getPlaceId(SlottedPlace) method, which returns -1 for an unknown Place.  Subclasses of the Place
+     * types aren't in the table, so they fall back to instanceof checks in the declared order, which lets a Place
+     * that extends another mapped Place be declared before it.
+     */
+    void writeGetPlaceId(SourceWriter sourceWriter) {
+        sourceWriter.println("private int getPlaceId(SlottedPlace place) {");
+        sourceWriter.indent();
+        sourceWriter.println("Integer id = placeIds.get(place.getClass());");
+        sourceWriter.println("if (id != null) {");
+        sourceWriter.indent();
+        sourceWriter.println("return id;");
+        sourceWriter.outdent();
+        sourceWriter.println("}");
+        for (JClassType place: declaredPlaces) {
+            sourceWriter.println("if (place instanceof " + place.getQualifiedSourceName() + ") {");
+            sourceWriter.indent();
+            sourceWriter.println("return " + places.indexOf(place) + ";");
+            sourceWriter.outdent();
+            sourceWriter.println("}");
+        }
+        sourceWriter.println("return -1;");
+        sourceWriter.outdent();
+        sourceWriter.println("}");
+        sourceWriter.println();
+    }
+}